@@ -10,6 +10,7 @@
 package org.openmrs.module.datafilter;
 
 import org.openmrs.module.BaseModuleActivator;
+import org.openmrs.module.datafilter.metrics.DataFilterMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +31,7 @@ public class DataFilterActivator extends BaseModuleActivator {
 	 */
 	@Override
 	public void stopped() {
+		DataFilterMetrics.unregisterAll();
 		log.info("Data Filter Module stopped");
 	}
 	
@@ -21,4 +21,20 @@ public final class DataFilterConstants {
 	
 	public static final String PRIV_BY_PASS = "ByPass Data Filters";
 	
+	public static final String PRIV_MANAGE_ACCESS = "Manage Data Filter Access";
+	
+	public static final String GP_MAX_INLINE_LIST_SIZE = MODULE_ID + ".maxInlineListSize";
+	
+	public static final int DEFAULT_MAX_INLINE_LIST_SIZE = 1000;
+	
+	public static final String RUNTIME_PROP_FUSE_FILTERS = MODULE_ID + ".fuseFilters";
+	
+	public static final String RUNTIME_PROP_STATEMENT_TALLY_HEADER = MODULE_ID + ".statementTallyHeader";
+	
+	public static final String STATEMENT_TALLY_HEADER = "X-DataFilter-Statements";
+	
+	public static final String RUNTIME_PROP_SLOW_QUERY_THRESHOLD = MODULE_ID + ".slowQueryThresholdMs";
+	
+	public static final String SLOW_QUERY_LOG = "org.openmrs.module.datafilter.slowqueries";
+	
 }
@@ -9,9 +9,12 @@
  */
 package org.openmrs.module.datafilter;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -24,8 +27,12 @@ import org.hibernate.Session;
 import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.openmrs.User;
 import org.openmrs.UserSessionListener;
+import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.context.Daemon;
+import org.openmrs.module.datafilter.metrics.DataFilterMetrics;
+import org.openmrs.module.datafilter.metrics.Histogram;
+import org.openmrs.module.datafilter.metrics.StatementTally;
 import org.openmrs.module.datafilter.registration.FilterParameter;
 import org.openmrs.module.datafilter.registration.FilterRegistration;
 import org.openmrs.module.datafilter.registration.HibernateFilterRegistration;
@@ -48,6 +55,9 @@ public class DataFilterSessionContext extends SpringSessionContext {
 	
 	private static final ThreadLocal<Boolean> areFiltersSet = new ThreadLocal();
 	
+	private static final Histogram filterSetupHistogram = DataFilterMetrics
+	        .getHistogram(DataFilterMetrics.SESSION_CONTEXT_FILTER_SETUP, DataFilterMetrics.UNIT_NANOSECONDS);
+	
 	public DataFilterSessionContext(SessionFactoryImplementor sessionFactory) {
 		super(sessionFactory);
 	}
@@ -79,6 +89,8 @@ public class DataFilterSessionContext extends SpringSessionContext {
 		}
 		
 		Session session = super.currentSession();
+		StatementTally.attach(session);
+		SlowQueryLog.clearEnabledFilters();
 		
 		try {
 			if (Daemon.isDaemonThread()) {
@@ -105,22 +117,27 @@ public class DataFilterSessionContext extends SpringSessionContext {
 				log.debug("Enabling filters on the current session");
 			}
 			
+			final long start = System.nanoTime();
 			//When AccessUtil.isFilterDisabled is called, it triggers a call to SessionFactory.getCurrentSession()
 			//which gets us back here and we don't want that to happen, see beginning of this method.
 			tempSessionHolder.set(session);
 			Set<String> enabledFilters = new HashSet();
+			int maxInlineListSize;
 			try {
 				for (HibernateFilterRegistration registration : Util.getHibernateFilterRegistrations()) {
 					if (!Util.skipFilter(registration.getName())) {
 						enabledFilters.add(registration.getName());
 					}
 				}
+				
+				maxInlineListSize = Util.getMaxInlineListSize();
 			}
 			finally {
 				tempSessionHolder.remove();
 			}
 			
 			Map<String, Map<String, Object>> filterParamsMap = new HashMap();
+			List<HibernateFilterRegistration> registrationsToEnable = new ArrayList();
 			
 			filterLoop: for (HibernateFilterRegistration registration : Util.getHibernateFilterRegistrations()) {
 				if (enabledFilters.contains(registration.getName())) {
@@ -137,10 +154,13 @@ public class DataFilterSessionContext extends SpringSessionContext {
 							if (listener.supports(registration.getName())) {
 								//In theory, expect one listener per filter, since we found one, no more will get called.
 								//TODO During filter registration, check for cases where a filter has multiple listeners
+								final long listenerStart = System.nanoTime();
 								boolean enable = listener.onEnableFilter(filterContext);
+								DataFilterMetrics.getListenerHistogram(listener.getClass())
+								        .record(System.nanoTime() - listenerStart);
 								if (!enable) {
 									enabledFilters.remove(registration.getName());
-									session.disableFilter(registration.getName());
+									disableFilter(registration, session);
 									//Don't call anymore filters since we've found one.
 									continue filterLoop;
 								}
@@ -154,12 +174,24 @@ public class DataFilterSessionContext extends SpringSessionContext {
 						tempSessionHolder.remove();
 					}
 					
-					enableFilter(registration, filterParamsMap.get(registration.getName()), session);
+					registrationsToEnable.add(registration);
+				} else {
+					disableFilter(registration, session);
+				}
+			}
+			
+			Set<String> fusedFilters = enableFusedFilters(registrationsToEnable, filterParamsMap, session,
+			    maxInlineListSize);
+			for (HibernateFilterRegistration registration : registrationsToEnable) {
+				if (fusedFilters.contains(registration.getName())) {
+					disableFilter(registration, session);
 				} else {
-					session.disableFilter(registration.getName());
+					enableFilter(registration, filterParamsMap.get(registration.getName()), session, maxInlineListSize);
 				}
 			}
 			
+			filterSetupHistogram.record(System.nanoTime() - start);
+			
 			return session;
 		}
 		finally {
@@ -167,31 +199,236 @@ public class DataFilterSessionContext extends SpringSessionContext {
 		}
 	}
 	
+	/**
+	 * Enables the specified filter or one of its variants and binds the parameter values, list values
+	 * are padded to bucket sizes and an integer list that is larger than the maximum inline list size
+	 * is saved as an id set and the filter's id set variant for the parameter is enabled instead unless
+	 * the set can't be saved because the transaction is read only. An empty integer list is folded
+	 * into a constant by enabling the filter's empty list variant for the parameter instead.
+	 */
 	private void enableFilter(HibernateFilterRegistration registration, Map<String, Object> paramNameValueMap,
-	        Session session) {
+	        Session session, int maxInlineListSize) {
+		
+		if (registration.getProperty() != null && isEnabled(registration, session)) {
+			//The filter or one of its variants was already enabled for the class it is defined for, a filter
+			//added to a property shares its name and parameters so re-enabling it would discard that binding
+			return;
+		}
+		
+		HibernateFilterRegistration activeRegistration = registration;
+		String idSetParameterName = null;
+		String idSetKey = null;
+		String emptyListParameterName = null;
+		if (registration.getEmptyListVariants() != null && paramNameValueMap != null) {
+			for (Map.Entry<String, HibernateFilterRegistration> entry : registration.getEmptyListVariants().entrySet()) {
+				Collection<?> values = toCollection(paramNameValueMap.get(entry.getKey()));
+				if (values != null && values.isEmpty()) {
+					activeRegistration = entry.getValue();
+					emptyListParameterName = entry.getKey();
+					break;
+				}
+			}
+		}
+		
+		if (emptyListParameterName == null && registration.getIdSetVariants() != null && paramNameValueMap != null) {
+			for (Map.Entry<String, HibernateFilterRegistration> entry : registration.getIdSetVariants().entrySet()) {
+				Collection<?> values = toCollection(paramNameValueMap.get(entry.getKey()));
+				if (values != null && values.size() > maxInlineListSize) {
+					idSetKey = IdSetUtil.saveIdSet(values, session);
+					if (idSetKey == null) {
+						//The set can't be saved in a read only transaction, the values are bound as a list instead
+						break;
+					}
+					
+					activeRegistration = entry.getValue();
+					idSetParameterName = entry.getKey();
+					break;
+				}
+			}
+		}
 		
-		Filter filter = session.getEnabledFilter(registration.getName());
-		if (filter == null) {
-			filter = session.enableFilter(registration.getName());
+		//Only one of the filter and its variants can be enabled at a time
+		disableFilter(registration, session);
+		if (log.isDebugEnabled() && activeRegistration != registration) {
+			log.debug("Enabling " + activeRegistration.getName() + " in place of " + registration.getName());
 		}
 		
+		Filter filter = session.enableFilter(activeRegistration.getName());
+		Map<String, Integer> paramSizes = new LinkedHashMap();
 		if (registration.getParameters() != null) {
 			for (FilterParameter parameter : registration.getParameters()) {
+				if (parameter.getName().equals(emptyListParameterName)) {
+					paramSizes.put(parameter.getName(), 0);
+					continue;
+				}
+				
 				Object value = paramNameValueMap.get(parameter.getName());
-				if (value != null && value.getClass().isArray()) {
-					filter.setParameterList(parameter.getName(), (Object[]) value);
-				} else if (value instanceof Collection) {
-					filter.setParameterList(parameter.getName(), (Collection) value);
+				Collection<?> values = toCollection(value);
+				if (values != null) {
+					DataFilterMetrics.getParameterListSizeHistogram(parameter.getName()).record(values.size());
+				}
+				
+				paramSizes.put(parameter.getName(), values != null ? values.size() : 1);
+				
+				if (parameter.getName().equals(idSetParameterName)) {
+					filter.setParameter(parameter.getName() + Util.ID_SET_KEY_SUFFIX, idSetKey);
+				} else if (values != null && values.isEmpty()) {
+					//There is no variant to fold the list into a constant and an empty IN list is invalid sql
+					throw new APIException("The value of the list parameter " + parameter.getName() + " of the filter "
+					        + registration.getName() + " is empty");
+				} else if (values != null) {
+					filter.setParameterList(parameter.getName(), Util.padToBucketSize(values));
 				} else {
 					filter.setParameter(parameter.getName(), value);
 				}
 			}
 		}
 		
+		SlowQueryLog.filterEnabled(activeRegistration.getName(), paramSizes);
+	}
+	
+	/**
+	 * Enables the fused filters that are made of exactly the fusible filters to enable for their target
+	 * class, a fused filter isn't enabled if any of its filters requires one of its variants because of
+	 * the size of a bound list. Fused filters that aren't enabled are disabled.
+	 *
+	 * @return the names of the filters that were enabled as part of a fused filter
+	 */
+	private Set<String> enableFusedFilters(List<HibernateFilterRegistration> registrationsToEnable,
+	        Map<String, Map<String, Object>> filterParamsMap, Session session, int maxInlineListSize) {
+		
+		Set<String> fusedFilters = new HashSet();
+		List<HibernateFilterRegistration> fusedRegistrations = Util.getFusedFilterRegistrations();
+		if (fusedRegistrations.isEmpty()) {
+			return fusedFilters;
+		}
+		
+		Map<Class, Set<String>> classFiltersMap = new HashMap();
+		for (HibernateFilterRegistration registration : registrationsToEnable) {
+			//Filters that can't be fused are enabled separately, so they must not prevent the others from matching
+			if (Util.isFusible(registration)) {
+				classFiltersMap.computeIfAbsent(registration.getTargetClasses().get(0), k -> new HashSet())
+				        .add(registration.getName());
+			}
+		}
+		
+		for (HibernateFilterRegistration fused : fusedRegistrations) {
+			if (fused.getProperty() != null) {
+				continue;
+			}
+			
+			session.disableFilter(fused.getName());
+			Set<String> classFilters = classFiltersMap.get(fused.getTargetClasses().get(0));
+			if (classFilters == null || !classFilters.equals(new HashSet(fused.getFusedFilters()))) {
+				continue;
+			}
+			
+			Map<String, Object> paramNameValueMap = new HashMap();
+			boolean requiresVariant = false;
+			for (HibernateFilterRegistration registration : registrationsToEnable) {
+				if (registration.getProperty() == null && fused.getFusedFilters().contains(registration.getName())) {
+					Map<String, Object> values = filterParamsMap.get(registration.getName());
+					if (values != null) {
+						paramNameValueMap.putAll(values);
+					}
+					
+					requiresVariant = requiresVariant || requiresVariant(registration, values, maxInlineListSize);
+				}
+			}
+			
+			if (requiresVariant) {
+				continue;
+			}
+			
+			if (log.isDebugEnabled()) {
+				log.debug("Enabling " + fused.getName() + " in place of " + fused.getFusedFilters());
+			}
+			
+			Filter filter = session.enableFilter(fused.getName());
+			Map<String, Integer> paramSizes = new LinkedHashMap();
+			if (fused.getParameters() != null) {
+				for (FilterParameter parameter : fused.getParameters()) {
+					Object value = paramNameValueMap.get(parameter.getName());
+					Collection<?> values = toCollection(value);
+					if (values != null) {
+						DataFilterMetrics.getParameterListSizeHistogram(parameter.getName()).record(values.size());
+						filter.setParameterList(parameter.getName(), Util.padToBucketSize(values));
+					} else {
+						filter.setParameter(parameter.getName(), value);
+					}
+					
+					paramSizes.put(parameter.getName(), values != null ? values.size() : 1);
+				}
+			}
+			
+			SlowQueryLog.filterEnabled(fused.getName(), paramSizes);
+			fusedFilters.addAll(fused.getFusedFilters());
+		}
+		
+		return fusedFilters;
+	}
+	
+	/**
+	 * Checks if the specified filter has to be enabled as one of its variants because a list parameter
+	 * value is empty or larger than the maximum inline list size
+	 */
+	private boolean requiresVariant(HibernateFilterRegistration registration, Map<String, Object> paramNameValueMap,
+	        int maxInlineListSize) {
+		
+		if (paramNameValueMap == null || registration.getParameters() == null) {
+			return false;
+		}
+		
+		for (FilterParameter parameter : registration.getParameters()) {
+			Collection<?> values = toCollection(paramNameValueMap.get(parameter.getName()));
+			if (values != null && (values.isEmpty() || values.size() > maxInlineListSize)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private boolean isEnabled(HibernateFilterRegistration registration, Session session) {
+		if (session.getEnabledFilter(registration.getName()) != null) {
+			return true;
+		}
+		
+		List<HibernateFilterRegistration> variants = new ArrayList();
+		if (registration.getIdSetVariants() != null) {
+			variants.addAll(registration.getIdSetVariants().values());
+		}
+		
+		if (registration.getEmptyListVariants() != null) {
+			variants.addAll(registration.getEmptyListVariants().values());
+		}
+		
+		return variants.stream().anyMatch(variant -> session.getEnabledFilter(variant.getName()) != null);
+	}
+	
+	private Collection<?> toCollection(Object value) {
+		if (value != null && value.getClass().isArray()) {
+			return Arrays.asList((Object[]) value);
+		} else if (value instanceof Collection) {
+			return (Collection) value;
+		}
+		
+		return null;
+	}
+	
+	private void disableFilter(HibernateFilterRegistration registration, Session session) {
+		session.disableFilter(registration.getName());
+		if (registration.getIdSetVariants() != null) {
+			registration.getIdSetVariants().values().forEach(variant -> session.disableFilter(variant.getName()));
+		}
+		
+		if (registration.getEmptyListVariants() != null) {
+			registration.getEmptyListVariants().values().forEach(variant -> session.disableFilter(variant.getName()));
+		}
 	}
 	
 	private void disableAllFilters(Session session) {
-		for (FilterRegistration registration : Util.getHibernateFilterRegistrations()) {
+		for (FilterRegistration registration : Util.getHibernateFilterRegistrationsWithVariants()) {
 			session.disableFilter(registration.getName());
 		}
 	}
@@ -229,6 +466,7 @@ public class DataFilterSessionContext extends SpringSessionContext {
 		}
 		
 		areFiltersSet.remove();
+		SlowQueryLog.clearEnabledFilters();
 	}
 	
 }
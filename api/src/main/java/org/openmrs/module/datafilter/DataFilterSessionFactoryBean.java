@@ -13,6 +13,8 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.openmrs.api.db.hibernate.HibernateSessionFactoryBean;
 import org.openmrs.module.datafilter.registration.HibernateFilterRegistration;
@@ -53,6 +55,8 @@ public class DataFilterSessionFactoryBean extends HibernateSessionFactoryBean {
 			return;
 		}
 		
+		//Class names of the filtered classes so we can skip hbm files of other classes without loading them
+		Set<String> filteredClassNames = classFiltersMap.keySet().stream().map(Class::getName).collect(Collectors.toSet());
 		List<String> nonFilteredModuleResources = new ArrayList();
 		List<String> filteredModuleHbmFiles = new ArrayList();
 		File outputDir = new File(filteredResourcesLocation);
@@ -60,8 +64,8 @@ public class DataFilterSessionFactoryBean extends HibernateSessionFactoryBean {
 		for (int i = 0; i < mappingResources.length; i++) {
 			String resource = mappingResources[i];
 			String classname = Util.getMappedClassName(resource);
-			if (classname == null) {
-				//Some module hbm files are actually empty
+			if (classname == null || !filteredClassNames.contains(classname)) {
+				//Some module hbm files are actually empty, others are for classes with no registered filters
 				nonFilteredModuleResources.add(resource);
 				continue;
 			}
@@ -9,6 +9,8 @@
  */
 package org.openmrs.module.datafilter;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -19,11 +21,20 @@ public class FullTextDataFilterContext extends DataFilterContext {
 	
 	private Class<?> entityClass;
 	
+	private Collection<String> parameterNames;
+	
 	public FullTextDataFilterContext(String filterName, Map<String, Map<String, Object>> filterAndParamValueMap,
 	    Class<?> entityClass) {
 		
+		this(filterName, filterAndParamValueMap, entityClass, Collections.emptySet());
+	}
+	
+	public FullTextDataFilterContext(String filterName, Map<String, Map<String, Object>> filterAndParamValueMap,
+	    Class<?> entityClass, Collection<String> parameterNames) {
+		
 		super(filterName, filterAndParamValueMap);
 		this.entityClass = entityClass;
+		this.parameterNames = parameterNames;
 	}
 	
 	/**
@@ -35,4 +46,15 @@ public class FullTextDataFilterContext extends DataFilterContext {
 		return entityClass;
 	}
 	
+	/**
+	 * Checks if the filter declares a parameter with the specified name, this allows a listener to only
+	 * compute the values for the parameters of the filter implementation in use.
+	 *
+	 * @param parameterName the name of the parameter to check
+	 * @return true if the filter has the parameter otherwise false
+	 */
+	public boolean hasParameter(String parameterName) {
+		return parameterNames.contains(parameterName);
+	}
+	
 }
@@ -11,6 +11,8 @@ package org.openmrs.module.datafilter;
 
 import static org.openmrs.module.datafilter.DataFilterConstants.MODULE_ID;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -24,6 +26,7 @@ import org.openmrs.api.context.Context;
 import org.openmrs.api.context.Daemon;
 import org.openmrs.api.db.FullTextQueryAndEntityClass;
 import org.openmrs.api.db.FullTextQueryCreatedEvent;
+import org.openmrs.module.datafilter.metrics.DataFilterMetrics;
 import org.openmrs.module.datafilter.registration.FilterParameter;
 import org.openmrs.module.datafilter.registration.FullTextFilterRegistration;
 import org.slf4j.Logger;
@@ -37,6 +40,8 @@ public class FullTextQueryCreatedEventListener implements ApplicationListener<Fu
 	
 	private static final Logger log = LoggerFactory.getLogger(FullTextQueryCreatedEventListener.class);
 	
+	private volatile Map<Class<?>, List<FullTextFilterRegistration>> classRegistrationsMap;
+	
 	/**
 	 * @see ApplicationListener#onApplicationEvent(ApplicationEvent)
 	 */
@@ -58,22 +63,29 @@ public class FullTextQueryCreatedEventListener implements ApplicationListener<Fu
 			return;
 		}*/
 		
+		FullTextQueryAndEntityClass queryAndClass = (FullTextQueryAndEntityClass) event.getSource();
+		FullTextQuery query = queryAndClass.getQuery();
+		Class<?> entityClass = queryAndClass.getEntityClass();
+		
+		List<FullTextFilterRegistration> registrations = getClassRegistrationsMap().get(entityClass);
+		if (registrations == null) {
+			if (log.isDebugEnabled()) {
+				log.debug("Skipping enabling of filters on the full text query for " + entityClass.getName());
+			}
+			
+			return;
+		}
+		
 		Set<String> enabledFilters = new HashSet();
-		Set<Class> filteredClasses = new HashSet();
-		for (FullTextFilterRegistration registration : Util.getFullTextFilterRegistrations()) {
-			filteredClasses.addAll(registration.getTargetClasses());
+		for (FullTextFilterRegistration registration : registrations) {
 			if (!Util.skipFilter(registration.getName())) {
 				enabledFilters.add(registration.getName());
 			}
 		}
 		
-		FullTextQueryAndEntityClass queryAndClass = (FullTextQueryAndEntityClass) event.getSource();
-		FullTextQuery query = queryAndClass.getQuery();
-		Class<?> entityClass = queryAndClass.getEntityClass();
-		
-		if (!filteredClasses.contains(entityClass)) {
+		if (enabledFilters.isEmpty()) {
 			if (log.isDebugEnabled()) {
-				log.debug("Skipping enabling of filters on the full text query for " + entityClass.getName());
+				log.debug("All filters are skipped on the full text query for " + entityClass.getName());
 			}
 			
 			return;
@@ -85,7 +97,9 @@ public class FullTextQueryCreatedEventListener implements ApplicationListener<Fu
 		
 		Map<String, Map<String, Object>> filterParamsMap = new HashMap();
 		
-		filterLoop: for (FullTextFilterRegistration registration : Util.getFullTextFilterRegistrations()) {
+		List<DataFilterListener> listeners = Context.getRegisteredComponents(DataFilterListener.class);
+		
+		filterLoop: for (FullTextFilterRegistration registration : registrations) {
 			if (!enabledFilters.contains(registration.getName())) {
 				continue;
 			}
@@ -94,16 +108,21 @@ public class FullTextQueryCreatedEventListener implements ApplicationListener<Fu
 				filterParamsMap.put(registration.getName(), new HashMap());
 			}
 			
-			DataFilterContext filterContext = new FullTextDataFilterContext(registration.getName(), filterParamsMap,
-			        entityClass);
+			Set<String> parameterNames = new HashSet();
+			if (registration.getParameters() != null) {
+				registration.getParameters().forEach(p -> parameterNames.add(p.getName()));
+			}
 			
-			List<DataFilterListener> listeners = Context.getRegisteredComponents(DataFilterListener.class);
+			DataFilterContext filterContext = new FullTextDataFilterContext(registration.getName(), filterParamsMap,
+			        entityClass, parameterNames);
 			
 			for (DataFilterListener listener : listeners) {
 				if (listener.supports(registration.getName())) {
 					//In theory, expect one listener per filter, since we found one, no more will get called.
 					//TODO During filter registration, check for cases where a filter has multiple listeners
+					final long listenerStart = System.nanoTime();
 					boolean enable = listener.onEnableFilter(filterContext);
+					DataFilterMetrics.getListenerHistogram(listener.getClass()).record(System.nanoTime() - listenerStart);
 					if (!enable) {
 						enabledFilters.remove(registration.getName());
 						//Don't call anymore filters since we've found one.
@@ -120,6 +139,32 @@ public class FullTextQueryCreatedEventListener implements ApplicationListener<Fu
 		
 	}
 	
+	/**
+	 * Gets the immutable map of each filtered entity class to the full text filter registrations that
+	 * target it, the map is built once from the registrations since they never change after startup.
+	 *
+	 * @return a map of entity classes and their full text filter registrations
+	 */
+	protected Map<Class<?>, List<FullTextFilterRegistration>> getClassRegistrationsMap() {
+		if (classRegistrationsMap == null) {
+			synchronized (this) {
+				if (classRegistrationsMap == null) {
+					Map<Class<?>, List<FullTextFilterRegistration>> classRegistrations = new HashMap();
+					for (FullTextFilterRegistration registration : Util.getFullTextFilterRegistrations()) {
+						for (Class<?> clazz : registration.getTargetClasses()) {
+							classRegistrations.computeIfAbsent(clazz, c -> new ArrayList()).add(registration);
+						}
+					}
+					
+					classRegistrations.replaceAll((clazz, regs) -> Collections.unmodifiableList(regs));
+					classRegistrationsMap = Collections.unmodifiableMap(classRegistrations);
+				}
+			}
+		}
+		
+		return classRegistrationsMap;
+	}
+	
 	private void enableFilter(FullTextFilterRegistration registration, Map<String, Object> paramNameValueMap,
 	        FullTextQuery query) {
 		
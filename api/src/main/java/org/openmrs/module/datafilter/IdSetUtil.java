@@ -0,0 +1,298 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.apache.commons.collections.map.LRUMap;
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.datafilter.metrics.StatementTally;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists sets of integer ids that are too large to be bound as a list in a filter condition, the
+ * id set variant of the filter looks the values up by the set's key instead. A set's key is a hash
+ * of its sorted values so the same set is always stored once and its rows never change, this means
+ * they can be shared by all users with the same ids and never need to be invalidated.
+ * <p>
+ * A set is written on the connection of the session the filters are enabled on, as part of its
+ * transaction, so that setting up the filters never needs a second connection from the pool. The
+ * key of each set is stored with the time it was last used in a separate table, it is written after
+ * the values so that a visible key always means the set is complete. If the transaction is rolled
+ * back, the filters set on the thread are reset so that they are not left bound to a set whose rows
+ * no longer exist. The sets that haven't been used for a while are deleted by
+ * {@link #deleteUnusedIdSets(Date)}.
+ */
+public class IdSetUtil {
+	
+	private static final Logger log = LoggerFactory.getLogger(IdSetUtil.class);
+	
+	public static final String TABLE_NAME = DataFilterConstants.MODULE_ID + "_id_set";
+	
+	public static final String KEY_TABLE_NAME = DataFilterConstants.MODULE_ID + "_id_set_key";
+	
+	private static final String COUNT_SQL = "SELECT COUNT(*) FROM " + KEY_TABLE_NAME + " WHERE id_set_key = ?";
+	
+	private static final String INSERT_SQL_PREFIX = "INSERT INTO " + TABLE_NAME + " (id_set_key, id_value) VALUES ";
+	
+	private static final String INSERT_KEY_SQL = "INSERT INTO " + KEY_TABLE_NAME
+	        + " (id_set_key, date_last_used) VALUES (?, ?)";
+	
+	private static final String TOUCH_SQL = "UPDATE " + KEY_TABLE_NAME + " SET date_last_used = ? WHERE id_set_key = ?";
+	
+	private static final String DELETE_KEYS_SQL = "DELETE FROM " + KEY_TABLE_NAME + " WHERE date_last_used < :cutoff";
+	
+	private static final String DELETE_SQL = "DELETE FROM " + TABLE_NAME + " WHERE id_set_key NOT IN (SELECT "
+	        + "id_set_key FROM " + KEY_TABLE_NAME + ")";
+	
+	private static final int INSERT_BATCH_SIZE = 500;
+	
+	private static final int MAX_CACHED_KEYS = 1000;
+	
+	//How often the time a cached set was last used is written to the database
+	protected static final long TOUCH_INTERVAL = TimeUnit.HOURS.toMillis(1);
+	
+	private static final String STATEMENT_SOURCE = "IdSetUtil";
+	
+	//Keys of the saved sets mapped to the time they were last marked as used, the least recently used are evicted
+	private static final Map<String, Long> savedKeys = Collections.synchronizedMap(new LRUMap(MAX_CACHED_KEYS));
+	
+	/**
+	 * Gets the key of the set of the specified ids
+	 *
+	 * @param ids the ids
+	 * @return the hex encoded SHA-256 hash of the sorted distinct ids
+	 */
+	public static String getKey(Collection<?> ids) {
+		return getKey(toSortedSet(ids));
+	}
+	
+	/**
+	 * Saves the specified ids as a set if it isn't yet saved and marks it as used, the rows are written
+	 * on the connection of the specified session. If the connection is read only, an already saved
+	 * set can still be used but a new one can't be saved, in which case null is returned and the
+	 * caller has to bind the ids as a list instead.
+	 *
+	 * @param ids the ids to save
+	 * @param session the session the filters are enabled on
+	 * @return the key of the saved set or null if it can't be saved
+	 */
+	public static String saveIdSet(Collection<?> ids, Session session) {
+		SortedSet<Integer> sortedIds = toSortedSet(ids);
+		String key = getKey(sortedIds);
+		Long lastUsed = savedKeys.get(key);
+		if (lastUsed != null && System.currentTimeMillis() - lastUsed < TOUCH_INTERVAL) {
+			return key;
+		}
+		
+		return session.doReturningWork(connection -> {
+			if (connection.isReadOnly()) {
+				return exists(key, connection) ? key : null;
+			}
+			
+			//Without a transaction, a local one is used so that a set is never partially saved
+			final boolean autoCommit = connection.getAutoCommit();
+			if (autoCommit) {
+				connection.setAutoCommit(false);
+			}
+			
+			Savepoint savepoint = autoCommit ? null : connection.setSavepoint();
+			try {
+				if (!touch(key, connection)) {
+					if (log.isDebugEnabled()) {
+						log.debug("Saving id set with key " + key + " and " + sortedIds.size() + " ids");
+					}
+					
+					insert(key, new ArrayList(sortedIds), connection);
+				}
+				
+				if (autoCommit) {
+					connection.commit();
+				} else {
+					connection.releaseSavepoint(savepoint);
+				}
+			}
+			catch (SQLException e) {
+				if (autoCommit) {
+					connection.rollback();
+				} else {
+					connection.rollback(savepoint);
+				}
+				
+				//Another transaction could have saved the same set at the same time
+				if (!exists(key, connection)) {
+					log.warn("Failed to save the id set with key " + key + ", binding the ids as a list instead", e);
+					return null;
+				}
+			}
+			finally {
+				if (autoCommit) {
+					connection.setAutoCommit(true);
+				}
+			}
+			
+			if (autoCommit) {
+				savedKeys.put(key, System.currentTimeMillis());
+			} else {
+				//The rows are only visible to other transactions after the current one is committed and are
+				//discarded if it is rolled back, in which case the filters have to be set again with a new set
+				session.getTransaction().registerSynchronization(new Synchronization() {
+					
+					@Override
+					public void beforeCompletion() {
+					}
+					
+					@Override
+					public void afterCompletion(int status) {
+						if (status == Status.STATUS_COMMITTED) {
+							savedKeys.put(key, System.currentTimeMillis());
+						} else {
+							DataFilterSessionContext.reset();
+						}
+					}
+					
+				});
+			}
+			
+			return key;
+		});
+	}
+	
+	/**
+	 * Deletes the sets that haven't been used since the specified date, this has to be called outside
+	 * of any request since the rows are deleted in a separate stateless session and transaction.
+	 *
+	 * @param cutoff the date before which the sets were last used
+	 * @return the number of deleted sets
+	 */
+	public static int deleteUnusedIdSets(Date cutoff) {
+		SessionFactory sf = Context.getRegisteredComponents(SessionFactory.class).get(0);
+		StatelessSession session = sf.openStatelessSession();
+		Transaction tx = session.beginTransaction();
+		int deletedCount;
+		try {
+			//The keys are deleted first so that a set is never visible without its values
+			deletedCount = session.createSQLQuery(DELETE_KEYS_SQL).setParameter("cutoff", cutoff).executeUpdate();
+			session.createSQLQuery(DELETE_SQL).executeUpdate();
+			tx.commit();
+		}
+		catch (RuntimeException e) {
+			tx.rollback();
+			throw new APIException("Failed to delete the unused id sets", e);
+		}
+		finally {
+			session.close();
+		}
+		
+		savedKeys.clear();
+		if (log.isDebugEnabled()) {
+			log.debug("Deleted " + deletedCount + " id sets last used before " + cutoff);
+		}
+		
+		return deletedCount;
+	}
+	
+	private static boolean exists(String key, Connection connection) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(COUNT_SQL)) {
+			statement.setString(1, key);
+			StatementTally.record(STATEMENT_SOURCE);
+			try (ResultSet rs = statement.executeQuery()) {
+				return rs.next() && rs.getInt(1) > 0;
+			}
+		}
+	}
+	
+	private static boolean touch(String key, Connection connection) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(TOUCH_SQL)) {
+			statement.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+			statement.setString(2, key);
+			StatementTally.record(STATEMENT_SOURCE);
+			return statement.executeUpdate() > 0;
+		}
+	}
+	
+	private static void insert(String key, List<Integer> ids, Connection connection) throws SQLException {
+		for (int start = 0; start < ids.size(); start += INSERT_BATCH_SIZE) {
+			List<Integer> batch = ids.subList(start, Math.min(start + INSERT_BATCH_SIZE, ids.size()));
+			List<String> rows = Collections.nCopies(batch.size(), "(?, ?)");
+			try (PreparedStatement statement = connection
+			        .prepareStatement(INSERT_SQL_PREFIX + StringUtils.join(rows, ", "))) {
+				int index = 1;
+				for (Integer id : batch) {
+					statement.setString(index++, key);
+					statement.setInt(index++, id);
+				}
+				
+				statement.executeUpdate();
+				StatementTally.record(STATEMENT_SOURCE);
+			}
+		}
+		
+		try (PreparedStatement statement = connection.prepareStatement(INSERT_KEY_SQL)) {
+			statement.setString(1, key);
+			statement.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+			statement.executeUpdate();
+			StatementTally.record(STATEMENT_SOURCE);
+		}
+	}
+	
+	private static SortedSet<Integer> toSortedSet(Collection<?> ids) {
+		SortedSet<Integer> sortedIds = new TreeSet();
+		for (Object id : ids) {
+			sortedIds.add(id instanceof Number ? ((Number) id).intValue() : Integer.valueOf(id.toString()));
+		}
+		
+		return sortedIds;
+	}
+	
+	private static String getKey(SortedSet<Integer> sortedIds) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] hash = digest.digest(StringUtils.join(sortedIds, ",").getBytes(StandardCharsets.UTF_8));
+			StringBuilder key = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			
+			return key.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new APIException(e);
+		}
+	}
+	
+}
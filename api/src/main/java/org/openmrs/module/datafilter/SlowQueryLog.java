@@ -0,0 +1,334 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.datafilter.registration.HibernateFilterRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs the SQL statements that take longer than the configured threshold to execute to a dedicated
+ * log along with the names of the filters whose conditions were rendered into them and the number
+ * of values bound to each of their parameters, this makes it possible to tell if a slow statement
+ * is slow because of the added filter conditions. The log is enabled by setting the
+ * {@link DataFilterConstants#RUNTIME_PROP_SLOW_QUERY_THRESHOLD} runtime property to a number of
+ * milliseconds greater than zero, entries are written to the {@link DataFilterConstants#SLOW_QUERY_LOG}
+ * logger at info level.
+ * <p>
+ * A {@link FilterStatementInspector} keeps the SQL of the statement that is about to be executed on
+ * the current thread and a {@link ExecutionListener} that hibernate adds to each session times its
+ * execution, the filter conditions in a slow statement are found by matching the statement against
+ * the identifiers and keywords of each registered condition in the same order. Filters with identical
+ * conditions can't be told apart, only those enabled on the current thread are reported if any. The
+ * bound values aren't part of the SQL and string literals are masked so that no patient data is
+ * logged.
+ */
+public class SlowQueryLog {
+	
+	private static final Logger log = LoggerFactory.getLogger(SlowQueryLog.class);
+	
+	private static final Logger slowQueryLog = LoggerFactory.getLogger(DataFilterConstants.SLOW_QUERY_LOG);
+	
+	private static final Pattern ALIAS_PATTERN = Pattern.compile("\\{[^}]*}");
+	
+	private static final Pattern TOKEN_PATTERN = Pattern.compile(":?[A-Za-z_][\\w.$]*");
+	
+	private static final Pattern STRING_LITERAL_PATTERN = Pattern.compile("'(?:[^']|'')*'");
+	
+	private static final ThreadLocal<String> currentSql = new ThreadLocal();
+	
+	private static final ThreadLocal<Map<String, Map<String, Integer>>> activeFilters = new ThreadLocal();
+	
+	private static volatile long thresholdNanos;
+	
+	private static volatile Map<List<String>, List<String>> fingerprintFiltersMap;
+	
+	/**
+	 * Reads the threshold from the runtime properties and if it is set, configures hibernate to install
+	 * the statement inspector and the execution listener when the session factory is built.
+	 */
+	protected static void initialize() {
+		Properties props = Context.getRuntimeProperties();
+		String threshold = props == null ? null
+		        : StringUtils.trimToNull(props.getProperty(DataFilterConstants.RUNTIME_PROP_SLOW_QUERY_THRESHOLD));
+		if (threshold == null) {
+			thresholdNanos = 0;
+			return;
+		}
+		
+		try {
+			thresholdNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(threshold));
+		}
+		catch (NumberFormatException e) {
+			throw new APIException("Invalid value for the " + DataFilterConstants.RUNTIME_PROP_SLOW_QUERY_THRESHOLD
+			        + " runtime property", e);
+		}
+		
+		if (thresholdNanos <= 0) {
+			return;
+		}
+		
+		if (props.getProperty(AvailableSettings.STATEMENT_INSPECTOR) != null
+		        || props.getProperty(AvailableSettings.AUTO_SESSION_EVENTS_LISTENER) != null) {
+			log.warn("Not logging slow queries because a statement inspector or session events listener is already "
+			        + "configured");
+			thresholdNanos = 0;
+			return;
+		}
+		
+		Context.addConfigProperty(AvailableSettings.STATEMENT_INSPECTOR, FilterStatementInspector.class.getName());
+		Context.addConfigProperty(AvailableSettings.AUTO_SESSION_EVENTS_LISTENER, ExecutionListener.class.getName());
+		
+		log.info("Logging statements that take longer than " + threshold + "ms");
+	}
+	
+	/**
+	 * Checks whether the slow query log is enabled
+	 *
+	 * @return true if the slow query log is enabled otherwise false
+	 */
+	public static boolean isEnabled() {
+		return thresholdNanos > 0;
+	}
+	
+	/**
+	 * Records a filter enabled on the current thread, it does nothing if the slow query log is
+	 * disabled.
+	 *
+	 * @param filterName the name of the filter
+	 * @param paramSizes the names of the filter parameters mapped to the number of values bound to them
+	 */
+	public static void filterEnabled(String filterName, Map<String, Integer> paramSizes) {
+		if (!isEnabled()) {
+			return;
+		}
+		
+		Map<String, Map<String, Integer>> filters = activeFilters.get();
+		if (filters == null) {
+			filters = new LinkedHashMap();
+			activeFilters.set(filters);
+		}
+		
+		filters.put(filterName, paramSizes);
+	}
+	
+	/**
+	 * Clears the filters recorded as enabled on the current thread
+	 */
+	public static void clearEnabledFilters() {
+		activeFilters.remove();
+	}
+	
+	/**
+	 * Creates a log entry for the specified statement
+	 *
+	 * @param sql the SQL of the statement
+	 * @param elapsedNanos the execution time of the statement in nanoseconds
+	 * @param fingerprintFiltersMap the fingerprints of the filter conditions mapped to the names of the
+	 *            filters with the conditions
+	 * @param enabledFilters the filters enabled on the current thread mapped to their parameter sizes
+	 * @return the log entry
+	 */
+	protected static String createEntry(String sql, long elapsedNanos, Map<List<String>, List<String>> fingerprintFiltersMap,
+	        Map<String, Map<String, Integer>> enabledFilters) {
+		
+		String lowerCaseSql = sql.toLowerCase(Locale.ROOT);
+		List<String> filters = new ArrayList();
+		for (Map.Entry<List<String>, List<String>> entry : fingerprintFiltersMap.entrySet()) {
+			if (!matches(lowerCaseSql, entry.getKey())) {
+				continue;
+			}
+			
+			List<String> candidates = entry.getValue();
+			boolean anyEnabled = candidates.stream().anyMatch(enabledFilters::containsKey);
+			for (String candidate : candidates) {
+				if (enabledFilters.containsKey(candidate)) {
+					Map<String, Integer> paramSizes = enabledFilters.get(candidate);
+					filters.add(paramSizes == null || paramSizes.isEmpty() ? candidate : candidate + paramSizes);
+				} else if (!anyEnabled) {
+					filters.add(candidate);
+				}
+			}
+		}
+		
+		return TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms filters=" + filters + " sql="
+		        + maskLiterals(sql).replaceAll("\\s+", " ").trim();
+	}
+	
+	/**
+	 * Gets the identifiers and keywords in the specified filter condition in lower case, excluding the
+	 * parameters and alias injection points.
+	 *
+	 * @param condition the filter condition
+	 * @return the list of tokens
+	 */
+	protected static List<String> toFingerprint(String condition) {
+		List<String> tokens = new ArrayList();
+		Matcher matcher = TOKEN_PATTERN.matcher(ALIAS_PATTERN.matcher(condition).replaceAll(""));
+		while (matcher.find()) {
+			String token = matcher.group();
+			if (!token.startsWith(":")) {
+				tokens.add(token.toLowerCase(Locale.ROOT));
+			}
+		}
+		
+		return tokens;
+	}
+	
+	/**
+	 * Checks if the specified SQL contains all the tokens of the specified fingerprint in order, the
+	 * column names hibernate qualifies with table aliases when rendering a condition still match.
+	 *
+	 * @param lowerCaseSql the SQL in lower case
+	 * @param fingerprint the fingerprint
+	 * @return true if the SQL matches otherwise false
+	 */
+	protected static boolean matches(String lowerCaseSql, List<String> fingerprint) {
+		if (fingerprint.isEmpty()) {
+			return false;
+		}
+		
+		int index = 0;
+		for (String token : fingerprint) {
+			index = lowerCaseSql.indexOf(token, index);
+			if (index < 0) {
+				return false;
+			}
+			
+			index += token.length();
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Replaces the string literals in the specified SQL with a question mark
+	 *
+	 * @param sql the SQL
+	 * @return the masked SQL
+	 */
+	protected static String maskLiterals(String sql) {
+		return STRING_LITERAL_PATTERN.matcher(sql).replaceAll("'?'");
+	}
+	
+	private static Map<List<String>, List<String>> getFingerprintFiltersMap() {
+		if (fingerprintFiltersMap == null) {
+			synchronized (SlowQueryLog.class) {
+				if (fingerprintFiltersMap == null) {
+					List<String> dialectNames = Util.getDialectNames();
+					Map<List<String>, List<String>> map = new LinkedHashMap();
+					for (HibernateFilterRegistration registration : Util.getHibernateFilterRegistrationsWithVariants()) {
+						String condition = Util.getCondition(registration, dialectNames);
+						if (condition != null) {
+							map.computeIfAbsent(toFingerprint(condition), k -> new ArrayList()).add(registration.getName());
+						}
+					}
+					
+					fingerprintFiltersMap = map;
+				}
+			}
+		}
+		
+		return fingerprintFiltersMap;
+	}
+	
+	private static void logIfSlow(String sql, long elapsedNanos) {
+		if (sql == null || elapsedNanos < thresholdNanos || !slowQueryLog.isInfoEnabled()) {
+			return;
+		}
+		
+		Map<String, Map<String, Integer>> enabledFilters = activeFilters.get();
+		try {
+			slowQueryLog.info(createEntry(sql, elapsedNanos, getFingerprintFiltersMap(),
+			    enabledFilters != null ? enabledFilters : Collections.emptyMap()));
+		}
+		catch (RuntimeException e) {
+			//Never fail the statement because of the log
+			log.warn("Failed to log slow statement", e);
+		}
+	}
+	
+	/**
+	 * Hibernate {@link StatementInspector} that keeps the SQL of the statement that is about to be
+	 * executed on the current thread, the SQL is returned unchanged.
+	 */
+	public static class FilterStatementInspector implements StatementInspector {
+		
+		/**
+		 * @see StatementInspector#inspect(String)
+		 */
+		@Override
+		public String inspect(String sql) {
+			currentSql.set(sql);
+			return sql;
+		}
+		
+	}
+	
+	/**
+	 * Session event listener that times the execution of the statements on the session it is added to
+	 * and logs those that take longer than the threshold.
+	 */
+	public static class ExecutionListener extends BaseSessionEventListener {
+		
+		private long start;
+		
+		/**
+		 * @see BaseSessionEventListener#jdbcExecuteStatementStart()
+		 */
+		@Override
+		public void jdbcExecuteStatementStart() {
+			start = System.nanoTime();
+		}
+		
+		/**
+		 * @see BaseSessionEventListener#jdbcExecuteStatementEnd()
+		 */
+		@Override
+		public void jdbcExecuteStatementEnd() {
+			logIfSlow(currentSql.get(), System.nanoTime() - start);
+		}
+		
+		/**
+		 * @see BaseSessionEventListener#jdbcExecuteBatchStart()
+		 */
+		@Override
+		public void jdbcExecuteBatchStart() {
+			start = System.nanoTime();
+		}
+		
+		/**
+		 * @see BaseSessionEventListener#jdbcExecuteBatchEnd()
+		 */
+		@Override
+		public void jdbcExecuteBatchEnd() {
+			logIfSlow(currentSql.get(), System.nanoTime() - start);
+		}
+		
+	}
+	
+}
@@ -22,15 +22,31 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import javax.persistence.Entity;
 import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
@@ -53,11 +69,14 @@ import org.hibernate.annotations.Filters;
 import org.hibernate.annotations.ParamDef;
 import org.hibernate.cfg.Environment;
 import org.hibernate.internal.util.xml.DTDEntityResolver;
+import org.hibernate.search.annotations.ClassBridges;
 import org.hibernate.search.annotations.FullTextFilterDefs;
 import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.AdministrationDAO;
 import org.openmrs.module.datafilter.annotations.AggregateAnnotation;
+import org.openmrs.module.datafilter.annotations.ClassBridgeAnnotation;
+import org.openmrs.module.datafilter.annotations.ClassBridgesAnnotation;
 import org.openmrs.module.datafilter.annotations.FilterAnnotation;
 import org.openmrs.module.datafilter.annotations.FilterDefAnnotation;
 import org.openmrs.module.datafilter.annotations.FilterDefsAnnotation;
@@ -65,6 +84,8 @@ import org.openmrs.module.datafilter.annotations.FiltersAnnotation;
 import org.openmrs.module.datafilter.annotations.FullTextFilterDefAnnotation;
 import org.openmrs.module.datafilter.annotations.FullTextFilterDefsAnnotation;
 import org.openmrs.module.datafilter.annotations.ParamDefAnnotation;
+import org.openmrs.module.datafilter.metrics.StatementTally;
+import org.openmrs.module.datafilter.registration.ClassBridgeRegistration;
 import org.openmrs.module.datafilter.registration.FullTextFilterRegistration;
 import org.openmrs.module.datafilter.registration.HibernateFilterParameter;
 import org.openmrs.module.datafilter.registration.HibernateFilterRegistration;
@@ -98,8 +119,24 @@ public class Util {
 	
 	private static final String UPDATE_MAPPING_LOC_XSLT_TEMPLATE = "update-mapping-loc-xslt-template.xml";
 	
+	public static final String ID_SET_SUFFIX = "IdSet";
+	
+	public static final String ID_SET_KEY_SUFFIX = ID_SET_SUFFIX + "Key";
+	
+	public static final String EMPTY_LIST_SUFFIX = "Empty";
+	
+	public static final String FALSE_CONDITION = "1=0";
+	
+	public static final String TRUE_CONDITION = "1=1";
+	
+	public static final String FUSED_FILTER_NAME_PREFIX = DataFilterConstants.MODULE_ID + "_fused";
+	
+	private static final int MAX_FUSED_FILTERS_PER_CLASS = 4;
+	
 	private static List<HibernateFilterRegistration> hibernateFilterRegistrations;
 	
+	private static List<HibernateFilterRegistration> fusedFilterRegistrations;
+	
 	private static List<FullTextFilterRegistration> fullTextFilterRegistrations;
 	
 	private static XPath xpath = XPathFactory.newInstance().newXPath();
@@ -108,6 +145,8 @@ public class Util {
 	
 	private static DocumentBuilder documentBuilder;
 	
+	private static XMLInputFactory xmlInputFactory;
+	
 	private static List<String> mappingResources;
 	
 	private static Template addEntityFilterXsltTemplate;
@@ -123,6 +162,11 @@ public class Util {
 			throw new RuntimeException(e);
 		}
 		
+		//We only sniff the root and first class elements of hbm files, there is no need to load the DTD
+		xmlInputFactory = XMLInputFactory.newInstance();
+		xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		
 		Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
 		cfg.setDefaultEncoding(StandardCharsets.UTF_8.name());
 		cfg.setClassLoaderForTemplateLoading(OpenmrsClassLoader.getInstance(), "");
@@ -153,15 +197,46 @@ public class Util {
 	 * @return true if the filter is disabled otherwise false
 	 */
 	public static boolean isFilterDisabled(String filterName) {
+		return "true".equalsIgnoreCase(getGlobalPropertyValue(filterName + DataFilterConstants.DISABLED));
+	}
+	
+	/**
+	 * Gets the maximum number of values of an integer list filter parameter to bind inline, larger
+	 * lists are saved as an id set which the id set variant of the filter looks up.
+	 *
+	 * @return the maximum inline list size
+	 */
+	public static int getMaxInlineListSize() {
+		String value = getGlobalPropertyValue(DataFilterConstants.GP_MAX_INLINE_LIST_SIZE);
+		if (StringUtils.isNotBlank(value)) {
+			try {
+				return Integer.parseInt(value);
+			}
+			catch (NumberFormatException e) {
+				log.warn("Ignoring invalid value for global property " + DataFilterConstants.GP_MAX_INLINE_LIST_SIZE);
+			}
+		}
+		
+		return DataFilterConstants.DEFAULT_MAX_INLINE_LIST_SIZE;
+	}
+	
+	/**
+	 * Gets the trimmed value of the global property with the specified name with a plain SQL query so
+	 * that the session isn't flushed.
+	 *
+	 * @param property the name of the global property
+	 * @return the value of the global property or null if it isn't set
+	 */
+	private static String getGlobalPropertyValue(String property) {
 		AdministrationDAO adminDAO = Context.getRegisteredComponent("adminDAO", AdministrationDAO.class);
-		List<List<Object>> rows = adminDAO.executeSQL("SELECT property_value FROM global_property WHERE property = '"
-		        + filterName + DataFilterConstants.DISABLED + "'",
-		    true);
+		List<List<Object>> rows = adminDAO
+		        .executeSQL("SELECT property_value FROM global_property WHERE property = '" + property + "'", true);
+		StatementTally.record("Util.getGlobalPropertyValue");
 		if (rows.isEmpty() || rows.get(0).isEmpty() || rows.get(0).get(0) == null) {
-			return false;
+			return null;
 		}
 		
-		return "true".equalsIgnoreCase(rows.get(0).get(0).toString().trim());
+		return rows.get(0).get(0).toString().trim();
 	}
 	
 	protected static List<HibernateFilterRegistration> getHibernateFilterRegistrations() {
@@ -172,6 +247,417 @@ public class Util {
 		return hibernateFilterRegistrations;
 	}
 	
+	/**
+	 * Gets the hibernate filter registrations including their generated variants, the variants have to
+	 * be defined for the same classes as the filters they are enabled in place of.
+	 *
+	 * @return a list of hibernate filter registrations
+	 */
+	protected static List<HibernateFilterRegistration> getHibernateFilterRegistrationsWithVariants() {
+		List<HibernateFilterRegistration> registrations = new ArrayList();
+		for (HibernateFilterRegistration registration : getHibernateFilterRegistrations()) {
+			registrations.add(registration);
+			if (registration.getIdSetVariants() != null) {
+				registrations.addAll(registration.getIdSetVariants().values());
+			}
+			
+			if (registration.getEmptyListVariants() != null) {
+				registrations.addAll(registration.getEmptyListVariants().values());
+			}
+		}
+		
+		registrations.addAll(getFusedFilterRegistrations());
+		
+		return registrations;
+	}
+	
+	/**
+	 * Gets the fused filter registrations, these are only generated when filter fusion is enabled
+	 *
+	 * @return a list of hibernate filter registrations
+	 * @see #isFilterFusionEnabled()
+	 */
+	protected static List<HibernateFilterRegistration> getFusedFilterRegistrations() {
+		getHibernateFilterRegistrations();
+		return fusedFilterRegistrations != null ? fusedFilterRegistrations : Collections.emptyList();
+	}
+	
+	/**
+	 * Checks whether filter fusion is enabled, it is enabled by setting the
+	 * {@link DataFilterConstants#RUNTIME_PROP_FUSE_FILTERS} runtime property to true, it can't be a
+	 * global property because the fused filters are generated before the filters are registered.
+	 *
+	 * @return true if filter fusion is enabled otherwise false
+	 */
+	protected static boolean isFilterFusionEnabled() {
+		Properties props = Context.getRuntimeProperties();
+		if (props == null) {
+			return false;
+		}
+		
+		return "true".equalsIgnoreCase(StringUtils.trim(props.getProperty(DataFilterConstants.RUNTIME_PROP_FUSE_FILTERS)));
+	}
+	
+	/**
+	 * Generates the fused filters for the specified filter registrations, for each class with more than
+	 * one filter, a fused filter is generated for each combination of at least two of its filters, the
+	 * condition of the fused filter is the conjunction of the conditions of the filters it is made of
+	 * and its parameters are the union of theirs. A fused filter is also added to the properties that
+	 * the filters it is made of are added to. Filters that have aliases, target multiple classes or
+	 * declare a parameter with the same name as another filter in the combination are never fused.
+	 *
+	 * @param registrations the filter registrations
+	 * @return the fused filter registrations
+	 */
+	protected static List<HibernateFilterRegistration> createFusedFilters(List<HibernateFilterRegistration> registrations) {
+		Map<Class, List<HibernateFilterRegistration>> classFiltersMap = new LinkedHashMap();
+		Map<String, List<HibernateFilterRegistration>> filterPropertyRegistrationsMap = new HashMap();
+		for (HibernateFilterRegistration registration : registrations) {
+			if (registration.getProperty() != null) {
+				filterPropertyRegistrationsMap.computeIfAbsent(registration.getName(), k -> new ArrayList())
+				        .add(registration);
+			} else if (isFusible(registration)) {
+				classFiltersMap.computeIfAbsent(registration.getTargetClasses().get(0), k -> new ArrayList())
+				        .add(registration);
+			} else if (log.isDebugEnabled()) {
+				log.debug("The filter " + registration.getName() + " is never fused because it has aliases or targets "
+				        + "multiple classes, it is always enabled separately");
+			}
+		}
+		
+		List<HibernateFilterRegistration> fusedRegistrations = new ArrayList();
+		for (Map.Entry<Class, List<HibernateFilterRegistration>> entry : classFiltersMap.entrySet()) {
+			List<HibernateFilterRegistration> classFilters = entry.getValue();
+			if (classFilters.size() < 2) {
+				continue;
+			}
+			
+			if (classFilters.size() > MAX_FUSED_FILTERS_PER_CLASS) {
+				log.warn("Skipping fusion of the filters for " + entry.getKey().getName() + " because it has more than "
+				        + MAX_FUSED_FILTERS_PER_CLASS + " filters");
+				continue;
+			}
+			
+			for (int mask = 1; mask < (1 << classFilters.size()); mask++) {
+				if (Integer.bitCount(mask) < 2) {
+					continue;
+				}
+				
+				List<HibernateFilterRegistration> members = new ArrayList();
+				for (int i = 0; i < classFilters.size(); i++) {
+					if ((mask & (1 << i)) != 0) {
+						members.add(classFilters.get(i));
+					}
+				}
+				
+				String name = FUSED_FILTER_NAME_PREFIX + entry.getKey().getSimpleName() + "_" + mask;
+				HibernateFilterRegistration fused = createFusedFilter(name, entry.getKey(), members);
+				if (fused == null) {
+					continue;
+				}
+				
+				fusedRegistrations.add(fused);
+				fusedRegistrations.addAll(createFusedPropertyFilters(fused, members, filterPropertyRegistrationsMap));
+			}
+		}
+		
+		return fusedRegistrations;
+	}
+	
+	/**
+	 * Checks if the specified filter can be part of a fused filter, filters that are added to a
+	 * property, have aliases or target multiple classes are never fused. The same check is applied when
+	 * matching the filters to enable against the fused filters.
+	 *
+	 * @param registration the filter registration to check
+	 * @return true if the filter can be fused otherwise false
+	 */
+	protected static boolean isFusible(HibernateFilterRegistration registration) {
+		return registration.getProperty() == null && registration.getTargetClasses().size() == 1
+		        && CollectionUtils.isEmpty(registration.getAliases()) && !registration.isDeduceAliasInjectionPoints();
+	}
+	
+	private static HibernateFilterRegistration createFusedFilter(String name, Class clazz,
+	        List<HibernateFilterRegistration> members) {
+		
+		Map<String, HibernateFilterParameter> nameParameterMap = new LinkedHashMap();
+		Set<String> dialectKeys = new LinkedHashSet();
+		for (HibernateFilterRegistration member : members) {
+			if (member.getParameters() != null) {
+				for (HibernateFilterParameter parameter : member.getParameters()) {
+					if (nameParameterMap.put(parameter.getName(), parameter) != null) {
+						if (log.isDebugEnabled()) {
+							log.debug("Skipping fused filter " + name + " because the parameter " + parameter.getName()
+							        + " is declared by more than one filter");
+						}
+						
+						return null;
+					}
+				}
+			}
+			
+			if (member.getDialectConditions() != null) {
+				member.getDialectConditions().keySet().forEach(key -> dialectKeys.add(key.toLowerCase(Locale.ROOT)));
+			}
+		}
+		
+		HibernateFilterRegistration fused = new HibernateFilterRegistration();
+		fused.setName(name);
+		fused.setTargetClasses(Collections.singletonList(clazz));
+		fused.setCondition(toConjunction(members.stream().map(m -> m.getCondition()).collect(Collectors.toList())));
+		if (!dialectKeys.isEmpty()) {
+			Map<String, String> dialectConditions = new LinkedHashMap();
+			for (String key : dialectKeys) {
+				List<String> dialectNames = Collections.singletonList(key);
+				dialectConditions.put(key,
+				    toConjunction(members.stream().map(m -> getCondition(m, dialectNames)).collect(Collectors.toList())));
+			}
+			
+			fused.setDialectConditions(dialectConditions);
+		}
+		
+		if (!nameParameterMap.isEmpty()) {
+			fused.setParameters(new ArrayList(nameParameterMap.values()));
+		}
+		
+		fused.setFusedFilters(members.stream().map(m -> m.getName()).collect(Collectors.toList()));
+		
+		return fused;
+	}
+	
+	private static List<HibernateFilterRegistration> createFusedPropertyFilters(HibernateFilterRegistration fused,
+	        List<HibernateFilterRegistration> members,
+	        Map<String, List<HibernateFilterRegistration>> filterPropertyRegistrationsMap) {
+		
+		Map<List<Object>, List<String>> propertyConditionsMap = new LinkedHashMap();
+		for (HibernateFilterRegistration member : members) {
+			for (HibernateFilterRegistration propertyRegistration : filterPropertyRegistrationsMap
+			        .getOrDefault(member.getName(), Collections.emptyList())) {
+				List<Object> key = Arrays.asList(propertyRegistration.getTargetClasses().get(0),
+				    propertyRegistration.getProperty());
+				propertyConditionsMap.computeIfAbsent(key, k -> new ArrayList()).add(propertyRegistration.getCondition());
+			}
+		}
+		
+		List<HibernateFilterRegistration> propertyRegistrations = new ArrayList();
+		for (Map.Entry<List<Object>, List<String>> entry : propertyConditionsMap.entrySet()) {
+			HibernateFilterRegistration propertyRegistration = new HibernateFilterRegistration();
+			propertyRegistration.setName(fused.getName());
+			propertyRegistration.setTargetClasses(Collections.singletonList((Class) entry.getKey().get(0)));
+			propertyRegistration.setProperty((String) entry.getKey().get(1));
+			propertyRegistration.setCondition(toConjunction(entry.getValue()));
+			propertyRegistration.setFusedFilters(fused.getFusedFilters());
+			propertyRegistrations.add(propertyRegistration);
+		}
+		
+		return propertyRegistrations;
+	}
+	
+	private static String toConjunction(List<String> conditions) {
+		if (conditions.size() == 1) {
+			return conditions.get(0);
+		}
+		
+		return conditions.stream().map(condition -> "(" + condition + ")").collect(Collectors.joining(" AND "));
+	}
+	
+	/**
+	 * Generates the id set variants of the specified filter registrations, a variant is generated for
+	 * each integer parameter of a filter that its conditions only use in an IN (:name) list, in the
+	 * variant the list is replaced with a sub query of the values in the id set table matching the key
+	 * bound to the nameIdSetKey parameter. Registrations that add the same filter to a property get the
+	 * same variants.
+	 *
+	 * @param registrations the filter registrations
+	 */
+	protected static void addIdSetVariants(List<HibernateFilterRegistration> registrations) {
+		for (Map.Entry<HibernateFilterRegistration, Set<String>> entry : getListParameterNames(registrations).entrySet()) {
+			HibernateFilterRegistration registration = entry.getKey();
+			for (String paramName : entry.getValue()) {
+				HibernateFilterParameter keyParameter = new HibernateFilterParameter();
+				keyParameter.setName(paramName + ID_SET_KEY_SUFFIX);
+				keyParameter.setType("string");
+				HibernateFilterRegistration variant = createVariant(registration, paramName + ID_SET_SUFFIX, paramName,
+				    keyParameter, condition -> toIdSetCondition(condition, paramName));
+				
+				if (registration.getIdSetVariants() == null) {
+					registration.setIdSetVariants(new LinkedHashMap());
+				}
+				
+				registration.getIdSetVariants().put(paramName, variant);
+			}
+		}
+	}
+	
+	/**
+	 * Generates the empty list variants of the specified filter registrations, a variant is generated
+	 * for each integer parameter of a filter that its conditions only use in an IN (:name) list, in the
+	 * variant the list predicate is folded into the constant {@link #FALSE_CONDITION} or
+	 * {@link #TRUE_CONDITION} for a NOT IN list since no value can be in an empty list, a filter with a
+	 * condition that is just the list predicate becomes a deny all filter. Registrations that add the
+	 * same filter to a property get the same variants.
+	 *
+	 * @param registrations the filter registrations
+	 */
+	protected static void addEmptyListVariants(List<HibernateFilterRegistration> registrations) {
+		for (Map.Entry<HibernateFilterRegistration, Set<String>> entry : getListParameterNames(registrations).entrySet()) {
+			HibernateFilterRegistration registration = entry.getKey();
+			for (String paramName : entry.getValue()) {
+				HibernateFilterRegistration variant = createVariant(registration, paramName + EMPTY_LIST_SUFFIX, paramName,
+				    null, condition -> toEmptyListCondition(condition, paramName));
+				
+				if (registration.getEmptyListVariants() == null) {
+					registration.setEmptyListVariants(new LinkedHashMap());
+				}
+				
+				registration.getEmptyListVariants().put(paramName, variant);
+			}
+		}
+	}
+	
+	/**
+	 * Gets the names of the integer parameters of each of the specified registrations that are only
+	 * used in IN (:name) lists by the condition and all the dialect specific conditions.
+	 *
+	 * @param registrations the filter registrations
+	 * @return a map of the registrations and the names of their list parameters
+	 */
+	private static Map<HibernateFilterRegistration, Set<String>> getListParameterNames(
+	        List<HibernateFilterRegistration> registrations) {
+		
+		Map<String, Set<String>> filterIntegerParamsMap = new HashMap();
+		for (HibernateFilterRegistration registration : registrations) {
+			if (registration.getParameters() != null) {
+				for (HibernateFilterParameter parameter : registration.getParameters()) {
+					if ("integer".equalsIgnoreCase(parameter.getType())) {
+						filterIntegerParamsMap.computeIfAbsent(registration.getName(), k -> new LinkedHashSet())
+						        .add(parameter.getName());
+					}
+				}
+			}
+		}
+		
+		Map<HibernateFilterRegistration, Set<String>> registrationParamsMap = new LinkedHashMap();
+		for (HibernateFilterRegistration registration : registrations) {
+			Set<String> paramNames = filterIntegerParamsMap.getOrDefault(registration.getName(), Collections.emptySet());
+			for (String paramName : paramNames) {
+				if (!isOnlyUsedAsList(registration.getCondition(), paramName)) {
+					continue;
+				}
+				
+				if (registration.getDialectConditions() != null && !registration.getDialectConditions().values().stream()
+				        .allMatch(condition -> isOnlyUsedAsList(condition, paramName))) {
+					continue;
+				}
+				
+				registrationParamsMap.computeIfAbsent(registration, k -> new LinkedHashSet()).add(paramName);
+			}
+		}
+		
+		return registrationParamsMap;
+	}
+	
+	/**
+	 * Creates a variant of the specified registration with its conditions converted by the specified
+	 * function and the specified parameter replaced with another one or just removed.
+	 *
+	 * @param registration the registration to create a variant of
+	 * @param suffix the suffix to append to the name of the filter to generate the name of the variant
+	 * @param paramName the name of the parameter to replace
+	 * @param replacement the parameter to use in place of the replaced one, can be null
+	 * @param converter the function to apply to the conditions
+	 * @return the created variant
+	 */
+	private static HibernateFilterRegistration createVariant(HibernateFilterRegistration registration, String suffix,
+	        String paramName, HibernateFilterParameter replacement, Function<String, String> converter) {
+		
+		HibernateFilterRegistration variant = new HibernateFilterRegistration();
+		variant.setName(registration.getName() + "_" + suffix);
+		variant.setVariantOf(registration.getName());
+		variant.setTargetClasses(registration.getTargetClasses());
+		variant.setProperty(registration.getProperty());
+		variant.setDefaultCondition(registration.getDefaultCondition());
+		variant.setCondition(converter.apply(registration.getCondition()));
+		if (registration.getDialectConditions() != null) {
+			Map<String, String> variantDialectConditions = new LinkedHashMap();
+			for (Map.Entry<String, String> entry : registration.getDialectConditions().entrySet()) {
+				variantDialectConditions.put(entry.getKey(), converter.apply(entry.getValue()));
+			}
+			
+			variant.setDialectConditions(variantDialectConditions);
+		}
+		
+		variant.setDeduceAliasInjectionPoints(registration.isDeduceAliasInjectionPoints());
+		variant.setAliases(registration.getAliases());
+		if (registration.getParameters() != null) {
+			List<HibernateFilterParameter> parameters = new ArrayList();
+			for (HibernateFilterParameter parameter : registration.getParameters()) {
+				if (!parameter.getName().equals(paramName)) {
+					parameters.add(parameter);
+				} else if (replacement != null) {
+					parameters.add(replacement);
+				}
+			}
+			
+			variant.setParameters(parameters);
+		}
+		
+		return variant;
+	}
+	
+	private static Pattern getListPattern(String paramName) {
+		return Pattern.compile("(?i)\\bIN\\s*\\(\\s*:" + Pattern.quote(paramName) + "\\s*\\)");
+	}
+	
+	private static boolean isOnlyUsedAsList(String condition, String paramName) {
+		if (condition == null || !getListPattern(paramName).matcher(condition).find()) {
+			return false;
+		}
+		
+		String remainder = getListPattern(paramName).matcher(condition).replaceAll("");
+		return !Pattern.compile(":" + Pattern.quote(paramName) + "\\b").matcher(remainder).find();
+	}
+	
+	private static String toIdSetCondition(String condition, String paramName) {
+		String subQuery = "IN (SELECT datafilter_ids.id_value FROM " + IdSetUtil.TABLE_NAME
+		        + " datafilter_ids WHERE datafilter_ids.id_set_key = :" + paramName + ID_SET_KEY_SUFFIX + ")";
+		return getListPattern(paramName).matcher(condition).replaceAll(Matcher.quoteReplacement(subQuery));
+	}
+	
+	private static String toEmptyListCondition(String condition, String paramName) {
+		Pattern pattern = Pattern
+		        .compile("(?i)[\\w.]+(\\s+NOT)?\\s+IN\\s*\\(\\s*:" + Pattern.quote(paramName) + "\\s*\\)");
+		Matcher matcher = pattern.matcher(condition);
+		StringBuffer buffer = new StringBuffer();
+		while (matcher.find()) {
+			matcher.appendReplacement(buffer, matcher.group(1) == null ? FALSE_CONDITION : TRUE_CONDITION);
+		}
+		
+		matcher.appendTail(buffer);
+		return buffer.toString();
+	}
+	
+	/**
+	 * Pads the specified list parameter values to the next power of two size by repeating the last
+	 * value, this doesn't change which rows match but limits the number of distinct statements the
+	 * database has to parse and cache plans for as the lists grow.
+	 *
+	 * @param values the values to pad
+	 * @return a list of the padded values
+	 */
+	protected static List<Object> padToBucketSize(Collection<?> values) {
+		List<Object> padded = new ArrayList(values);
+		if (padded.size() > 1) {
+			int bucketSize = Integer.highestOneBit(padded.size() - 1) << 1;
+			Object last = padded.get(padded.size() - 1);
+			while (padded.size() < bucketSize) {
+				padded.add(last);
+			}
+		}
+		
+		return padded;
+	}
+	
 	protected static List<FullTextFilterRegistration> getFullTextFilterRegistrations() {
 		if (fullTextFilterRegistrations == null) {
 			loadFilterRegistrations(false);
@@ -187,8 +673,10 @@ public class Util {
 	public static void initializeFilters() throws ReflectiveOperationException {
 		log.info("Initializing filters");
 		
+		List<String> dialectNames = getDialectNames();
+		
 		//Register hibernate filters
-		for (HibernateFilterRegistration registration : getHibernateFilterRegistrations()) {
+		for (HibernateFilterRegistration registration : getHibernateFilterRegistrationsWithVariants()) {
 			if (registration.getProperty() == null) {
 				ParamDef[] paramDefs = null;
 				if (CollectionUtils.isNotEmpty(registration.getParameters())) {
@@ -207,7 +695,7 @@ public class Util {
 					
 					registerFilter(clazz,
 					    new FilterDefAnnotation(registration.getName(), registration.getDefaultCondition(), paramDefs),
-					    new FilterAnnotation(registration.getName(), registration.getCondition()));
+					    new FilterAnnotation(registration.getName(), getCondition(registration, dialectNames)));
 				}
 				
 			} else {
@@ -218,7 +706,7 @@ public class Util {
 				
 				try {
 					addAnnotationToField(registration.getProperty(), registration.getTargetClasses().get(0),
-					    new FilterAnnotation(registration.getName(), registration.getCondition()));
+					    new FilterAnnotation(registration.getName(), getCondition(registration, dialectNames)));
 				}
 				catch (ReflectiveOperationException e) {
 					throw new APIException(e);
@@ -231,9 +719,18 @@ public class Util {
 			//Full text filters are added to one entity but can be enabled for any entity
 			registerFullTextFilter(registration.getTargetClasses().get(0), new FullTextFilterDefAnnotation(
 			        registration.getName(), registration.getImplClass(), registration.getCacheMode()));
+			
+			//Class bridges index the extra fields the filter matches against, so they are added to all target classes
+			ClassBridgeRegistration classBridge = registration.getClassBridge();
+			if (classBridge != null) {
+				for (Class clazz : registration.getTargetClasses()) {
+					registerClassBridge(clazz, new ClassBridgeAnnotation(classBridge.getName(), classBridge.getImpl()));
+				}
+			}
 		}
 		
 		Context.addConfigProperty(Environment.CURRENT_SESSION_CONTEXT_CLASS, DataFilterSessionContext.class.getName());
+		SlowQueryLog.initialize();
 		
 		log.info("Successfully initialized filters");
 	}
@@ -266,6 +763,19 @@ public class Util {
 		addAnnotationToGroup(entityClass, FullTextFilterDefs.class, filterDefAnnotation);
 	}
 	
+	/**
+	 * Adds the specified {@link org.hibernate.search.annotations.ClassBridge} annotation to the
+	 * specified class object.
+	 *
+	 * @param entityClass the class object to add the annotation
+	 * @param classBridgeAnnotation the {@link org.hibernate.search.annotations.ClassBridge} annotation
+	 *            to add
+	 */
+	protected static void registerClassBridge(Class<?> entityClass, ClassBridgeAnnotation classBridgeAnnotation)
+	        throws ReflectiveOperationException {
+		addAnnotationToGroup(entityClass, ClassBridges.class, classBridgeAnnotation);
+	}
+	
 	/**
 	 * Utility method that adds a grouped annotation to it's containing aggregate annotation.
 	 * 
@@ -284,6 +794,8 @@ public class Util {
 				aggregateAnnotation = new FiltersAnnotation();
 			} else if (FullTextFilterDefs.class.equals(aggregateAnnClass)) {
 				aggregateAnnotation = new FullTextFilterDefsAnnotation();
+			} else if (ClassBridges.class.equals(aggregateAnnClass)) {
+				aggregateAnnotation = new ClassBridgesAnnotation();
 			}
 			
 			addAnnotationToClass(entityClass, aggregateAnnotation);
@@ -427,6 +939,15 @@ public class Util {
 			        "Failed to load some " + (isHibernate ? "hibernate" : "full text") + " filter registrations", e);
 		}
 		
+		if (isHibernate) {
+			addIdSetVariants(hibernateFilterRegistrations);
+			addEmptyListVariants(hibernateFilterRegistrations);
+			if (isFilterFusionEnabled()) {
+				fusedFilterRegistrations = createFusedFilters(hibernateFilterRegistrations);
+				log.info("Generated " + fusedFilterRegistrations.size() + " fused filter registrations");
+			}
+		}
+		
 		if (log.isDebugEnabled()) {
 			log.debug("Successfully loaded " + (isHibernate ? "hibernate" : "full text") + " filter registrations");
 		}
@@ -475,13 +996,16 @@ public class Util {
 	}
 	
 	/**
-	 * Gets the fully qualified java class name of the mapped class from the specified hbm file
+	 * Gets the fully qualified java class name of the mapped class from the specified hbm file, the
+	 * file is read with a streaming parser that stops as soon as the first class element is found
+	 * instead of parsing the entire file into a DOM.
 	 * 
 	 * @param hbmFilename the hbm file to search
 	 * @return the name of the mapped class
 	 */
 	public static String getMappedClassName(String hbmFilename) {
-		String className = readFromXmlFile("/hibernate-mapping/class/@name", hbmFilename, null);
+		String[] packageAndClassName = readMappedPackageAndClassName(hbmFilename);
+		String className = packageAndClassName[1];
 		if (StringUtils.isBlank(className)) {
 			//All sorts of crazy things are happening in modules
 			if (log.isDebugEnabled()) {
@@ -497,7 +1021,7 @@ public class Util {
 			return className;
 		}
 		
-		String packageName = readFromXmlFile("/hibernate-mapping/@package", hbmFilename, null);
+		String packageName = packageAndClassName[0];
 		
 		if (StringUtils.isBlank(packageName)) {
 			//Class not in a package? Warned you, module have all kinds of crazy stuff
@@ -511,6 +1035,65 @@ public class Util {
 		return packageName + "." + className;
 	}
 	
+	/**
+	 * Reads the package attribute of the root hibernate-mapping element and the name attribute of the
+	 * first top level class element from the specified hbm file, reading stops immediately after the
+	 * class element is encountered.
+	 * 
+	 * @param hbmFilename the hbm file to read from
+	 * @return an array where the first element is the package name and the second one the class name,
+	 *         any of them can be null
+	 */
+	private static String[] readMappedPackageAndClassName(String hbmFilename) {
+		String[] packageAndClassName = new String[2];
+		InputStream in = OpenmrsClassLoader.getInstance().getResourceAsStream(hbmFilename);
+		if (in == null) {
+			return packageAndClassName;
+		}
+		
+		XMLStreamReader reader = null;
+		try {
+			reader = xmlInputFactory.createXMLStreamReader(in);
+			int depth = 0;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					depth++;
+					String elementName = reader.getLocalName();
+					if (depth == 1) {
+						if (!"hibernate-mapping".equals(elementName)) {
+							break;
+						}
+						
+						packageAndClassName[0] = reader.getAttributeValue(null, "package");
+					} else if (depth == 2 && "class".equals(elementName)) {
+						packageAndClassName[1] = reader.getAttributeValue(null, "name");
+						break;
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					depth--;
+				}
+			}
+		}
+		catch (XMLStreamException e) {
+			throw new RuntimeException(e);
+		}
+		finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				}
+				catch (XMLStreamException e) {
+					//Ignore
+				}
+			}
+			
+			IOUtils.closeQuietly(in);
+		}
+		
+		return packageAndClassName;
+	}
+	
 	/**
 	 * Evaluates the specified xpath expression against the specified xml and returns the value file.
 	 * 
@@ -596,6 +1179,90 @@ public class Util {
 		}
 	}
 	
+	/**
+	 * Gets the names of the configured hibernate dialect and the dialects it extends starting with the
+	 * most specific, each name is the lower case simple class name without the Dialect suffix e.g.
+	 * mariadb103, mariadb102, mysql57, mysql55, mysql5 and mysql for MariaDB103Dialect. If no dialect
+	 * is configured, the name of the database in the connection url is returned.
+	 *
+	 * @return a list of dialect names
+	 */
+	protected static List<String> getDialectNames() {
+		List<String> dialectNames = new ArrayList();
+		Properties props = Context.getRuntimeProperties();
+		if (props == null) {
+			return dialectNames;
+		}
+		
+		String dialect = StringUtils.trimToNull(props.getProperty(Environment.DIALECT));
+		if (dialect == null) {
+			//e.g. jdbc:mysql://localhost:3306/openmrs
+			String[] urlParts = StringUtils.split(props.getProperty("connection.url", ""), ':');
+			if (urlParts.length > 1 && "jdbc".equals(urlParts[0])) {
+				dialectNames.add(urlParts[1].toLowerCase(Locale.ROOT));
+			}
+			
+			return dialectNames;
+		}
+		
+		try {
+			Class<?> clazz = OpenmrsClassLoader.getInstance().loadClass(dialect);
+			while (clazz != null && clazz != Object.class) {
+				addDialectName(clazz.getSimpleName(), dialectNames);
+				clazz = clazz.getSuperclass();
+			}
+		}
+		catch (ClassNotFoundException e) {
+			log.warn("Failed to load the hibernate dialect class " + dialect);
+			addDialectName(dialect.substring(dialect.lastIndexOf('.') + 1), dialectNames);
+		}
+		
+		return dialectNames;
+	}
+	
+	private static void addDialectName(String simpleName, List<String> dialectNames) {
+		String name = StringUtils.removeEndIgnoreCase(simpleName, "Dialect").toLowerCase(Locale.ROOT);
+		if (!name.isEmpty()) {
+			dialectNames.add(name);
+		}
+	}
+	
+	/**
+	 * Gets the condition of the specified filter registration to use with the database of the
+	 * specified dialect, the dialect names are checked in order and the dialect condition with the
+	 * longest key that is a prefix of the first matching name is returned, if none matches the
+	 * registration's condition is returned.
+	 *
+	 * @param registration the filter registration
+	 * @param dialectNames the names of the dialect and its super dialects as returned by
+	 *            {@link #getDialectNames()}
+	 * @return the condition to use
+	 */
+	protected static String getCondition(HibernateFilterRegistration registration, List<String> dialectNames) {
+		Map<String, String> dialectConditions = registration.getDialectConditions();
+		if (dialectConditions != null && !dialectConditions.isEmpty()) {
+			for (String dialectName : dialectNames) {
+				String matchedKey = null;
+				for (String key : dialectConditions.keySet()) {
+					if (dialectName.startsWith(key.toLowerCase(Locale.ROOT))
+					        && (matchedKey == null || key.length() > matchedKey.length())) {
+						matchedKey = key;
+					}
+				}
+				
+				if (matchedKey != null) {
+					if (log.isDebugEnabled()) {
+						log.debug("Using the " + matchedKey + " condition for filter " + registration.getName());
+					}
+					
+					return dialectConditions.get(matchedKey);
+				}
+			}
+		}
+		
+		return registration.getCondition();
+	}
+	
 	/**
 	 * Adds a filter to an an hbm mapping file.
 	 * 
@@ -608,7 +1275,7 @@ public class Util {
 		Map model = new HashMap();
 		model.put("filterName", filterReg.getName());
 		model.put("defaultCondition", StringEscapeUtils.escapeXml(filterReg.getDefaultCondition()));
-		model.put("condition", StringEscapeUtils.escapeXml(filterReg.getCondition()));
+		model.put("condition", StringEscapeUtils.escapeXml(getCondition(filterReg, getDialectNames())));
 		model.put("parameters", filterReg.getParameters());
 		
 		applyXslt(in, addEntityFilterXsltTemplate, out, model);
@@ -681,7 +1348,7 @@ public class Util {
 	protected static Map<Class, List<HibernateFilterRegistration>> getClassFiltersMap() {
 		Map<Class, List<HibernateFilterRegistration>> classFiltersMap = new HashMap();
 		
-		List<HibernateFilterRegistration> filterRegistrations = Util.getHibernateFilterRegistrations();
+		List<HibernateFilterRegistration> filterRegistrations = Util.getHibernateFilterRegistrationsWithVariants();
 		if (filterRegistrations.isEmpty()) {
 			return classFiltersMap;
 		}
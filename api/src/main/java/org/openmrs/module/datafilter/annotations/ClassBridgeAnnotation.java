@@ -0,0 +1,161 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.annotations;
+
+import java.lang.annotation.Annotation;
+
+import org.hibernate.search.annotations.Analyze;
+import org.hibernate.search.annotations.Analyzer;
+import org.hibernate.search.annotations.Boost;
+import org.hibernate.search.annotations.ClassBridge;
+import org.hibernate.search.annotations.Index;
+import org.hibernate.search.annotations.Norms;
+import org.hibernate.search.annotations.Parameter;
+import org.hibernate.search.annotations.Store;
+import org.hibernate.search.annotations.TermVector;
+
+/**
+ * An instance of this class represents a {@link ClassBridge} annotation to be added to a persistent
+ * class that supports hibernate full text search, the fields added by the bridge are indexed as is
+ * without analysis since they are only meant to be matched exactly by full text filters.
+ */
+public class ClassBridgeAnnotation implements ClassBridge {
+	
+	private String name;
+	
+	private Class<?> impl;
+	
+	/**
+	 * Constructor
+	 *
+	 * @param name the name of the field passed to the bridge implementation
+	 * @param impl the bridge implementation class
+	 */
+	public ClassBridgeAnnotation(String name, Class<?> impl) {
+		this.name = name;
+		this.impl = impl;
+	}
+	
+	/**
+	 * @see ClassBridge#name()
+	 */
+	@Override
+	public String name() {
+		return name;
+	}
+	
+	/**
+	 * @see ClassBridge#store()
+	 */
+	@Override
+	public Store store() {
+		return Store.NO;
+	}
+	
+	/**
+	 * @see ClassBridge#index()
+	 */
+	@Override
+	public Index index() {
+		return Index.YES;
+	}
+	
+	/**
+	 * @see ClassBridge#analyze()
+	 */
+	@Override
+	public Analyze analyze() {
+		return Analyze.NO;
+	}
+	
+	/**
+	 * @see ClassBridge#norms()
+	 */
+	@Override
+	public Norms norms() {
+		return Norms.NO;
+	}
+	
+	/**
+	 * @see ClassBridge#termVector()
+	 */
+	@Override
+	public TermVector termVector() {
+		return TermVector.NO;
+	}
+	
+	/**
+	 * @see ClassBridge#analyzer()
+	 */
+	@Override
+	public Analyzer analyzer() {
+		return new Analyzer() {
+			
+			@Override
+			public Class<?> impl() {
+				return void.class;
+			}
+			
+			@Override
+			public String definition() {
+				return "";
+			}
+			
+			@Override
+			public Class<? extends Annotation> annotationType() {
+				return Analyzer.class;
+			}
+		};
+	}
+	
+	/**
+	 * @see ClassBridge#boost()
+	 */
+	@Override
+	public Boost boost() {
+		return new Boost() {
+			
+			@Override
+			public float value() {
+				return 1.0f;
+			}
+			
+			@Override
+			public Class<? extends Annotation> annotationType() {
+				return Boost.class;
+			}
+		};
+	}
+	
+	/**
+	 * @see ClassBridge#impl()
+	 */
+	@Override
+	public Class<?> impl() {
+		return impl;
+	}
+	
+	/**
+	 * @see ClassBridge#params()
+	 */
+	@Override
+	public Parameter[] params() {
+		return new Parameter[] {};
+	}
+	
+	/**
+	 * @see ClassBridge#annotationType()
+	 */
+	@Override
+	public Class<? extends Annotation> annotationType() {
+		return ClassBridge.class;
+	}
+	
+}
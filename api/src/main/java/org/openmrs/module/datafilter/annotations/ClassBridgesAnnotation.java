@@ -0,0 +1,47 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.annotations;
+
+import java.lang.annotation.Annotation;
+
+import org.hibernate.search.annotations.ClassBridge;
+import org.hibernate.search.annotations.ClassBridges;
+
+/**
+ * An instance of this class represents a {@link ClassBridges} annotation to be added to a
+ * persistent class that supports hibernate full text search.
+ */
+public class ClassBridgesAnnotation extends BaseAggregateAnnotation<ClassBridge> implements ClassBridges {
+	
+	/**
+	 * @see ClassBridges#value()
+	 */
+	@Override
+	public ClassBridge[] value() {
+		return group;
+	}
+	
+	/**
+	 * @see ClassBridges#annotationType()
+	 */
+	@Override
+	public Class<? extends Annotation> annotationType() {
+		return ClassBridges.class;
+	}
+	
+	/**
+	 * @see BaseAggregateAnnotation#getGroupedAnnotationType()
+	 */
+	@Override
+	public Class<ClassBridge> getGroupedAnnotationType() {
+		return ClassBridge.class;
+	}
+	
+}
@@ -12,10 +12,17 @@ package org.openmrs.module.datafilter.impl;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.openmrs.BaseOpenmrsObject;
 import org.openmrs.Location;
 import org.openmrs.Program;
@@ -26,8 +33,13 @@ import org.openmrs.api.context.Context;
 import org.openmrs.api.db.AdministrationDAO;
 import org.openmrs.api.db.LocationDAO;
 import org.openmrs.module.datafilter.DataFilterConstants;
+import org.openmrs.module.datafilter.metrics.CacheMetrics;
+import org.openmrs.module.datafilter.metrics.DataFilterMetrics;
+import org.openmrs.module.datafilter.metrics.Histogram;
+import org.openmrs.module.datafilter.metrics.StatementTally;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * This class provides a facade for determining the list of person ids that the authenticated user
@@ -50,10 +62,53 @@ public class AccessUtil {
 	
 	private final static String UUIDS_PLACEHOLDER = "@uuids";
 	
+	private static final String STATEMENT_SOURCE = "AccessUtil";
+	
 	private final static String BASIS_QUERY = "SELECT DISTINCT basis_identifier FROM " + DataFilterConstants.MODULE_ID
-	        + "_entity_basis_map WHERE entity_identifier = '" + ENTITY_ID_PLACEHOLDER + "' AND entity_type = '"
+	        + "_entity_basis_map WHERE normalized_entity_identifier = '" + ENTITY_ID_PLACEHOLDER + "' AND entity_type = '"
 	        + ENTITY_TYPE_PLACEHOLDER + "' AND basis_type = '" + BASIS_TYPE_PLACEHOLDER + "'";
 	
+	private final static String PATIENT_LOCATION_QUERY = "SELECT location_id FROM " + DataFilterConstants.MODULE_ID
+	        + "_patient_location WHERE patient_id = " + ENTITY_ID_PLACEHOLDER;
+	
+	private final static String FIRST_ID_PLACEHOLDER = "@firstId";
+	
+	private final static String LAST_ID_PLACEHOLDER = "@lastId";
+	
+	private final static String PATIENT_LOCATION_BATCH_QUERY = "SELECT patient_id, location_id FROM "
+	        + DataFilterConstants.MODULE_ID + "_patient_location WHERE patient_id BETWEEN " + FIRST_ID_PLACEHOLDER
+	        + " AND " + LAST_ID_PLACEHOLDER;
+	
+	private static final int PATIENT_LOCATION_BATCH_SIZE = 1000;
+	
+	private static final ThreadLocal<PatientLocationBatch> patientLocationBatchHolder = new ThreadLocal();
+	
+	private static final Map<Set<String>, Set<Integer>> allowedEncounterTypeIdsCache = new ConcurrentHashMap();
+	
+	private static final Map<Set<String>, Set<Integer>> visibleUserIdsCache = new ConcurrentHashMap();
+	
+	private static volatile Map<String, Set<String>> cachedRoleProgramsMap;
+	
+	private static final Map<String, Set<Integer>> allIdsCache = new ConcurrentHashMap();
+	
+	private static final AtomicLong cacheGeneration = new AtomicLong();
+	
+	private static final AtomicLong patientLocationGeneration = new AtomicLong();
+	
+	private static final Histogram queryHistogram = DataFilterMetrics.getHistogram("accessUtil.query",
+	    DataFilterMetrics.UNIT_NANOSECONDS);
+	
+	private static final CacheMetrics allowedEncounterTypeIdsCacheMetrics = DataFilterMetrics
+	        .getCacheMetrics("accessUtil.allowedEncounterTypeIds");
+	
+	private static final CacheMetrics visibleUserIdsCacheMetrics = DataFilterMetrics
+	        .getCacheMetrics("accessUtil.visibleUserIds");
+	
+	private static final CacheMetrics roleProgramsMapCacheMetrics = DataFilterMetrics
+	        .getCacheMetrics("accessUtil.roleProgramsMap");
+	
+	private static final CacheMetrics allIdsCacheMetrics = DataFilterMetrics.getCacheMetrics("accessUtil.allIds");
+	
 	/**
 	 * Gets the collection of person ids for all the persons associated to the bases of the specified
 	 * type, the basis could be something like Location, Program etc.
@@ -98,7 +153,7 @@ public class AccessUtil {
 		}
 		
 		String userId = Context.getAuthenticatedUser().getUserId().toString();
-		String query = BASIS_QUERY.replace(ENTITY_ID_PLACEHOLDER, userId);
+		String query = BASIS_QUERY.replace(ENTITY_ID_PLACEHOLDER, EntityBasisMap.normalize(userId));
 		query = query.replace(ENTITY_TYPE_PLACEHOLDER, User.class.getName());
 		query = query.replace(BASIS_TYPE_PLACEHOLDER, basisType.getName());
 		
@@ -118,6 +173,63 @@ public class AccessUtil {
 		return basisIds;
 	}
 	
+	/**
+	 * Gets the ids of all the locations the patient with the specified patient id is linked to, this
+	 * method can be called from threads with no current session e.g. those of the hibernate search mass
+	 * indexer. Such threads index patients in id order, so the links of a whole range of patients are
+	 * loaded with a single query in a stateless session and kept on the thread until a patient outside
+	 * the range is requested or the cache is cleared.
+	 *
+	 * @param patientId the id of the patient to match
+	 * @return a collection of location ids
+	 */
+	public static Collection<String> getPatientLocationIds(Integer patientId) {
+		if (TransactionSynchronizationManager.isActualTransactionActive()) {
+			String query = PATIENT_LOCATION_QUERY.replace(ENTITY_ID_PLACEHOLDER, patientId.toString());
+			Set<String> locationIds = new HashSet();
+			executeQuery(query).forEach((List<Object> row) -> locationIds.add(row.get(0).toString()));
+			return locationIds;
+		}
+		
+		PatientLocationBatch batch = patientLocationBatchHolder.get();
+		if (batch == null || !batch.contains(patientId, patientLocationGeneration.get())) {
+			batch = loadPatientLocationBatch(patientId);
+			patientLocationBatchHolder.set(batch);
+		}
+		
+		return batch.getLocationIds(patientId);
+	}
+	
+	/**
+	 * Loads the patient location links of the range of patients the patient with the specified id
+	 * belongs to in a stateless session
+	 */
+	private static PatientLocationBatch loadPatientLocationBatch(Integer patientId) {
+		final int firstPatientId = patientId - patientId % PATIENT_LOCATION_BATCH_SIZE;
+		final long generation = patientLocationGeneration.get();
+		String query = PATIENT_LOCATION_BATCH_QUERY.replace(FIRST_ID_PLACEHOLDER, Integer.toString(firstPatientId))
+		        .replace(LAST_ID_PLACEHOLDER, Long.toString((long) firstPatientId + PATIENT_LOCATION_BATCH_SIZE - 1));
+		
+		Map<Integer, Set<String>> patientLocationIdsMap = new HashMap();
+		SessionFactory sf = Context.getRegisteredComponents(SessionFactory.class).get(0);
+		StatelessSession session = sf.openStatelessSession();
+		final long start = System.nanoTime();
+		try {
+			List<Object[]> rows = session.createSQLQuery(query).list();
+			for (Object[] row : rows) {
+				patientLocationIdsMap.computeIfAbsent(Integer.valueOf(row[0].toString()), k -> new HashSet())
+				        .add(row[1].toString());
+			}
+		}
+		finally {
+			session.close();
+			queryHistogram.record(System.nanoTime() - start);
+			StatementTally.record(STATEMENT_SOURCE);
+		}
+		
+		return new PatientLocationBatch(firstPatientId, generation, patientLocationIdsMap);
+	}
+	
 	/**
 	 * Runs the specified query
 	 * 
@@ -126,7 +238,14 @@ public class AccessUtil {
 	 */
 	private static List<List<Object>> executeQuery(String query) {
 		AdministrationDAO adminDAO = Context.getRegisteredComponent("adminDAO", AdministrationDAO.class);
-		return adminDAO.executeSQL(query, true);
+		final long start = System.nanoTime();
+		try {
+			return adminDAO.executeSQL(query, true);
+		}
+		finally {
+			queryHistogram.record(System.nanoTime() - start);
+			StatementTally.record(STATEMENT_SOURCE);
+		}
 	}
 	
 	/**
@@ -139,9 +258,15 @@ public class AccessUtil {
 	private static Set<String> getAllDescendantLocationIds(String locationId) {
 		Set<String> ids = new HashSet();
 		LocationDAO dao = Context.getRegisteredComponent("locationDAO", LocationDAO.class);
-		Location location = dao.getLocation(Integer.valueOf(locationId));
-		for (Location l : location.getDescendantLocations(true)) {
-			ids.add(l.getId().toString());
+		String previousSource = StatementTally.enter(STATEMENT_SOURCE);
+		try {
+			Location location = dao.getLocation(Integer.valueOf(locationId));
+			for (Location l : location.getDescendantLocations(true)) {
+				ids.add(l.getId().toString());
+			}
+		}
+		finally {
+			StatementTally.exit(previousSource);
 		}
 		
 		return ids;
@@ -179,21 +304,260 @@ public class AccessUtil {
 		return Integer.valueOf(executeQuery(query).get(0).get(0).toString());
 	}
 	
+	/**
+	 * Gets the ids of the encounter types that a user with the specified roles is allowed to view i.e.
+	 * those with no view privilege and those whose view privilege is granted to any of the roles. The
+	 * ids are cached per set of role names and the cache is cleared whenever encounter types, roles or
+	 * privileges change.
+	 *
+	 * @param roles the names of the roles of the user including the inherited ones
+	 * @return a set of encounter type ids
+	 */
+	public static Set<Integer> getAllowedEncounterTypeIds(Collection<String> roles) {
+		Set<String> key = Collections.unmodifiableSet(new HashSet(roles));
+		Set<Integer> encounterTypeIds = allowedEncounterTypeIdsCache.get(key);
+		if (encounterTypeIds != null) {
+			allowedEncounterTypeIdsCacheMetrics.hit();
+		} else {
+			allowedEncounterTypeIdsCacheMetrics.miss();
+			//Only cache the ids if the cache wasn't cleared while we were loading them otherwise they might be stale
+			final long generation = cacheGeneration.get();
+			encounterTypeIds = Collections.unmodifiableSet(loadAllowedEncounterTypeIds(key));
+			if (generation == cacheGeneration.get()) {
+				allowedEncounterTypeIdsCache.putIfAbsent(key, encounterTypeIds);
+			}
+		}
+		
+		return encounterTypeIds;
+	}
+	
+	/**
+	 * Gets the ids of all the rows in the specified table, the ids are cached until the cache is
+	 * cleared and are used to detect when a user can access all the rows a filter applies to. The ids a
+	 * user can access have to contain all of them, comparing counts instead would be fooled by mappings
+	 * to rows that no longer exist.
+	 * 
+	 * @param tableName the name of the table
+	 * @param idColumnName the name of the primary key column
+	 * @return the set of ids
+	 */
+	protected static Set<Integer> getAllIds(String tableName, String idColumnName) {
+		Set<Integer> ids = allIdsCache.get(tableName);
+		if (ids != null) {
+			allIdsCacheMetrics.hit();
+		} else {
+			allIdsCacheMetrics.miss();
+			final long generation = cacheGeneration.get();
+			Set<Integer> loadedIds = new HashSet();
+			executeQuery("SELECT " + idColumnName + " FROM " + tableName)
+			        .forEach(row -> loadedIds.add(Integer.valueOf(row.get(0).toString())));
+			ids = Collections.unmodifiableSet(loadedIds);
+			if (generation == cacheGeneration.get()) {
+				allIdsCache.putIfAbsent(tableName, ids);
+			}
+		}
+		
+		return ids;
+	}
+	
+	/**
+	 * Discards the patient location links loaded by threads with no transaction, this is called when
+	 * patients are linked to or unlinked from locations which doesn't affect the other cached data.
+	 */
+	public static void clearPatientLocationCache() {
+		patientLocationGeneration.incrementAndGet();
+	}
+	
+	/**
+	 * Clears all the cached access data
+	 */
+	public static void clearCaches() {
+		if (log.isDebugEnabled()) {
+			log.debug("Clearing cached access data");
+		}
+		
+		cacheGeneration.incrementAndGet();
+		patientLocationGeneration.incrementAndGet();
+		//The sizes are read before clearing so the eviction counts are approximate under concurrent updates
+		allowedEncounterTypeIdsCacheMetrics.evicted(allowedEncounterTypeIdsCache.size());
+		allowedEncounterTypeIdsCache.clear();
+		visibleUserIdsCacheMetrics.evicted(visibleUserIdsCache.size());
+		visibleUserIdsCache.clear();
+		allIdsCacheMetrics.evicted(allIdsCache.size());
+		allIdsCache.clear();
+		if (cachedRoleProgramsMap != null) {
+			roleProgramsMapCacheMetrics.evicted(1);
+		}
+		
+		cachedRoleProgramsMap = null;
+	}
+	
+	/**
+	 * Loads from the database the ids of the encounter types that a user with the specified roles is
+	 * allowed to view
+	 * 
+	 * @param roles the role names to match
+	 * @return a set of encounter type ids
+	 */
+	private static Set<Integer> loadAllowedEncounterTypeIds(Collection<String> roles) {
+		String query = "SELECT encounter_type_id FROM encounter_type WHERE view_privilege IS NULL";
+		if (!roles.isEmpty()) {
+			query += " OR view_privilege IN (SELECT privilege FROM role_privilege WHERE role IN (" + toSqlList(roles)
+			        + "))";
+		}
+		
+		Set<Integer> encounterTypeIds = new HashSet();
+		for (List<Object> row : executeQuery(query)) {
+			encounterTypeIds.add(Integer.valueOf(row.get(0).toString()));
+		}
+		
+		return encounterTypeIds;
+	}
+	
 	/**
 	 * Gets the list of all roles mapped to a program
 	 * 
 	 * @return a list of all program role names
 	 */
 	protected static Collection<String> getAllProgramRoles() {
-		final String query = "SELECT DISTINCT entity_identifier FROM datafilter_entity_basis_map WHERE entity_type = '"
-		        + Role.class.getName() + "' AND basis_type = '" + Program.class.getName() + "'";
-		List<List<Object>> rows = executeQuery(query);
-		List<String> roles = new ArrayList();
-		for (List<Object> row : rows) {
-			roles.add(row.get(0).toString());
+		return new ArrayList(getRoleProgramsMap().keySet());
+	}
+	
+	/**
+	 * Gets the ids of the users that a user with the specified roles is allowed to view i.e. users with
+	 * no roles, users with at least one role that isn't mapped to any program and users with at least
+	 * one role mapped to a program that is also mapped to any of the specified roles. The ids are cached
+	 * per set of program roles and the cache is cleared whenever users, roles or program mappings
+	 * change.
+	 *
+	 * @param roles the names of the roles of the user including the inherited ones
+	 * @return a set of user ids
+	 */
+	public static Set<Integer> getVisibleUserIds(Collection<String> roles) {
+		Map<String, Set<String>> roleProgramsMap = getRoleProgramsMap();
+		Set<String> key = Collections.unmodifiableSet(
+		    roles.stream().filter(role -> roleProgramsMap.containsKey(role)).collect(Collectors.toSet()));
+		
+		Set<Integer> userIds = visibleUserIdsCache.get(key);
+		if (userIds != null) {
+			visibleUserIdsCacheMetrics.hit();
+		} else {
+			visibleUserIdsCacheMetrics.miss();
+			final long generation = cacheGeneration.get();
+			userIds = Collections.unmodifiableSet(loadVisibleUserIds(key, roleProgramsMap));
+			if (generation == cacheGeneration.get()) {
+				visibleUserIdsCache.putIfAbsent(key, userIds);
+			}
+		}
+		
+		return userIds;
+	}
+	
+	/**
+	 * Gets the program roles mapped to the ids of the programs they are mapped to, the mappings are
+	 * cached until the cache is cleared.
+	 * 
+	 * @return a map of role names and program ids
+	 */
+	private static Map<String, Set<String>> getRoleProgramsMap() {
+		Map<String, Set<String>> roleProgramsMap = cachedRoleProgramsMap;
+		if (roleProgramsMap != null) {
+			roleProgramsMapCacheMetrics.hit();
+		} else {
+			roleProgramsMapCacheMetrics.miss();
+			final long generation = cacheGeneration.get();
+			final String query = "SELECT entity_identifier, basis_identifier FROM datafilter_entity_basis_map "
+			        + "WHERE entity_type = '" + Role.class.getName() + "' AND basis_type = '" + Program.class.getName()
+			        + "'";
+			
+			Map<String, Set<String>> map = new HashMap();
+			for (List<Object> row : executeQuery(query)) {
+				map.computeIfAbsent(row.get(0).toString(), k -> new HashSet()).add(row.get(1).toString());
+			}
+			
+			roleProgramsMap = Collections.unmodifiableMap(map);
+			if (generation == cacheGeneration.get()) {
+				cachedRoleProgramsMap = roleProgramsMap;
+			}
+		}
+		
+		return roleProgramsMap;
+	}
+	
+	/**
+	 * Loads from the database the ids of the users that a user with the specified program roles is
+	 * allowed to view, a user is hidden if all their roles are program roles that share no program with
+	 * the specified roles.
+	 * 
+	 * @param programRoles the program role names of the user
+	 * @param roleProgramsMap the program roles mapped to the ids of their programs
+	 * @return a set of user ids
+	 */
+	private static Set<Integer> loadVisibleUserIds(Set<String> programRoles, Map<String, Set<String>> roleProgramsMap) {
+		Set<String> programIds = new HashSet();
+		programRoles.forEach(role -> programIds.addAll(roleProgramsMap.get(role)));
+		List<String> hiddenRoles = new ArrayList();
+		for (Map.Entry<String, Set<String>> entry : roleProgramsMap.entrySet()) {
+			if (Collections.disjoint(entry.getValue(), programIds)) {
+				hiddenRoles.add(entry.getKey());
+			}
+		}
+		
+		String query = "SELECT user_id FROM users";
+		if (!hiddenRoles.isEmpty()) {
+			final String roleList = toSqlList(hiddenRoles);
+			query += " WHERE user_id NOT IN (SELECT ur.user_id FROM user_role ur WHERE ur.role IN (" + roleList
+			        + ")) OR user_id IN (SELECT ur.user_id FROM user_role ur WHERE ur.role NOT IN (" + roleList + "))";
+		}
+		
+		Set<Integer> userIds = new HashSet();
+		for (List<Object> row : executeQuery(query)) {
+			userIds.add(Integer.valueOf(row.get(0).toString()));
+		}
+		
+		return userIds;
+	}
+	
+	/**
+	 * Converts the specified strings to a comma separated list of quoted sql string literals
+	 * 
+	 * @param values the values to convert
+	 * @return the sql list
+	 */
+	private static String toSqlList(Collection<String> values) {
+		return values.stream().map(value -> "'" + value.replace("'", "''") + "'").collect(Collectors.joining(","));
+	}
+	
+	/**
+	 * Holds the location ids of the patients in a range of patient ids
+	 */
+	private static class PatientLocationBatch {
+		
+		private final int firstPatientId;
+		
+		private final long generation;
+		
+		private final Map<Integer, Set<String>> patientLocationIdsMap;
+		
+		PatientLocationBatch(int firstPatientId, long generation, Map<Integer, Set<String>> patientLocationIdsMap) {
+			this.firstPatientId = firstPatientId;
+			this.generation = generation;
+			this.patientLocationIdsMap = patientLocationIdsMap;
+		}
+		
+		/**
+		 * Checks if the specified patient belongs to the range and the cache wasn't cleared since it was
+		 * loaded
+		 */
+		boolean contains(Integer patientId, long currentGeneration) {
+			return generation == currentGeneration && patientId >= firstPatientId
+			        && patientId - firstPatientId < PATIENT_LOCATION_BATCH_SIZE;
+		}
+		
+		Collection<String> getLocationIds(Integer patientId) {
+			return new HashSet(patientLocationIdsMap.getOrDefault(patientId, Collections.emptySet()));
 		}
 		
-		return roles;
 	}
 	
 }
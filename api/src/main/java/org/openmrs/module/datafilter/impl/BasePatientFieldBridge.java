@@ -0,0 +1,62 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl;
+
+import org.apache.lucene.document.Document;
+import org.hibernate.search.bridge.FieldBridge;
+import org.hibernate.search.bridge.LuceneOptions;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.Person;
+import org.openmrs.PersonAttribute;
+import org.openmrs.PersonName;
+
+/**
+ * Base class for class bridges that add patient specific fields to the search documents of patient
+ * names, identifiers and attributes.
+ */
+public abstract class BasePatientFieldBridge implements FieldBridge {
+	
+	/**
+	 * @see FieldBridge#set(String, Object, Document, LuceneOptions)
+	 */
+	@Override
+	public void set(String name, Object value, Document document, LuceneOptions luceneOptions) {
+		Integer patientId = getPatientId(value);
+		if (patientId == null) {
+			return;
+		}
+		
+		set(name, patientId, document, luceneOptions);
+	}
+	
+	/**
+	 * Adds the field(s) for the patient with the specified id to the document
+	 *
+	 * @param name the name of the field
+	 * @param patientId the id of the patient the indexed object belongs to
+	 * @param document the document to add the field(s) to
+	 * @param luceneOptions the lucene options
+	 */
+	protected abstract void set(String name, Integer patientId, Document document, LuceneOptions luceneOptions);
+	
+	private Integer getPatientId(Object value) {
+		Person person = null;
+		if (value instanceof PersonName) {
+			person = ((PersonName) value).getPerson();
+		} else if (value instanceof PersonAttribute) {
+			person = ((PersonAttribute) value).getPerson();
+		} else if (value instanceof PatientIdentifier) {
+			person = ((PatientIdentifier) value).getPatient();
+		}
+		
+		return person == null ? null : person.getPersonId();
+	}
+	
+}
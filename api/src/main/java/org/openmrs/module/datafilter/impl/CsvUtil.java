@@ -0,0 +1,99 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openmrs.api.APIException;
+
+/**
+ * Minimal CSV support for the import and export of entity basis mappings, values are separated by
+ * commas and can be enclosed in double quotes in which case a double quote inside is escaped by
+ * another double quote.
+ */
+public final class CsvUtil {
+	
+	private static final char SEPARATOR = ',';
+	
+	private static final char QUOTE = '"';
+	
+	private CsvUtil() {
+	}
+	
+	/**
+	 * Parses the values in the specified CSV line
+	 *
+	 * @param line the line to parse
+	 * @return the list of values
+	 */
+	public static List<String> parseLine(String line) {
+		List<String> values = new ArrayList();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == QUOTE) {
+					if (i + 1 < line.length() && line.charAt(i + 1) == QUOTE) {
+						value.append(QUOTE);
+						i++;
+					} else {
+						quoted = false;
+					}
+				} else {
+					value.append(c);
+				}
+			} else if (c == QUOTE) {
+				quoted = true;
+			} else if (c == SEPARATOR) {
+				values.add(value.toString().trim());
+				value.setLength(0);
+			} else {
+				value.append(c);
+			}
+		}
+		
+		if (quoted) {
+			throw new APIException("Unterminated quoted value in line: " + line);
+		}
+		
+		values.add(value.toString().trim());
+		
+		return values;
+	}
+	
+	/**
+	 * Formats the specified values as a CSV line without the line terminator, values containing a
+	 * separator, a quote or a line break are enclosed in quotes.
+	 *
+	 * @param values the values to format
+	 * @return the CSV line
+	 */
+	public static String formatLine(String... values) {
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				line.append(SEPARATOR);
+			}
+			
+			String value = values[i] == null ? "" : values[i];
+			if (value.indexOf(SEPARATOR) > -1 || value.indexOf(QUOTE) > -1 || value.indexOf('\n') > -1
+			        || value.indexOf('\r') > -1) {
+				line.append(QUOTE).append(value.replace("\"", "\"\"")).append(QUOTE);
+			} else {
+				line.append(value);
+			}
+		}
+		
+		return line.toString();
+	}
+	
+}
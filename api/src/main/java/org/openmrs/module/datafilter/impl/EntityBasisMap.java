@@ -10,17 +10,21 @@
 package org.openmrs.module.datafilter.impl;
 
 import java.util.Date;
+import java.util.Locale;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.openmrs.BaseOpenmrsObject;
 import org.openmrs.Creatable;
 import org.openmrs.User;
@@ -30,12 +34,28 @@ import org.openmrs.module.datafilter.DataFilterConstants;
  * An instance of this class encapsulates information about a mapping between an entity and a basis
  * they have been granted access to e.g. an entity could be a user or a role and a basis could be a
  * location or a program that is linked to records they should have access to.
+ * <p>
+ * The mappings are read on almost every request and rarely written so they are kept in the second
+ * level cache, bulk writes that bypass the session evict the affected entries explicitly.
+ * <p>
+ * Identifiers that are integers e.g. the ids of patients, users and locations are also stored in
+ * numeric columns which the filter conditions compare to the integer primary key columns of the
+ * filtered tables so that the database doesn't have to cast either side and can use the indexes.
  */
 @Entity
-@Table(name = DataFilterConstants.MODULE_ID
-        + "_entity_basis_map", uniqueConstraints = @UniqueConstraint(name = DataFilterConstants.MODULE_ID
-                + "_entity_basis_map_uk", columnNames = { "entity_identifier", "entity_type", "basis_identifier",
-                        "basis_type" }))
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ImplConstants.CACHE_REGION_ENTITY_BASIS_MAP)
+@Table(name = DataFilterConstants.MODULE_ID + "_entity_basis_map",
+        uniqueConstraints = @UniqueConstraint(name = DataFilterConstants.MODULE_ID + "_entity_basis_map_uk",
+                columnNames = { "entity_identifier", "entity_type", "basis_identifier", "basis_type" }),
+        indexes = {
+                @Index(name = "entity_basis_map_normalized_idx",
+                        columnList = "entity_type, normalized_entity_identifier, basis_type, normalized_basis_identifier"),
+                @Index(name = "entity_basis_map_normalized_basis_idx",
+                        columnList = "entity_type, basis_type, normalized_basis_identifier, normalized_entity_identifier"),
+                @Index(name = "entity_basis_map_basis_num_idx",
+                        columnList = "entity_type, basis_type, basis_identifier_num, entity_identifier_num"),
+                @Index(name = "entity_basis_map_entity_num_idx",
+                        columnList = "entity_type, entity_identifier_num, basis_type, basis_identifier_num") })
 public class EntityBasisMap extends BaseOpenmrsObject implements Creatable {
 	
 	@Id
@@ -46,12 +66,24 @@ public class EntityBasisMap extends BaseOpenmrsObject implements Creatable {
 	@Column(name = "entity_identifier", nullable = false, updatable = false, length = 127)
 	private String entityIdentifier;
 	
+	@Column(name = "normalized_entity_identifier", nullable = false, updatable = false, length = 127)
+	private String normalizedEntityIdentifier;
+	
+	@Column(name = "entity_identifier_num", updatable = false)
+	private Integer entityIdentifierNumber;
+	
 	@Column(name = "entity_type", nullable = false, updatable = false)
 	private String entityType;
 	
 	@Column(name = "basis_identifier", nullable = false, updatable = false, length = 127)
 	private String basisIdentifier;
 	
+	@Column(name = "normalized_basis_identifier", nullable = false, updatable = false, length = 127)
+	private String normalizedBasisIdentifier;
+	
+	@Column(name = "basis_identifier_num", updatable = false)
+	private Integer basisIdentifierNumber;
+	
 	@Column(name = "basis_type", nullable = false, updatable = false)
 	private String basisType;
 	
@@ -112,6 +144,26 @@ public class EntityBasisMap extends BaseOpenmrsObject implements Creatable {
 	 */
 	public void setEntityIdentifier(String entityIdentifier) {
 		this.entityIdentifier = entityIdentifier;
+		this.normalizedEntityIdentifier = normalize(entityIdentifier);
+		this.entityIdentifierNumber = toNumber(entityIdentifier);
+	}
+	
+	/**
+	 * Gets the normalizedEntityIdentifier
+	 *
+	 * @return the normalizedEntityIdentifier
+	 */
+	public String getNormalizedEntityIdentifier() {
+		return normalizedEntityIdentifier;
+	}
+	
+	/**
+	 * Gets the entityIdentifierNumber
+	 *
+	 * @return the entityIdentifierNumber
+	 */
+	public Integer getEntityIdentifierNumber() {
+		return entityIdentifierNumber;
 	}
 	
 	/**
@@ -148,6 +200,26 @@ public class EntityBasisMap extends BaseOpenmrsObject implements Creatable {
 	 */
 	public void setBasisIdentifier(String basisIdentifier) {
 		this.basisIdentifier = basisIdentifier;
+		this.normalizedBasisIdentifier = normalize(basisIdentifier);
+		this.basisIdentifierNumber = toNumber(basisIdentifier);
+	}
+	
+	/**
+	 * Gets the normalizedBasisIdentifier
+	 *
+	 * @return the normalizedBasisIdentifier
+	 */
+	public String getNormalizedBasisIdentifier() {
+		return normalizedBasisIdentifier;
+	}
+	
+	/**
+	 * Gets the basisIdentifierNumber
+	 *
+	 * @return the basisIdentifierNumber
+	 */
+	public Integer getBasisIdentifierNumber() {
+		return basisIdentifierNumber;
 	}
 	
 	/**
@@ -200,4 +272,39 @@ public class EntityBasisMap extends BaseOpenmrsObject implements Creatable {
 		dateCreated = date;
 	}
 	
+	/**
+	 * Normalizes the specified identifier, identifiers are matched case insensitively by looking up
+	 * the normalized value which is stored in a separate indexed column so that the database doesn't
+	 * have to apply a function to the column.
+	 *
+	 * @param identifier the identifier to normalize
+	 * @return the normalized identifier
+	 */
+	public static String normalize(String identifier) {
+		return identifier == null ? null : identifier.toLowerCase(Locale.ROOT);
+	}
+	
+	/**
+	 * Converts the specified identifier to an integer if it is one otherwise returns null, the
+	 * identifiers of numeric entity and basis types are integer primary keys.
+	 *
+	 * @param identifier the identifier to convert
+	 * @return the integer value of the identifier or null
+	 */
+	public static Integer toNumber(String identifier) {
+		if (identifier == null || identifier.isEmpty() || identifier.length() > 10) {
+			return null;
+		}
+		
+		for (int i = 0; i < identifier.length(); i++) {
+			char c = identifier.charAt(i);
+			if (c < '0' || c > '9') {
+				return null;
+			}
+		}
+		
+		long value = Long.parseLong(identifier);
+		return value > Integer.MAX_VALUE ? null : (int) value;
+	}
+	
 }
@@ -18,8 +18,6 @@ import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import org.openmrs.Location;
-import org.openmrs.Patient;
 import org.openmrs.module.datafilter.DataFilterConstants;
 
 public final class ImplConstants {
@@ -32,13 +30,23 @@ public final class ImplConstants {
 	
 	public static final String PARAM_NAME_BASIS_IDS = "basisIds";
 	
-	public static final String PARAM_NAME_ROLES = "roles";
+	public static final String PARAM_NAME_ALLOWED_ENC_TYPES = "allowedEncounterTypes";
 	
 	public static final String PARAM_NAME_AUTHENTICATED_PERSON_ID = "authenticatedPersonId";
 	
-	public static final String PARAM_NAME_USER_PROG_ROLES = "userProgramRoles";
+	public static final String PARAM_NAME_VISIBLE_USERS = "visibleUserIds";
 	
-	public static final String PARAM_NAME_ALL_PROG_ROlES = "allProgramRoles";
+	public static final String TABLE_LOCATION = "location";
+	
+	public static final String TABLE_ENCOUNTER_TYPE = "encounter_type";
+	
+	public static final String TABLE_USERS = "users";
+	
+	public static final String COLUMN_LOCATION_ID = "location_id";
+	
+	public static final String COLUMN_ENCOUNTER_TYPE_ID = "encounter_type_id";
+	
+	public static final String COLUMN_USER_ID = "user_id";
 	
 	public static final String LOCATION_BASED_FILTER_NAME_ENCOUNTER = LOCATION_BASED_FILTER_NAME_PREFIX + "EncounterFilter";
 	
@@ -103,11 +111,18 @@ public final class ImplConstants {
 	public static final String LOCATION_BASED_FULL_TEXT_FILTER_NAME_PATIENT = MODULE_ID
 	        + "_locationBasedPatientFullTextFilter";
 	
+	public static final String FIELD_LOCATION_IDS = MODULE_ID + ".locationIds";
+	
+	public static final String FIELD_PATIENT_ID = MODULE_ID + ".patientId";
+	
+	public static final String CACHE_REGION_ENTITY_BASIS_MAP = MODULE_ID + ".entityBasisMap";
+	
+	public static final String CACHE_REGION_ENTITY_BASIS_MAP_QUERIES = MODULE_ID + ".entityBasisMapQueries";
+	
 	public final static String BASIS_IDS_PLACEHOLDER = ":" + PARAM_NAME_BASIS_IDS;
 	
-	public static final String PERSON_ID_QUERY = "SELECT DISTINCT entity_identifier FROM " + DataFilterConstants.MODULE_ID
-	        + "_entity_basis_map WHERE entity_type = '" + Patient.class.getName() + "' AND basis_type = '"
-	        + Location.class.getName() + "' AND basis_identifier IN (" + BASIS_IDS_PLACEHOLDER + ")";
+	public static final String PERSON_ID_QUERY = "SELECT DISTINCT patient_id FROM " + DataFilterConstants.MODULE_ID
+	        + "_patient_location WHERE location_id IN (" + BASIS_IDS_PLACEHOLDER + ")";
 	
 	public static final String GP_LOCATION_BASED_FILTER_NAME_ENCOUNTER = LOCATION_BASED_FILTER_NAME_ENCOUNTER + DISABLED;
 	
@@ -10,12 +10,10 @@
 package org.openmrs.module.datafilter.impl;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.stream.Collectors;
 
 import org.openmrs.Location;
-import org.openmrs.Role;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.datafilter.DataFilterContext;
 import org.openmrs.module.datafilter.DataFilterListener;
@@ -53,15 +51,18 @@ public class ImplDataFilterListener implements DataFilterListener {
 		if (filterContext.getFilterName().startsWith(ImplConstants.LOCATION_BASED_FILTER_NAME_PREFIX)
 		        || filterContext.getFilterName().equals(ImplConstants.LOCATION_FILTER_NAME)) {
 			
-			Collection<String> basisIds = new HashSet();
+			//The ids are bound as integers so that they are compared to the integer columns without casting
+			Collection<Integer> basisIds = new HashSet();
 			if (Context.isAuthenticated()) {
-				basisIds.addAll(AccessUtil.getAssignedBasisIds(Location.class));
+				AccessUtil.getAssignedBasisIds(Location.class).forEach(id -> basisIds.add(Integer.valueOf(id)));
 			}
 			
-			if (basisIds.isEmpty()) {
-				//If the user isn't granted access to patients at any basis, we add -1 because ids are all > 0,
-				//in theory the query will match no records if the user isn't granted access to any basis
-				basisIds = Collections.singleton("-1");
+			//An empty list isn't bound as is, the filter's empty list variant which matches no records is enabled
+			if (filterContext.getFilterName().equals(ImplConstants.LOCATION_FILTER_NAME)
+			        && basisIds.containsAll(
+			            AccessUtil.getAllIds(ImplConstants.TABLE_LOCATION, ImplConstants.COLUMN_LOCATION_ID))) {
+				//The user can access the entire location tree so the filter would match every location
+				return false;
 			}
 			
 			if (filterContext.getFilterName().equals(ImplConstants.LOCATION_BASED_FILTER_NAME_PROVIDER)) {
@@ -83,30 +84,34 @@ public class ImplDataFilterListener implements DataFilterListener {
 				roles.addAll(allRoles);
 			}
 			
-			filterContext.setParameter(ImplConstants.PARAM_NAME_ROLES, roles);
+			//The allowed encounter types are looked up once per set of roles instead of evaluating the
+			//privileges of the roles in a subquery for every row
+			Collection<Integer> encounterTypeIds = new HashSet(AccessUtil.getAllowedEncounterTypeIds(roles));
+			if (encounterTypeIds.containsAll(
+			    AccessUtil.getAllIds(ImplConstants.TABLE_ENCOUNTER_TYPE, ImplConstants.COLUMN_ENCOUNTER_TYPE_ID))) {
+				//The user can view all encounter types so the filter would match every record
+				return false;
+			}
+			
+			filterContext.setParameter(ImplConstants.PARAM_NAME_ALLOWED_ENC_TYPES, encounterTypeIds);
 			
 		} else if (filterContext.getFilterName().startsWith(ImplConstants.PROGRAM_BASED_FILTER_NAME_PREFIX)) {
-			Collection<String> userProgramRoleNames = new HashSet();
-			Collection<String> allProgramRoleNames = AccessUtil.getAllProgramRoles();
+			Collection<String> roles = new HashSet();
 			if (Context.isAuthenticated()) {
-				Collection<Role> userProgramRoles = Context.getAuthenticatedUser().getAllRoles().stream()
-				        .filter(r -> allProgramRoleNames.contains(r.getName())).collect(Collectors.toList());
-				
-				userProgramRoleNames = userProgramRoles.stream().map(r -> r.getName()).collect(Collectors.toSet());
-				
-				if (allProgramRoleNames.isEmpty()) {
-					//Avoid a 'select IN ()' which would be an invalid query, in theory we expect no role to match #####
-					allProgramRoleNames.add("#####");
-				}
-				
-				if (userProgramRoleNames.isEmpty()) {
-					//Avoid a 'select IN ()' which would be an invalid query, in theory we expect no role to match #####
-					userProgramRoleNames.add("#####");
-				}
+				Context.getAuthenticatedUser().getAllRoles().forEach(r -> roles.add(r.getName()));
+			}
+			
+			//The visible users are looked up once per set of program roles instead of evaluating the nested
+			//role and program mapping subqueries for every row
+			Collection<Integer> userIds = new HashSet(AccessUtil.getVisibleUserIds(roles));
+			if (filterContext.getFilterName().equals(ImplConstants.PROGRAM_BASED_FILTER_NAME_USER)
+			        && userIds.containsAll(AccessUtil.getAllIds(ImplConstants.TABLE_USERS, ImplConstants.COLUMN_USER_ID))) {
+				//The user can view all users so the filter would match every user, this doesn't apply to the
+				//provider filter since it still excludes providers that have no user account
+				return false;
 			}
 			
-			filterContext.setParameter(ImplConstants.PARAM_NAME_USER_PROG_ROLES, userProgramRoleNames);
-			filterContext.setParameter(ImplConstants.PARAM_NAME_ALL_PROG_ROlES, allProgramRoleNames);
+			filterContext.setParameter(ImplConstants.PARAM_NAME_VISIBLE_USERS, userIds);
 		}
 		
 		return true;
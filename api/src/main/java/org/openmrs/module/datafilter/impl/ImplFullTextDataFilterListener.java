@@ -9,9 +9,12 @@
  */
 package org.openmrs.module.datafilter.impl;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.openmrs.Location;
 import org.openmrs.PatientIdentifier;
@@ -30,6 +33,14 @@ public class ImplFullTextDataFilterListener implements DataFilterListener {
 	
 	private static final Logger log = LoggerFactory.getLogger(ImplFullTextDataFilterListener.class);
 	
+	private static final String PARAM_LOCATION_IDS = "locationIds";
+	
+	private static final String PARAM_PATIENT_IDS = "patientIds";
+	
+	private static final String PARAM_PATIENT_ID_BITS = "patientIdBits";
+	
+	private static final String PARAM_FIELD = "field";
+	
 	private static final HashMap<Class<?>, String> CLASS_FIELD_MAP;
 	
 	static {
@@ -54,19 +65,50 @@ public class ImplFullTextDataFilterListener implements DataFilterListener {
 			return false;
 		}
 		
-		Collection<String> personIds = AccessUtil.getAccessiblePersonIds(Location.class);
-		if (personIds.isEmpty()) {
-			//If the user isn't granted access to patients at any basis, we add -1 because ids are all > 0,
-			//in theory the query will match no records if the user isn't granted access to any basis
-			personIds = Collections.singleton("-1");
+		//Only compute the values of the parameters declared by the filter implementation registered
+		FullTextDataFilterContext fullTextContext = (FullTextDataFilterContext) filterContext;
+		if (fullTextContext.hasParameter(PARAM_LOCATION_IDS)) {
+			//The patient's location ids are indexed in the documents so we only need the user's location ids
+			Collection<String> locationIds = new HashSet();
+			if (Context.isAuthenticated()) {
+				locationIds.addAll(AccessUtil.getAssignedBasisIds(Location.class));
+			}
+			
+			//The full text filter is cached by parameter values, so we pass an immutable set to ensure the key
+			//computed for the user's access set can't change after the filter is cached
+			filterContext.setParameter(PARAM_LOCATION_IDS, Collections.unmodifiableSet(toNonEmptySet(locationIds)));
 		}
 		
-		filterContext.setParameter("field",
-		    CLASS_FIELD_MAP.get(((FullTextDataFilterContext) filterContext).getEntityClass()));
-		
-		filterContext.setParameter("patientIds", personIds);
+		if (fullTextContext.hasParameter(PARAM_PATIENT_IDS) || fullTextContext.hasParameter(PARAM_PATIENT_ID_BITS)) {
+			Collection<String> patientIds = Collections.emptySet();
+			if (Context.isAuthenticated()) {
+				patientIds = AccessUtil.getAccessiblePersonIds(Location.class);
+			}
+			
+			if (fullTextContext.hasParameter(PARAM_PATIENT_IDS)) {
+				filterContext.setParameter(PARAM_FIELD, CLASS_FIELD_MAP.get(fullTextContext.getEntityClass()));
+				filterContext.setParameter(PARAM_PATIENT_IDS, Collections.unmodifiableSet(toNonEmptySet(patientIds)));
+			}
+			
+			if (fullTextContext.hasParameter(PARAM_PATIENT_ID_BITS)) {
+				//An empty bit set matches no documents
+				BitSet patientIdBits = new BitSet();
+				patientIds.forEach(id -> patientIdBits.set(Integer.parseInt(id)));
+				filterContext.setParameter(PARAM_PATIENT_ID_BITS, patientIdBits);
+			}
+		}
 		
 		return true;
 	}
 	
+	private Set<String> toNonEmptySet(Collection<String> ids) {
+		if (ids.isEmpty()) {
+			//If the user isn't granted access to any basis, we add -1 because ids are all > 0,
+			//in theory the filter will match no documents if the user isn't granted access to any basis
+			return Collections.singleton("-1");
+		}
+		
+		return new HashSet(ids);
+	}
+	
 }
@@ -0,0 +1,65 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.queries.TermsFilter;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.BytesRef;
+import org.hibernate.search.annotations.Factory;
+import org.openmrs.module.datafilter.metrics.DataFilterMetrics;
+import org.openmrs.module.datafilter.metrics.Histogram;
+
+/**
+ * Full text Filter that matches documents by the ids of the locations indexed in them by
+ * {@link PatientLocationFieldBridge}, the set of location ids is usually tiny compared to the set of
+ * ids of the patients linked to them which makes the filter cheap to build and cache.
+ */
+public class LocationIdFullTextFilter {
+	
+	private static final Histogram constructionHistogram = DataFilterMetrics
+	        .getHistogram("fullTextFilter.locationId.construction", DataFilterMetrics.UNIT_NANOSECONDS);
+	
+	private Set<String> locationIds;
+	
+	/**
+	 * Sets the locationIds
+	 *
+	 * @param locationIds the locationIds to set
+	 */
+	public void setLocationIds(Set<String> locationIds) {
+		this.locationIds = locationIds;
+	}
+	
+	/**
+	 * Creates the filter, it is only invoked on a cache miss, hibernate search takes care of wrapping
+	 * the returned filter to cache its DocIdSets.
+	 * 
+	 * @return the filter
+	 */
+	@Factory
+	public Filter getFilter() {
+		final long start = System.nanoTime();
+		DataFilterMetrics.getParameterListSizeHistogram("locationIds").record(locationIds.size());
+		List<BytesRef> byteRefs = new ArrayList(locationIds.size());
+		for (String id : locationIds) {
+			byteRefs.add(new BytesRef(id));
+		}
+		
+		Filter filter = new TermsFilter(ImplConstants.FIELD_LOCATION_IDS, byteRefs);
+		constructionHistogram.record(System.nanoTime() - start);
+		
+		return filter;
+	}
+	
+}
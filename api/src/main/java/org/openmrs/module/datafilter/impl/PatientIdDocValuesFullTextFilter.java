@@ -0,0 +1,143 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.BitDocIdSet;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.hibernate.search.annotations.Factory;
+import org.openmrs.module.datafilter.metrics.DataFilterMetrics;
+import org.openmrs.module.datafilter.metrics.Histogram;
+
+/**
+ * Full text Filter that matches documents by the patient id indexed in them as a numeric doc values
+ * field by {@link PatientIdFieldBridge}, the accessible patient ids are held in a {@link BitSet}
+ * instead of a term per id which keeps the memory footprint small for users with access to a large
+ * number of patients, each segment is matched with a single pass over its doc values without any
+ * term dictionary lookups.
+ * <p>
+ * It can be used in place of {@link PatientIdFullTextFilter} or {@link LocationIdFullTextFilter} by
+ * setting it as the implClass of the full text filter registration along with a classBridge named
+ * {@link ImplConstants#FIELD_PATIENT_ID} with {@link PatientIdFieldBridge} as the impl and a single
+ * parameter named patientIdBits.
+ */
+public class PatientIdDocValuesFullTextFilter {
+	
+	private BitSet patientIdBits;
+	
+	/**
+	 * Sets the patientIdBits
+	 *
+	 * @param patientIdBits the patientIdBits to set
+	 */
+	public void setPatientIdBits(BitSet patientIdBits) {
+		this.patientIdBits = patientIdBits;
+	}
+	
+	/**
+	 * Creates the filter, it is only invoked on a cache miss, hibernate search takes care of wrapping
+	 * the returned filter to cache its DocIdSets.
+	 *
+	 * @return the filter
+	 */
+	@Factory
+	public Filter getFilter() {
+		return new NumericDocValuesBitSetFilter(ImplConstants.FIELD_PATIENT_ID, patientIdBits);
+	}
+	
+	/**
+	 * Lucene filter that matches documents with a numeric doc values field whose value is set in a
+	 * {@link BitSet}
+	 */
+	static class NumericDocValuesBitSetFilter extends Filter {
+		
+		private static final Histogram docIdSetHistogram = DataFilterMetrics
+		        .getHistogram("fullTextFilter.patientIdDocValues.docIdSet", DataFilterMetrics.UNIT_NANOSECONDS);
+		
+		private String field;
+		
+		private BitSet ids;
+		
+		NumericDocValuesBitSetFilter(String field, BitSet ids) {
+			this.field = field;
+			this.ids = ids;
+		}
+		
+		/**
+		 * @see Filter#getDocIdSet(LeafReaderContext, Bits)
+		 */
+		@Override
+		public DocIdSet getDocIdSet(LeafReaderContext context, Bits acceptDocs) throws IOException {
+			LeafReader reader = context.reader();
+			NumericDocValues values = reader.getNumericDocValues(field);
+			if (values == null || ids.isEmpty()) {
+				return null;
+			}
+			
+			final long start = System.nanoTime();
+			final int maxDoc = reader.maxDoc();
+			FixedBitSet matches = new FixedBitSet(maxDoc);
+			for (int doc = 0; doc < maxDoc; doc++) {
+				if (acceptDocs != null && !acceptDocs.get(doc)) {
+					continue;
+				}
+				
+				//Documents without the field have a value of 0 and ids are all > 0 so they never match
+				long id = values.get(doc);
+				if (id > 0 && id <= Integer.MAX_VALUE && ids.get((int) id)) {
+					matches.set(doc);
+				}
+			}
+			
+			docIdSetHistogram.record(System.nanoTime() - start);
+			
+			return new BitDocIdSet(matches);
+		}
+		
+		/**
+		 * @see Filter#toString(String)
+		 */
+		@Override
+		public String toString(String defaultField) {
+			return field + ":" + ids.cardinality() + " ids";
+		}
+		
+		/**
+		 * @see Filter#equals(Object)
+		 */
+		@Override
+		public boolean equals(Object other) {
+			if (!super.equals(other)) {
+				return false;
+			}
+			
+			NumericDocValuesBitSetFilter that = (NumericDocValuesBitSetFilter) other;
+			return field.equals(that.field) && ids.equals(that.ids);
+		}
+		
+		/**
+		 * @see Filter#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return 31 * (31 * super.hashCode() + field.hashCode()) + ids.hashCode();
+		}
+		
+	}
+	
+}
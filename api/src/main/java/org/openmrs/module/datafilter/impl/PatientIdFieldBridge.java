@@ -0,0 +1,32 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.hibernate.search.bridge.LuceneOptions;
+
+/**
+ * Class bridge that adds the id of the patient as a numeric doc values field to the search documents
+ * of their names, identifiers and attributes.
+ *
+ * @see PatientIdDocValuesFullTextFilter
+ */
+public class PatientIdFieldBridge extends BasePatientFieldBridge {
+	
+	/**
+	 * @see BasePatientFieldBridge#set(String, Integer, Document, LuceneOptions)
+	 */
+	@Override
+	protected void set(String name, Integer patientId, Document document, LuceneOptions luceneOptions) {
+		document.add(new NumericDocValuesField(name, patientId));
+	}
+	
+}
@@ -14,17 +14,26 @@ import java.util.List;
 import java.util.Set;
 
 import org.apache.lucene.queries.TermsFilter;
-import org.apache.lucene.search.CachingWrapperFilter;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.util.BytesRef;
 import org.hibernate.search.annotations.Factory;
+import org.openmrs.module.datafilter.metrics.DataFilterMetrics;
+import org.openmrs.module.datafilter.metrics.Histogram;
 
 /**
  * Full text Filter that can be applied to patient records and any domain objects that represent
  * patient clinical data e.g. Visits, Encounters, Obs, Orders etc.
+ * <p>
+ * The filter is registered with the INSTANCE_AND_DOCIDSETRESULTS cache mode, hibernate search keys
+ * the cached filter instances and their per segment DocIdSets by the filter parameter values i.e.
+ * the field and the set of accessible patient ids, this implies the cached entry is reused for as
+ * long as the user's access set stays the same and a new one is computed when it changes.
  */
 public class PatientIdFullTextFilter {
 	
+	private static final Histogram constructionHistogram = DataFilterMetrics
+	        .getHistogram("fullTextFilter.patientId.construction", DataFilterMetrics.UNIT_NANOSECONDS);
+	
 	private String field;
 	
 	private Set<String> patientIds;
@@ -47,14 +56,25 @@ public class PatientIdFullTextFilter {
 		this.patientIds = patientIds;
 	}
 	
+	/**
+	 * Creates the filter, it is only invoked on a cache miss, hibernate search takes care of wrapping
+	 * the returned filter to cache its DocIdSets.
+	 * 
+	 * @return the filter
+	 */
 	@Factory
 	public Filter getFilter() {
+		final long start = System.nanoTime();
+		DataFilterMetrics.getParameterListSizeHistogram("patientIds").record(patientIds.size());
 		List<BytesRef> byteRefs = new ArrayList(patientIds.size());
 		for (String id : patientIds) {
 			byteRefs.add(new BytesRef(id));
 		}
 		
-		return new CachingWrapperFilter(new TermsFilter(field, byteRefs));
+		Filter filter = new TermsFilter(field, byteRefs);
+		constructionHistogram.record(System.nanoTime() - start);
+		
+		return filter;
 	}
 	
 }
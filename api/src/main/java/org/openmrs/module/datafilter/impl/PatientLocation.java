@@ -0,0 +1,97 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import org.openmrs.module.datafilter.DataFilterConstants;
+
+/**
+ * An instance of this class represents a link between a patient and a location they are linked to,
+ * the links are a narrow integer keyed copy of the patient to location {@link EntityBasisMap} rows
+ * which the location based filter conditions semi join against instead of the wider mapping table.
+ * <p>
+ * The rows are written and deleted in the same transaction as the mappings they are copied from by
+ * the DAO, they should never be modified directly.
+ */
+@Entity
+@Table(name = DataFilterConstants.MODULE_ID + "_patient_location",
+        indexes = @Index(name = "patient_location_location_idx", columnList = "location_id, patient_id"))
+public class PatientLocation implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	@Id
+	@Column(name = "patient_id", nullable = false, updatable = false)
+	private Integer patientId;
+	
+	@Id
+	@Column(name = "location_id", nullable = false, updatable = false)
+	private Integer locationId;
+	
+	public PatientLocation() {
+	}
+	
+	public PatientLocation(Integer patientId, Integer locationId) {
+		this.patientId = patientId;
+		this.locationId = locationId;
+	}
+	
+	/**
+	 * Gets the patientId
+	 *
+	 * @return the patientId
+	 */
+	public Integer getPatientId() {
+		return patientId;
+	}
+	
+	/**
+	 * Gets the locationId
+	 *
+	 * @return the locationId
+	 */
+	public Integer getLocationId() {
+		return locationId;
+	}
+	
+	/**
+	 * @see Object#equals(Object)
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		
+		if (!(o instanceof PatientLocation)) {
+			return false;
+		}
+		
+		PatientLocation other = (PatientLocation) o;
+		return Objects.equals(patientId, other.patientId) && Objects.equals(locationId, other.locationId);
+	}
+	
+	/**
+	 * @see Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return Objects.hash(patientId, locationId);
+	}
+	
+}
@@ -0,0 +1,35 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl;
+
+import org.apache.lucene.document.Document;
+import org.hibernate.search.bridge.LuceneOptions;
+
+/**
+ * Class bridge that adds the ids of the locations a patient is linked to in the
+ * datafilter_entity_basis_map table to the search documents of their names, identifiers and
+ * attributes, this allows the location based full text filter to match documents on the user's few
+ * assigned location ids instead of all the ids of the patients they have access to.
+ *
+ * @see LocationIdFullTextFilter
+ */
+public class PatientLocationFieldBridge extends BasePatientFieldBridge {
+	
+	/**
+	 * @see BasePatientFieldBridge#set(String, Integer, Document, LuceneOptions)
+	 */
+	@Override
+	protected void set(String name, Integer patientId, Document document, LuceneOptions luceneOptions) {
+		for (String locationId : AccessUtil.getPatientLocationIds(patientId)) {
+			luceneOptions.addFieldToDocument(name, locationId, document);
+		}
+	}
+	
+}
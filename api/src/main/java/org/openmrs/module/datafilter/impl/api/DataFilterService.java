@@ -9,7 +9,12 @@
  */
 package org.openmrs.module.datafilter.impl.api;
 
+import java.io.Reader;
+import java.io.Writer;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import org.openmrs.OpenmrsObject;
 import org.openmrs.api.OpenmrsService;
@@ -33,6 +38,16 @@ public interface DataFilterService extends OpenmrsService {
 	 */
 	void grantAccess(OpenmrsObject entity, Collection<OpenmrsObject> bases);
 	
+	/**
+	 * Grants access to records associated to each of the specified bases to each of the specified
+	 * entities, existing mappings are looked up with a single query per entity and basis type and the
+	 * missing ones are inserted in a single batch.
+	 *
+	 * @param entities the entities to grant access
+	 * @param bases the bases associated to the records to be accessed
+	 */
+	void grantAccess(Collection<OpenmrsObject> entities, Collection<OpenmrsObject> bases);
+	
 	/**
 	 * Revokes access to records associated to the specified basis from the specified entity
 	 * 
@@ -49,6 +64,28 @@ public interface DataFilterService extends OpenmrsService {
 	 */
 	void revokeAccess(OpenmrsObject entity, Collection<OpenmrsObject> bases);
 	
+	/**
+	 * Revokes access to records associated to each of the specified bases from each of the specified
+	 * entities, the existing mappings are looked up with a single query per entity and basis type and
+	 * deleted with a single statement.
+	 *
+	 * @param entities the entities from which to revoke access
+	 * @param bases the bases associated to the records from which to revoke access
+	 */
+	void revokeAccess(Collection<OpenmrsObject> entities, Collection<OpenmrsObject> bases);
+	
+	/**
+	 * Replaces the bases of the specified type the specified entity has access to with the specified
+	 * bases i.e. access is granted to the bases the entity doesn't have yet and revoked from the
+	 * existing ones that are not included.
+	 *
+	 * @param entity the entity to update
+	 * @param basisType the type of the bases to replace
+	 * @param bases the bases the entity should have access to, an empty collection revokes access to
+	 *            all bases of the specified type
+	 */
+	void setAccess(OpenmrsObject entity, Class<? extends OpenmrsObject> basisType, Collection<OpenmrsObject> bases);
+	
 	/**
 	 * Checks whether the specified entity has access to the specified basis
 	 * 
@@ -68,4 +105,75 @@ public interface DataFilterService extends OpenmrsService {
 	 */
 	Collection<EntityBasisMap> getEntityBasisMaps(OpenmrsObject entity, String basisClassName);
 	
+	/**
+	 * Gets the mappings for each of the specified instances for the basis matching the specified basis
+	 * class name, the mappings are fetched with a single query per entity type.
+	 *
+	 * @param entities the instances to match
+	 * @param basisClassName fully qualified java class name of the basis type
+	 * @return a map of each instance and its collection of EntityBasisMap instances, an instance
+	 *         without mappings is mapped to an empty collection
+	 */
+	Map<OpenmrsObject, Collection<EntityBasisMap>> getEntityBasisMaps(Collection<OpenmrsObject> entities,
+	        String basisClassName);
+	
+	/**
+	 * Gets a page of the mappings for the specified instance for the basis matching the specified
+	 * basis class name ordered by basis identifier.
+	 *
+	 * @param entity the instance to match
+	 * @param basisClassName fully qualified java class name of the basis type
+	 * @param firstResult the index of the first mapping to return
+	 * @param maxResults the maximum number of mappings to return
+	 * @return a list of EntityBasisMap instances
+	 */
+	List<EntityBasisMap> getEntityBasisMaps(OpenmrsObject entity, String basisClassName, int firstResult,
+	        int maxResults);
+	
+	/**
+	 * Gets a page of the mappings of the entities matching the specified entity class name to the
+	 * specified basis ordered by entity identifier e.g. the users granted access to a location.
+	 *
+	 * @param basis the basis to match
+	 * @param entityClassName fully qualified java class name of the entity type
+	 * @param firstResult the index of the first mapping to return
+	 * @param maxResults the maximum number of mappings to return
+	 * @return a list of EntityBasisMap instances
+	 */
+	List<EntityBasisMap> getEntityBasisMapsByBasis(OpenmrsObject basis, String entityClassName, int firstResult,
+	        int maxResults);
+	
+	/**
+	 * Streams the mappings of the entities matching the specified entity class name to the specified
+	 * basis to the specified action ordered by entity identifier, the mappings are read with a forward
+	 * only cursor so that all of them are never held in memory at the same time.
+	 *
+	 * @param basis the basis to match
+	 * @param entityClassName fully qualified java class name of the entity type
+	 * @param action the action to apply to each EntityBasisMap
+	 */
+	void forEachEntityBasisMapByBasis(OpenmrsObject basis, String entityClassName, Consumer<EntityBasisMap> action);
+	
+	/**
+	 * Imports entity basis mappings from the specified CSV data, each line contains the entity type,
+	 * entity identifier, basis type and basis identifier in that order where the types are fully
+	 * qualified java class names, the first line is skipped if it is the header written by
+	 * {@link #exportEntityBasisMaps(Writer)}. The entity type must be one of Patient, User, Role or
+	 * Privilege and the basis type one of Location or Program. The data is read and written in chunks
+	 * so that the memory used doesn't depend on its size, mappings that already exist or whose entity or
+	 * basis doesn't exist are skipped.
+	 *
+	 * @param reader the reader to read the CSV data from
+	 * @return the number of mappings that were added
+	 */
+	int importEntityBasisMaps(Reader reader);
+	
+	/**
+	 * Writes all the entity basis mappings to the specified writer as CSV data with a header line,
+	 * the mappings are streamed from the database.
+	 *
+	 * @param writer the writer to write the CSV data to
+	 */
+	void exportEntityBasisMaps(Writer writer);
+	
 }
@@ -10,7 +10,11 @@
 package org.openmrs.module.datafilter.impl.api.db;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
+import org.openmrs.Patient;
 import org.openmrs.module.datafilter.impl.EntityBasisMap;
 
 public interface DataFilterDAO {
@@ -48,4 +52,119 @@ public interface DataFilterDAO {
 	 * @param basisType
 	 */
 	Collection<EntityBasisMap> getEntityBasisMaps(String entityIdentifier, String entityType, String basisType);
+	
+	/**
+	 * Gets all the EntityBasisMaps between the specified entities and bases with a single query, the
+	 * identifiers are matched case insensitively.
+	 *
+	 * @param entityType the entity type to match
+	 * @param entityIdentifiers the entity identifiers to match
+	 * @param basisType the basis type to match
+	 * @param basisIdentifiers the basis identifiers to match, if null the maps for all bases of the
+	 *            specified type are returned
+	 * @return a list of matching EntityBasisMap instances
+	 */
+	List<EntityBasisMap> getEntityBasisMaps(String entityType, Collection<String> entityIdentifiers, String basisType,
+	        Collection<String> basisIdentifiers);
+	
+	/**
+	 * Saves the specified new EntityBasisMap instances to the database with a single batched insert
+	 * statement, note that the instances don't become associated to the current session.
+	 *
+	 * @param entityBasisMaps the EntityBasisMap instances to save
+	 */
+	void saveEntityBasisMaps(Collection<EntityBasisMap> entityBasisMaps);
+	
+	/**
+	 * Deletes the specified EntityBasisMap instances from the database with a single delete statement
+	 *
+	 * @param entityBasisMaps the EntityBasisMap instances to delete
+	 */
+	void deleteEntityBasisMaps(Collection<EntityBasisMap> entityBasisMaps);
+	
+	/**
+	 * Streams all the EntityBasisMaps in the database ordered by id to the specified action, each
+	 * instance is evicted from the session after the action is applied to it so the memory used stays
+	 * constant regardless of the number of rows.
+	 *
+	 * @param action the action to apply to each EntityBasisMap
+	 */
+	void forEachEntityBasisMap(Consumer<EntityBasisMap> action);
+	
+	/**
+	 * Gets a page of the EntityBasisMaps for the specified entity and basis type ordered by the basis
+	 * identifier
+	 *
+	 * @param entityIdentifier the entity identifier to match
+	 * @param entityType the entity type to match
+	 * @param basisType the basis type to match
+	 * @param firstResult the index of the first result to return
+	 * @param maxResults the maximum number of results to return
+	 * @return a list of matching EntityBasisMap instances
+	 */
+	List<EntityBasisMap> getEntityBasisMaps(String entityIdentifier, String entityType, String basisType,
+	        int firstResult, int maxResults);
+	
+	/**
+	 * Gets a page of the EntityBasisMaps for the specified basis and entity type ordered by the entity
+	 * identifier
+	 *
+	 * @param basisIdentifier the basis identifier to match
+	 * @param basisType the basis type to match
+	 * @param entityType the entity type to match
+	 * @param firstResult the index of the first result to return
+	 * @param maxResults the maximum number of results to return
+	 * @return a list of matching EntityBasisMap instances
+	 */
+	List<EntityBasisMap> getEntityBasisMapsByBasis(String basisIdentifier, String basisType, String entityType,
+	        int firstResult, int maxResults);
+	
+	/**
+	 * Streams the EntityBasisMaps for the specified basis and entity type ordered by the entity
+	 * identifier to the specified action, each instance is evicted from the session after the action
+	 * is applied to it.
+	 *
+	 * @param basisIdentifier the basis identifier to match
+	 * @param basisType the basis type to match
+	 * @param entityType the entity type to match
+	 * @param action the action to apply to each EntityBasisMap
+	 */
+	void forEachEntityBasisMapByBasis(String basisIdentifier, String basisType, String entityType,
+	        Consumer<EntityBasisMap> action);
+	
+	/**
+	 * Gets the identifiers among the specified ones of the objects of the specified type that exist in
+	 * the database with a single query, ids are matched as integers and names case insensitively, the
+	 * query is plain SQL so that the filters of the authenticated user are not applied.
+	 *
+	 * @param type the fully qualified java class name of the objects, must be one of the types that
+	 *            can be imported
+	 * @param identifiers the identifiers to look up
+	 * @return the normalized identifiers of the objects that exist
+	 */
+	Set<String> getExistingIdentifiers(String type, Collection<String> identifiers);
+	
+	/**
+	 * Marks the search index documents of the specified patient's names, identifiers and attributes
+	 * to be rebuilt when the current transaction completes so that they reflect the locations the
+	 * patient is linked to.
+	 *
+	 * @param patient the patient whose documents to update
+	 */
+	void updatePatientSearchIndex(Patient patient);
+	
+	/**
+	 * Marks the search index documents of the patients with the specified ids to be rebuilt, the
+	 * patients are loaded by id with a single query so that the filters of the authenticated user are
+	 * not applied.
+	 *
+	 * @param patientIds the ids of the patients whose documents to update
+	 */
+	void updatePatientSearchIndex(Collection<Integer> patientIds);
+	
+	/**
+	 * Flushes the changes and the queued search index work of the current session and then clears it,
+	 * this keeps the session small when processing a large number of objects in one transaction.
+	 */
+	void flushAndClearSession();
 }
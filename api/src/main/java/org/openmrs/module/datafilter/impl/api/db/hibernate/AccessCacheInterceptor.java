@@ -0,0 +1,197 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl.api.db.hibernate;
+
+import java.io.Serializable;
+import java.util.Iterator;
+
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.Transaction;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.type.Type;
+import org.openmrs.EncounterType;
+import org.openmrs.Location;
+import org.openmrs.Patient;
+import org.openmrs.Privilege;
+import org.openmrs.Program;
+import org.openmrs.Role;
+import org.openmrs.User;
+import org.openmrs.module.datafilter.DataFilterSessionContext;
+import org.openmrs.module.datafilter.impl.AccessUtil;
+import org.openmrs.module.datafilter.impl.EntityBasisMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * This interceptor clears the access data cached by {@link AccessUtil} whenever an entity it is
+ * computed from is created, updated or deleted, or when the roles of a user change. The cache is
+ * cleared after the flush so that the changes are visible to the current transaction and again
+ * after the transaction completes so that no stale data cached by other threads in the meantime is
+ * kept. Only role to program mappings are read into the cache, linking patients to locations just
+ * discards the patient location links cached for the threads with no transaction.
+ */
+@Component("accessCacheInterceptor")
+public class AccessCacheInterceptor extends EmptyInterceptor {
+	
+	private static final Logger log = LoggerFactory.getLogger(AccessCacheInterceptor.class);
+	
+	private static final String ROLES_PROPERTY = "roles";
+	
+	private static ThreadLocal<Boolean> cacheStaleHolder = new ThreadLocal();
+	
+	private static ThreadLocal<Boolean> patientLocationsChangedHolder = new ThreadLocal();
+	
+	/**
+	 * @see EmptyInterceptor#onSave(Object, Serializable, Object[], String[], Type[])
+	 */
+	@Override
+	public boolean onSave(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		//New users have no roles yet and are visible to everyone, new locations change the location ids
+		markCacheStaleIfNecessary(entity, true);
+		return super.onSave(entity, id, state, propertyNames, types);
+	}
+	
+	/**
+	 * @see EmptyInterceptor#onFlushDirty(Object, Serializable, Object[], Object[], String[], Type[])
+	 */
+	@Override
+	public boolean onFlushDirty(Object entity, Serializable id, Object[] currentState, Object[] previousState,
+	        String[] propertyNames, Type[] types) {
+		markCacheStaleIfNecessary(entity, false);
+		return super.onFlushDirty(entity, id, currentState, previousState, propertyNames, types);
+	}
+	
+	/**
+	 * @see EmptyInterceptor#onDelete(Object, Serializable, Object[], String[], Type[])
+	 */
+	@Override
+	public void onDelete(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		markCacheStaleIfNecessary(entity, true);
+	}
+	
+	/**
+	 * @see EmptyInterceptor#onCollectionRecreate(Object, Serializable)
+	 */
+	@Override
+	public void onCollectionRecreate(Object collection, Serializable key) {
+		markCacheStaleIfNecessary(collection);
+	}
+	
+	/**
+	 * @see EmptyInterceptor#onCollectionRemove(Object, Serializable)
+	 */
+	@Override
+	public void onCollectionRemove(Object collection, Serializable key) {
+		markCacheStaleIfNecessary(collection);
+	}
+	
+	/**
+	 * @see EmptyInterceptor#onCollectionUpdate(Object, Serializable)
+	 */
+	@Override
+	public void onCollectionUpdate(Object collection, Serializable key) {
+		markCacheStaleIfNecessary(collection);
+	}
+	
+	/**
+	 * Clears the cache and the filters set on the current thread so that the parameter values of the
+	 * filters get recomputed the next time the session is fetched.
+	 * 
+	 * @see EmptyInterceptor#postFlush(Iterator)
+	 */
+	@Override
+	public void postFlush(Iterator entities) {
+		if (BooleanUtils.isTrue(cacheStaleHolder.get())) {
+			if (log.isDebugEnabled()) {
+				log.debug("Detected changes to access data, clearing the cache");
+			}
+			
+			//Keep a non null value so that the cache is cleared again after the transaction completes
+			cacheStaleHolder.set(false);
+			AccessUtil.clearCaches();
+			DataFilterSessionContext.reset();
+		} else if (BooleanUtils.isTrue(patientLocationsChangedHolder.get())) {
+			patientLocationsChangedHolder.set(false);
+			AccessUtil.clearPatientLocationCache();
+		}
+	}
+	
+	/**
+	 * @see EmptyInterceptor#afterTransactionCompletion(Transaction)
+	 */
+	@Override
+	public void afterTransactionCompletion(Transaction tx) {
+		if (cacheStaleHolder.get() != null) {
+			cacheStaleHolder.remove();
+			patientLocationsChangedHolder.remove();
+			AccessUtil.clearCaches();
+		} else if (patientLocationsChangedHolder.get() != null) {
+			patientLocationsChangedHolder.remove();
+			AccessUtil.clearPatientLocationCache();
+		}
+	}
+	
+	/**
+	 * Sets a flag on the current thread if the specified entity is one that the cached access data is
+	 * computed from, updates to users and locations are ignored because only the roles of users and the
+	 * ids of all the users and locations are of interest.
+	 * 
+	 * @param entity the entity to check
+	 * @param isInsertOrDelete specifies whether the entity is getting inserted or deleted
+	 */
+	private void markCacheStaleIfNecessary(Object entity, boolean isInsertOrDelete) {
+		if (entity instanceof EntityBasisMap) {
+			markCacheStaleIfNecessary((EntityBasisMap) entity);
+		} else if (entity instanceof EncounterType || entity instanceof Role || entity instanceof Privilege
+		        || (isInsertOrDelete && (entity instanceof User || entity instanceof Location))) {
+			cacheStaleHolder.set(true);
+		}
+	}
+	
+	/**
+	 * Sets a flag on the current thread if the specified map is a role to program mapping or a patient
+	 * to location mapping, other mappings are not cached and the service methods that grant or revoke
+	 * access already reset the filters.
+	 * 
+	 * @param map the entity basis map to check
+	 */
+	private void markCacheStaleIfNecessary(EntityBasisMap map) {
+		if (Role.class.getName().equals(map.getEntityType()) && Program.class.getName().equals(map.getBasisType())) {
+			cacheStaleHolder.set(true);
+		} else if (Patient.class.getName().equals(map.getEntityType())
+		        && Location.class.getName().equals(map.getBasisType())) {
+			patientLocationsChangedHolder.set(true);
+		}
+	}
+	
+	/**
+	 * Sets a flag on the current thread if the specified collection is owned by a role or is the roles
+	 * collection of a user.
+	 * 
+	 * @param collection the collection to check
+	 */
+	private void markCacheStaleIfNecessary(Object collection) {
+		if (collection instanceof PersistentCollection) {
+			PersistentCollection persistentCollection = (PersistentCollection) collection;
+			Object owner = persistentCollection.getOwner();
+			if (owner instanceof User) {
+				if (StringUtils.endsWith(persistentCollection.getRole(), "." + ROLES_PROPERTY)) {
+					cacheStaleHolder.set(true);
+				}
+			} else {
+				markCacheStaleIfNecessary(owner, false);
+			}
+		}
+	}
+	
+}
@@ -31,6 +31,9 @@ import org.openmrs.api.context.Daemon;
 import org.openmrs.module.datafilter.Util;
 import org.openmrs.module.datafilter.impl.AccessUtil;
 import org.openmrs.module.datafilter.impl.ImplConstants;
+import org.openmrs.module.datafilter.metrics.Counter;
+import org.openmrs.module.datafilter.metrics.DataFilterMetrics;
+import org.openmrs.module.datafilter.metrics.Histogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -52,6 +55,18 @@ public class AccessInterceptor extends EmptyInterceptor {
 	
 	protected static final String SEARCH_LOADER_THREAD_NAME_PREFIX = "Hibernate Search: entityloader";
 	
+	private static final Histogram locationCheckHistogram = DataFilterMetrics
+	        .getHistogram("accessInterceptor.locationBasedCheck", DataFilterMetrics.UNIT_NANOSECONDS);
+	
+	private static final Histogram encTypeCheckHistogram = DataFilterMetrics
+	        .getHistogram("accessInterceptor.encounterTypeBasedCheck", DataFilterMetrics.UNIT_NANOSECONDS);
+	
+	private static final Counter locationCheckDeniedCounter = DataFilterMetrics
+	        .getCounter("accessInterceptor.locationBasedCheck.denied");
+	
+	private static final Counter encTypeCheckDeniedCounter = DataFilterMetrics
+	        .getCounter("accessInterceptor.encounterTypeBasedCheck.denied");
+	
 	static {
 		locationBasedClassAndFiltersMap = new HashMap();
 		locationBasedClassAndFiltersMap.put(Visit.class, ImplConstants.LOCATION_BASED_FILTER_NAME_VISIT);
@@ -122,12 +137,24 @@ public class AccessInterceptor extends EmptyInterceptor {
 						User user = Context.getAuthenticatedUser();
 						if (filteredByLoc) {
 							String filterName = locationBasedClassAndFiltersMap.get(entity.getClass());
-							checkIfHasLocationBasedAccess(entity, id, state, propertyNames, user, filterName);
+							final long start = System.nanoTime();
+							try {
+								checkIfHasLocationBasedAccess(entity, id, state, propertyNames, user, filterName);
+							}
+							finally {
+								locationCheckHistogram.record(System.nanoTime() - start);
+							}
 						}
 						
 						if (filteredByEnc) {
 							String filterName = encTypeBasedClassAndFiltersMap.get(entity.getClass());
-							checkIfHasEncounterTypeBasedAccess(entity, state, propertyNames, user, filterName);
+							final long start = System.nanoTime();
+							try {
+								checkIfHasEncounterTypeBasedAccess(entity, state, propertyNames, user, filterName);
+							}
+							finally {
+								encTypeCheckHistogram.record(System.nanoTime() - start);
+							}
 						}
 					} else {
 						if (log.isTraceEnabled()) {
@@ -154,6 +181,7 @@ public class AccessInterceptor extends EmptyInterceptor {
 			}
 			
 			if (user == null || !AccessUtil.getAccessiblePersonIds(Location.class).contains(personId.toString())) {
+				locationCheckDeniedCounter.increment();
 				throw new ContextAuthenticationException(ImplConstants.ILLEGAL_RECORD_ACCESS_MESSAGE);
 			}
 		}
@@ -192,6 +220,7 @@ public class AccessInterceptor extends EmptyInterceptor {
 				String requiredPrivilege = AccessUtil.getViewPrivilege(encounterTypeId);
 				if (requiredPrivilege != null) {
 					if (user == null || !user.hasPrivilege(requiredPrivilege)) {
+						encTypeCheckDeniedCounter.increment();
 						throw new ContextAuthenticationException(ImplConstants.ILLEGAL_RECORD_ACCESS_MESSAGE);
 					}
 				}
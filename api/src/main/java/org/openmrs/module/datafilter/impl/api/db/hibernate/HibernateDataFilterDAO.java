@@ -9,16 +9,93 @@
  */
 package org.openmrs.module.datafilter.impl.api.db.hibernate;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
+import org.hibernate.Cache;
+import org.hibernate.CacheMode;
 import org.hibernate.Criteria;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.search.FullTextSession;
+import org.hibernate.search.Search;
+import org.openmrs.Location;
+import org.openmrs.Patient;
+import org.openmrs.Privilege;
+import org.openmrs.Program;
+import org.openmrs.Role;
+import org.openmrs.User;
+import org.openmrs.api.APIException;
+import org.openmrs.module.datafilter.DataFilterConstants;
 import org.openmrs.module.datafilter.impl.EntityBasisMap;
+import org.openmrs.module.datafilter.impl.ImplConstants;
+import org.openmrs.module.datafilter.impl.PatientLocation;
 import org.openmrs.module.datafilter.impl.api.db.DataFilterDAO;
+import org.openmrs.module.datafilter.metrics.StatementTally;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 public class HibernateDataFilterDAO implements DataFilterDAO {
 	
+	private static final String INSERT_SQL = "INSERT INTO " + DataFilterConstants.MODULE_ID + "_entity_basis_map "
+	        + "(entity_identifier, normalized_entity_identifier, entity_identifier_num, entity_type, basis_identifier, "
+	        + "normalized_basis_identifier, basis_identifier_num, basis_type, creator, date_created, uuid) "
+	        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	
+	private static final String DELETE_SQL = "DELETE FROM " + DataFilterConstants.MODULE_ID
+	        + "_entity_basis_map WHERE entity_basis_map_id IN ";
+	
+	private static final String INSERT_PATIENT_LOCATION_SQL = "INSERT INTO " + DataFilterConstants.MODULE_ID
+	        + "_patient_location (patient_id, location_id) VALUES (?, ?)";
+	
+	private static final String DELETE_PATIENT_LOCATION_SQL = "DELETE FROM " + DataFilterConstants.MODULE_ID
+	        + "_patient_location WHERE patient_id = ? AND location_id = ?";
+	
+	private static final int FETCH_SIZE = 500;
+	
+	private static final int IN_CLAUSE_CHUNK_SIZE = 500;
+	
+	private static final Map<String, String> TYPE_EXISTING_IDENTIFIERS_QUERY_MAP;
+	
+	private static final Set<String> NAMED_TYPES = Collections
+	        .unmodifiableSet(new HashSet(Arrays.asList(Role.class.getName(), Privilege.class.getName())));
+	
+	private static final String STATEMENT_SOURCE = "DataFilterDAO";
+	
+	static {
+		TYPE_EXISTING_IDENTIFIERS_QUERY_MAP = new HashMap();
+		TYPE_EXISTING_IDENTIFIERS_QUERY_MAP.put(Patient.class.getName(),
+		    "SELECT patient_id FROM patient WHERE patient_id IN (:identifiers)");
+		TYPE_EXISTING_IDENTIFIERS_QUERY_MAP.put(User.class.getName(),
+		    "SELECT user_id FROM users WHERE user_id IN (:identifiers)");
+		TYPE_EXISTING_IDENTIFIERS_QUERY_MAP.put(Location.class.getName(),
+		    "SELECT location_id FROM location WHERE location_id IN (:identifiers)");
+		TYPE_EXISTING_IDENTIFIERS_QUERY_MAP.put(Program.class.getName(),
+		    "SELECT program_id FROM program WHERE program_id IN (:identifiers)");
+		TYPE_EXISTING_IDENTIFIERS_QUERY_MAP.put(Role.class.getName(),
+		    "SELECT role FROM role WHERE LOWER(role) IN (:identifiers)");
+		TYPE_EXISTING_IDENTIFIERS_QUERY_MAP.put(Privilege.class.getName(),
+		    "SELECT privilege FROM privilege WHERE LOWER(privilege) IN (:identifiers)");
+	}
+	
 	private SessionFactory sessionFactory;
 	
 	/**
@@ -38,10 +115,11 @@ public class HibernateDataFilterDAO implements DataFilterDAO {
 	        String basisType) {
 		
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(EntityBasisMap.class);
-		criteria.add(Restrictions.eq("entityIdentifier", entityIdentifier).ignoreCase());
-		criteria.add(Restrictions.eq("entityType", entityType).ignoreCase());
-		criteria.add(Restrictions.eq("basisIdentifier", basisIdentifier).ignoreCase());
-		criteria.add(Restrictions.eq("basisType", basisType).ignoreCase());
+		criteria.add(Restrictions.eq("normalizedEntityIdentifier", EntityBasisMap.normalize(entityIdentifier)));
+		criteria.add(Restrictions.eq("entityType", entityType));
+		criteria.add(Restrictions.eq("normalizedBasisIdentifier", EntityBasisMap.normalize(basisIdentifier)));
+		criteria.add(Restrictions.eq("basisType", basisType));
+		setCacheable(criteria);
 		
 		return (EntityBasisMap) criteria.uniqueResult();
 	}
@@ -52,6 +130,7 @@ public class HibernateDataFilterDAO implements DataFilterDAO {
 	@Override
 	public EntityBasisMap saveEntityBasisMap(EntityBasisMap entityBasisMap) {
 		sessionFactory.getCurrentSession().save(entityBasisMap);
+		updatePatientLocations(Collections.singleton(entityBasisMap), INSERT_PATIENT_LOCATION_SQL);
 		return entityBasisMap;
 	}
 	
@@ -61,6 +140,7 @@ public class HibernateDataFilterDAO implements DataFilterDAO {
 	@Override
 	public void deleteEntityBasisMap(EntityBasisMap entityBasisMap) {
 		sessionFactory.getCurrentSession().delete(entityBasisMap);
+		updatePatientLocations(Collections.singleton(entityBasisMap), DELETE_PATIENT_LOCATION_SQL);
 	}
 	
 	/**
@@ -69,10 +149,413 @@ public class HibernateDataFilterDAO implements DataFilterDAO {
 	@Override
 	public Collection<EntityBasisMap> getEntityBasisMaps(String entityIdentifier, String entityType, String basisType) {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(EntityBasisMap.class);
-		criteria.add(Restrictions.eq("entityIdentifier", entityIdentifier).ignoreCase());
-		criteria.add(Restrictions.eq("entityType", entityType).ignoreCase());
-		criteria.add(Restrictions.eq("basisType", basisType).ignoreCase());
+		criteria.add(Restrictions.eq("normalizedEntityIdentifier", EntityBasisMap.normalize(entityIdentifier)));
+		criteria.add(Restrictions.eq("entityType", entityType));
+		criteria.add(Restrictions.eq("basisType", basisType));
+		setCacheable(criteria);
 		
 		return (Collection<EntityBasisMap>) criteria.list();
 	}
+	
+	/**
+	 * @see DataFilterDAO#getEntityBasisMaps(String, Collection, String, Collection)
+	 */
+	@Override
+	public List<EntityBasisMap> getEntityBasisMaps(String entityType, Collection<String> entityIdentifiers,
+	        String basisType, Collection<String> basisIdentifiers) {
+		
+		if (entityIdentifiers.isEmpty() || (basisIdentifiers != null && basisIdentifiers.isEmpty())) {
+			return new ArrayList();
+		}
+		
+		String hql = "FROM " + EntityBasisMap.class.getName() + " WHERE entityType = :entityType AND "
+		        + "normalizedEntityIdentifier IN (:entityIdentifiers) AND basisType = :basisType";
+		if (basisIdentifiers != null) {
+			hql += " AND normalizedBasisIdentifier IN (:basisIdentifiers)";
+		}
+		
+		//The identifiers are queried in chunks to keep the number of bound parameters within the database limits
+		List<List<String>> basisIdentifierChunks = null;
+		if (basisIdentifiers != null) {
+			basisIdentifierChunks = partition(normalize(basisIdentifiers));
+		}
+		
+		List<EntityBasisMap> maps = new ArrayList();
+		for (List<String> entityIdentifierChunk : partition(normalize(entityIdentifiers))) {
+			if (basisIdentifierChunks == null) {
+				maps.addAll(createQuery(hql, entityType, entityIdentifierChunk, basisType, null).list());
+				continue;
+			}
+			
+			for (List<String> basisIdentifierChunk : basisIdentifierChunks) {
+				maps.addAll(createQuery(hql, entityType, entityIdentifierChunk, basisType, basisIdentifierChunk).list());
+			}
+		}
+		
+		return maps;
+	}
+	
+	private Query createQuery(String hql, String entityType, Collection<String> entityIdentifiers, String basisType,
+	        Collection<String> basisIdentifiers) {
+		
+		Query query = sessionFactory.getCurrentSession().createQuery(hql);
+		query.setParameter("entityType", entityType);
+		query.setParameterList("entityIdentifiers", entityIdentifiers);
+		query.setParameter("basisType", basisType);
+		if (basisIdentifiers != null) {
+			query.setParameterList("basisIdentifiers", basisIdentifiers);
+		}
+		
+		query.setCacheable(true);
+		query.setCacheRegion(ImplConstants.CACHE_REGION_ENTITY_BASIS_MAP_QUERIES);
+		
+		return query;
+	}
+	
+	/**
+	 * @see DataFilterDAO#saveEntityBasisMaps(Collection)
+	 */
+	@Override
+	public void saveEntityBasisMaps(Collection<EntityBasisMap> entityBasisMaps) {
+		if (entityBasisMaps.isEmpty()) {
+			return;
+		}
+		
+		Session session = sessionFactory.getCurrentSession();
+		//Write any pending changes first so that the statements are executed in the expected order
+		session.flush();
+		session.doWork(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+				for (EntityBasisMap map : entityBasisMaps) {
+					statement.setString(1, map.getEntityIdentifier());
+					statement.setString(2, map.getNormalizedEntityIdentifier());
+					setInteger(statement, 3, map.getEntityIdentifierNumber());
+					statement.setString(4, map.getEntityType());
+					statement.setString(5, map.getBasisIdentifier());
+					statement.setString(6, map.getNormalizedBasisIdentifier());
+					setInteger(statement, 7, map.getBasisIdentifierNumber());
+					statement.setString(8, map.getBasisType());
+					statement.setInt(9, map.getCreator().getUserId());
+					statement.setTimestamp(10, new Timestamp(map.getDateCreated().getTime()));
+					statement.setString(11, map.getUuid());
+					statement.addBatch();
+				}
+				
+				statement.executeBatch();
+				StatementTally.record(STATEMENT_SOURCE);
+			}
+		});
+		
+		updatePatientLocations(entityBasisMaps, INSERT_PATIENT_LOCATION_SQL);
+		
+		//The inserted rows are not in the entity cache but cached query results may be missing them
+		evictCachedEntries(Collections.emptyList());
+	}
+	
+	/**
+	 * @see DataFilterDAO#deleteEntityBasisMaps(Collection)
+	 */
+	@Override
+	public void deleteEntityBasisMaps(Collection<EntityBasisMap> entityBasisMaps) {
+		if (entityBasisMaps.isEmpty()) {
+			return;
+		}
+		
+		Session session = sessionFactory.getCurrentSession();
+		session.flush();
+		List<Integer> ids = new ArrayList(entityBasisMaps.size());
+		for (EntityBasisMap map : entityBasisMaps) {
+			ids.add(map.getId());
+			//The delete bypasses the session, so we remove the deleted instances from it
+			session.evict(map);
+		}
+		
+		//A plain SQL statement is used because a bulk HQL delete would evict all the cached mappings, the ids
+		//are deleted in chunks to keep the number of bound parameters within the database limits
+		session.doWork(connection -> {
+			for (List<Integer> idChunk : partition(ids)) {
+				String placeholders = String.join(",", Collections.nCopies(idChunk.size(), "?"));
+				try (PreparedStatement statement = connection.prepareStatement(DELETE_SQL + "(" + placeholders + ")")) {
+					int index = 1;
+					for (Integer id : idChunk) {
+						statement.setInt(index++, id);
+					}
+					
+					statement.executeUpdate();
+					StatementTally.record(STATEMENT_SOURCE);
+				}
+			}
+		});
+		
+		updatePatientLocations(entityBasisMaps, DELETE_PATIENT_LOCATION_SQL);
+		
+		evictCachedEntries(ids);
+	}
+	
+	/**
+	 * @see DataFilterDAO#forEachEntityBasisMap(Consumer)
+	 */
+	@Override
+	public void forEachEntityBasisMap(Consumer<EntityBasisMap> action) {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(EntityBasisMap.class);
+		criteria.addOrder(Order.asc("entityBasisMapId"));
+		scroll(criteria, action);
+	}
+	
+	/**
+	 * @see DataFilterDAO#getEntityBasisMaps(String, String, String, int, int)
+	 */
+	@Override
+	public List<EntityBasisMap> getEntityBasisMaps(String entityIdentifier, String entityType, String basisType,
+	        int firstResult, int maxResults) {
+		
+		//The restrictions and ordering match the columns of the entity_basis_map_normalized_idx index
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(EntityBasisMap.class);
+		criteria.add(Restrictions.eq("entityType", entityType));
+		criteria.add(Restrictions.eq("normalizedEntityIdentifier", EntityBasisMap.normalize(entityIdentifier)));
+		criteria.add(Restrictions.eq("basisType", basisType));
+		criteria.addOrder(Order.asc("normalizedBasisIdentifier"));
+		criteria.setFirstResult(firstResult);
+		criteria.setMaxResults(maxResults);
+		setCacheable(criteria);
+		
+		return criteria.list();
+	}
+	
+	/**
+	 * @see DataFilterDAO#getEntityBasisMapsByBasis(String, String, String, int, int)
+	 */
+	@Override
+	public List<EntityBasisMap> getEntityBasisMapsByBasis(String basisIdentifier, String basisType, String entityType,
+	        int firstResult, int maxResults) {
+		
+		Criteria criteria = createByBasisCriteria(basisIdentifier, basisType, entityType);
+		criteria.setFirstResult(firstResult);
+		criteria.setMaxResults(maxResults);
+		setCacheable(criteria);
+		
+		return criteria.list();
+	}
+	
+	/**
+	 * @see DataFilterDAO#forEachEntityBasisMapByBasis(String, String, String, Consumer)
+	 */
+	@Override
+	public void forEachEntityBasisMapByBasis(String basisIdentifier, String basisType, String entityType,
+	        Consumer<EntityBasisMap> action) {
+		
+		scroll(createByBasisCriteria(basisIdentifier, basisType, entityType), action);
+	}
+	
+	/**
+	 * @see DataFilterDAO#getExistingIdentifiers(String, Collection)
+	 */
+	@Override
+	public Set<String> getExistingIdentifiers(String type, Collection<String> identifiers) {
+		String query = TYPE_EXISTING_IDENTIFIERS_QUERY_MAP.get(type);
+		if (query == null) {
+			throw new APIException("Unsupported type: " + type);
+		}
+		
+		//Several identifiers can match the same value e.g. 7 and 007 so we map each value to all of them
+		boolean isNamed = NAMED_TYPES.contains(type);
+		Map<String, Set<String>> valueIdentifiersMap = new HashMap();
+		for (String identifier : identifiers) {
+			String normalizedIdentifier = EntityBasisMap.normalize(identifier);
+			Integer number = EntityBasisMap.toNumber(identifier);
+			if (isNamed) {
+				valueIdentifiersMap.computeIfAbsent(normalizedIdentifier, value -> new HashSet()).add(normalizedIdentifier);
+			} else if (number != null) {
+				valueIdentifiersMap.computeIfAbsent(number.toString(), value -> new HashSet()).add(normalizedIdentifier);
+			}
+		}
+		
+		Set<String> existingIdentifiers = new HashSet();
+		if (valueIdentifiersMap.isEmpty()) {
+			return existingIdentifiers;
+		}
+		
+		Collection<Object> values = new ArrayList(valueIdentifiersMap.size());
+		valueIdentifiersMap.keySet().forEach(value -> values.add(isNamed ? value : Integer.valueOf(value)));
+		List<Object> rows = sessionFactory.getCurrentSession().createSQLQuery(query).setParameterList("identifiers", values)
+		        .list();
+		StatementTally.record(STATEMENT_SOURCE);
+		for (Object row : rows) {
+			Set<String> matches = valueIdentifiersMap.get(EntityBasisMap.normalize(row.toString()));
+			if (matches != null) {
+				existingIdentifiers.addAll(matches);
+			}
+		}
+		
+		return existingIdentifiers;
+	}
+	
+	private Criteria createByBasisCriteria(String basisIdentifier, String basisType, String entityType) {
+		//The restrictions and ordering match the columns of the entity_basis_map_normalized_basis_idx index
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(EntityBasisMap.class);
+		criteria.add(Restrictions.eq("entityType", entityType));
+		criteria.add(Restrictions.eq("basisType", basisType));
+		criteria.add(Restrictions.eq("normalizedBasisIdentifier", EntityBasisMap.normalize(basisIdentifier)));
+		criteria.addOrder(Order.asc("normalizedEntityIdentifier"));
+		
+		return criteria;
+	}
+	
+	/**
+	 * Streams the results of the specified criteria to the specified action with a forward only
+	 * cursor, each instance is evicted from the session after it is processed so that the memory used
+	 * doesn't grow with the number of results.
+	 */
+	private void scroll(Criteria criteria, Consumer<EntityBasisMap> action) {
+		Session session = sessionFactory.getCurrentSession();
+		criteria.setFetchSize(FETCH_SIZE);
+		criteria.setCacheMode(CacheMode.IGNORE);
+		ScrollableResults results = criteria.scroll(ScrollMode.FORWARD_ONLY);
+		try {
+			while (results.next()) {
+				EntityBasisMap map = (EntityBasisMap) results.get(0);
+				action.accept(map);
+				session.evict(map);
+			}
+		}
+		finally {
+			results.close();
+		}
+	}
+	
+	/**
+	 * Evicts the cached mappings with the specified ids and the cached mapping query results, the
+	 * eviction is repeated after the transaction completes so that entries cached by other threads from
+	 * the committed state before the changes become visible to them are discarded.
+	 *
+	 * @param ids the ids of the cached mappings to evict
+	 */
+	private void evictCachedEntries(Collection<Integer> ids) {
+		Cache cache = sessionFactory.getCache();
+		Runnable eviction = () -> {
+			ids.forEach(id -> cache.evictEntity(EntityBasisMap.class, id));
+			cache.evictQueryRegion(ImplConstants.CACHE_REGION_ENTITY_BASIS_MAP_QUERIES);
+		};
+		
+		eviction.run();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					eviction.run();
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Inserts or deletes the patient location rows copied from the specified mappings that link
+	 * patients to locations, the statements run on the session's connection so that they are part of
+	 * the same transaction as the changes to the mappings.
+	 *
+	 * @param entityBasisMaps the mappings whose patient location rows to insert or delete
+	 * @param sql the insert or delete statement to execute for each patient location
+	 */
+	private void updatePatientLocations(Collection<EntityBasisMap> entityBasisMaps, String sql) {
+		Set<PatientLocation> patientLocations = new LinkedHashSet();
+		for (EntityBasisMap map : entityBasisMaps) {
+			if (Patient.class.getName().equals(map.getEntityType()) && Location.class.getName().equals(map.getBasisType())
+			        && map.getEntityIdentifierNumber() != null && map.getBasisIdentifierNumber() != null) {
+				patientLocations.add(new PatientLocation(map.getEntityIdentifierNumber(), map.getBasisIdentifierNumber()));
+			}
+		}
+		
+		if (patientLocations.isEmpty()) {
+			return;
+		}
+		
+		sessionFactory.getCurrentSession().doWork(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				for (PatientLocation patientLocation : patientLocations) {
+					statement.setInt(1, patientLocation.getPatientId());
+					statement.setInt(2, patientLocation.getLocationId());
+					statement.addBatch();
+				}
+				
+				statement.executeBatch();
+				StatementTally.record(STATEMENT_SOURCE);
+			}
+		});
+	}
+	
+	private void setCacheable(Criteria criteria) {
+		criteria.setCacheable(true);
+		criteria.setCacheRegion(ImplConstants.CACHE_REGION_ENTITY_BASIS_MAP_QUERIES);
+	}
+	
+	private void setInteger(PreparedStatement statement, int index, Integer value) throws SQLException {
+		if (value == null) {
+			statement.setNull(index, Types.INTEGER);
+		} else {
+			statement.setInt(index, value);
+		}
+	}
+	
+	/**
+	 * Splits the specified values into lists of at most {@link #IN_CLAUSE_CHUNK_SIZE} elements that are
+	 * bound to the parameters of an IN clause.
+	 */
+	private <T> List<List<T>> partition(Collection<T> values) {
+		List<T> list = new ArrayList(values);
+		List<List<T>> chunks = new ArrayList();
+		for (int i = 0; i < list.size(); i += IN_CLAUSE_CHUNK_SIZE) {
+			chunks.add(list.subList(i, Math.min(i + IN_CLAUSE_CHUNK_SIZE, list.size())));
+		}
+		
+		return chunks;
+	}
+	
+	private Collection<String> normalize(Collection<String> identifiers) {
+		Set<String> normalizedIdentifiers = new HashSet(identifiers.size());
+		identifiers.forEach(identifier -> normalizedIdentifiers.add(EntityBasisMap.normalize(identifier)));
+		return normalizedIdentifiers;
+	}
+	
+	/**
+	 * @see DataFilterDAO#updatePatientSearchIndex(Patient)
+	 */
+	@Override
+	public void updatePatientSearchIndex(Patient patient) {
+		//The work is only queued, it is processed after the session is flushed when the transaction completes
+		FullTextSession fullTextSession = Search.getFullTextSession(sessionFactory.getCurrentSession());
+		patient.getNames().forEach(fullTextSession::index);
+		patient.getIdentifiers().forEach(fullTextSession::index);
+		patient.getAttributes().forEach(fullTextSession::index);
+	}
+	
+	/**
+	 * @see DataFilterDAO#updatePatientSearchIndex(Collection)
+	 */
+	@Override
+	public void updatePatientSearchIndex(Collection<Integer> patientIds) {
+		if (patientIds.isEmpty()) {
+			return;
+		}
+		
+		//Loading by id isn't subject to the hibernate filters unlike a query
+		List<Patient> patients = sessionFactory.getCurrentSession().byMultipleIds(Patient.class)
+		        .multiLoad(new ArrayList(patientIds));
+		for (Patient patient : patients) {
+			if (patient != null) {
+				updatePatientSearchIndex(patient);
+			}
+		}
+	}
+	
+	/**
+	 * @see DataFilterDAO#flushAndClearSession()
+	 */
+	@Override
+	public void flushAndClearSession() {
+		FullTextSession fullTextSession = Search.getFullTextSession(sessionFactory.getCurrentSession());
+		fullTextSession.flush();
+		fullTextSession.flushToIndexes();
+		fullTextSession.clear();
+	}
 }
@@ -13,6 +13,7 @@ import org.hibernate.FlushMode;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.datafilter.metrics.StatementTally;
 
 
 final class InterceptorUtil {
@@ -29,10 +30,12 @@ final class InterceptorUtil {
 		//the GP value below and we end up in this method again, therefore we need to disable auto flush
 		final FlushMode flushMode = session.getHibernateFlushMode();
 		session.setHibernateFlushMode(FlushMode.MANUAL);
+		String previousSource = StatementTally.enter("InterceptorUtil.getGpValueNoFlush");
 		try {
 			return Context.getAdministrationService().getGlobalProperty(gpName);
 		}
 		finally {
+			StatementTally.exit(previousSource);
 			//reset
 			session.setHibernateFlushMode(flushMode);
 		}
@@ -83,32 +83,6 @@ public class PatientLocationLinkingInterceptor extends EmptyInterceptor {
 		return super.findDirty(entity, id, currentState, previousState, propertyNames, types);
 	}
 	
-	/**
-	 * @see EmptyInterceptor#beforeTransactionCompletion(Transaction)
-	 */
-	@Override
-	public void beforeTransactionCompletion(Transaction tx) {
-		SessionData sessionData = sessionDataHolder.get();
-		if (sessionData == null) {
-			//No new patients created in this transaction
-			super.beforeTransactionCompletion(tx);
-			return;
-		}
-		
-		if (log.isDebugEnabled()) {
-			log.debug("Linking new Patient with id: " + sessionData.locationId + " to location with id: "
-			        + sessionData.locationId);
-		}
-		
-		EntityBasisMap map = new EntityBasisMap();
-		map.setEntityIdentifier(sessionData.patient.getId().toString());
-		map.setEntityType(Patient.class.getName());
-		map.setBasisIdentifier(sessionData.locationId.toString());
-		map.setBasisType(Location.class.getName());
-		
-		Context.getRegisteredComponents(DataFilterDAO.class).get(0).saveEntityBasisMap(map);
-	}
-	
 	@Override
 	public void afterTransactionCompletion(Transaction tx) {
 		if (sessionDataHolder.get() != null) {
@@ -156,14 +130,17 @@ public class PatientLocationLinkingInterceptor extends EmptyInterceptor {
 	
 	/**
 	 * An instance of this class is used to check if there is a location set on the current user
-	 * context, if none exists it throws an exception otherwise sets it in the {@link SessionData}
-	 * instance for the current session.
+	 * context, if none exists it throws an exception otherwise links the new patient to it. The link
+	 * is created from here rather than from {@link #beforeTransactionCompletion(Transaction)} because
+	 * this process is registered before the one hibernate search registers to index the new patient's
+	 * documents, this ensures the indexed documents contain the location the patient is linked to.
 	 */
 	private class SessionLocationDetector implements BeforeTransactionCompletionProcess {
 		
 		@Override
 		public void doBeforeTransactionCompletion(SessionImplementor session) {
-			if (sessionDataHolder.get() != null) {
+			SessionData sessionData = sessionDataHolder.get();
+			if (sessionData != null) {
 				Integer locationId = null;
 				if (Context.isAuthenticated()) {
 					locationId = Context.getUserContext().getLocationId();
@@ -178,7 +155,18 @@ public class PatientLocationLinkingInterceptor extends EmptyInterceptor {
 					        "Failed to link a new patient to any location, no session location found on the user context");
 				}
 				
-				sessionDataHolder.get().locationId = locationId;
+				if (log.isDebugEnabled()) {
+					log.debug("Linking new Patient with id: " + sessionData.patient.getId() + " to location with id: "
+					        + locationId);
+				}
+				
+				EntityBasisMap map = new EntityBasisMap();
+				map.setEntityIdentifier(sessionData.patient.getId().toString());
+				map.setEntityType(Patient.class.getName());
+				map.setBasisIdentifier(locationId.toString());
+				map.setBasisType(Location.class.getName());
+				
+				Context.getRegisteredComponents(DataFilterDAO.class).get(0).saveEntityBasisMap(map);
 			}
 		}
 		
@@ -188,8 +176,6 @@ public class PatientLocationLinkingInterceptor extends EmptyInterceptor {
 		
 		private Patient patient;
 		
-		private Integer locationId;
-		
 	}
 	
 }
@@ -9,27 +9,66 @@
  */
 package org.openmrs.module.datafilter.impl.api.impl;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.Hibernate;
+import org.openmrs.Location;
 import org.openmrs.OpenmrsMetadata;
 import org.openmrs.OpenmrsObject;
+import org.openmrs.Patient;
 import org.openmrs.Privilege;
+import org.openmrs.Program;
 import org.openmrs.Role;
+import org.openmrs.User;
 import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.datafilter.DataFilterSessionContext;
+import org.openmrs.module.datafilter.impl.AccessUtil;
+import org.openmrs.module.datafilter.impl.CsvUtil;
 import org.openmrs.module.datafilter.impl.EntityBasisMap;
 import org.openmrs.module.datafilter.impl.api.DataFilterService;
 import org.openmrs.module.datafilter.impl.api.db.DataFilterDAO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 @Transactional(readOnly = true)
 public class DataFilterServiceImpl extends BaseOpenmrsService implements DataFilterService {
 	
+	private static final Logger log = LoggerFactory.getLogger(DataFilterServiceImpl.class);
+	
+	private static final String[] CSV_HEADER = { "entity_type", "entity_identifier", "basis_type", "basis_identifier" };
+	
+	private static final String LINE_SEPARATOR = "\r\n";
+	
+	private static final int IMPORT_CHUNK_SIZE = 500;
+	
+	private static final Set<String> IMPORT_ENTITY_TYPES = Collections.unmodifiableSet(new HashSet(
+	        Arrays.asList(Patient.class.getName(), User.class.getName(), Role.class.getName(), Privilege.class.getName())));
+	
+	private static final Set<String> IMPORT_BASIS_TYPES = Collections
+	        .unmodifiableSet(new HashSet(Arrays.asList(Location.class.getName(), Program.class.getName())));
+	
 	private DataFilterDAO dao;
 	
 	/**
@@ -56,19 +95,37 @@ public class DataFilterServiceImpl extends BaseOpenmrsService implements DataFil
 	@Transactional
 	@Override
 	public void grantAccess(OpenmrsObject entity, Collection<OpenmrsObject> bases) {
-		for (OpenmrsObject basis : bases) {
-			if (!hasAccess(entity, basis)) {
-				EntityBasisMap map = new EntityBasisMap();
-				map.setEntityIdentifier(getIdentifier(entity));
-				map.setEntityType(Hibernate.getClass(entity).getName());
-				map.setBasisIdentifier(getIdentifier(basis));
-				map.setBasisType(Hibernate.getClass(basis).getName());
-				
-				dao.saveEntityBasisMap(map);
+		grantAccess(Collections.singleton(entity), bases);
+	}
+	
+	/**
+	 * @see DataFilterService#grantAccess(Collection, Collection)
+	 */
+	@Transactional
+	@Override
+	public void grantAccess(Collection<OpenmrsObject> entities, Collection<OpenmrsObject> bases) {
+		List<EntityBasisMap> candidates = new ArrayList(entities.size() * bases.size());
+		Map<String, Patient> idPatientMap = new HashMap();
+		for (OpenmrsObject entity : entities) {
+			for (OpenmrsObject basis : bases) {
+				EntityBasisMap map = createEntityBasisMap(entity, basis);
+				candidates.add(map);
+				if (isPatientLocationLink(map)) {
+					idPatientMap.put(map.getNormalizedEntityIdentifier(), (Patient) entity);
+				}
 			}
 		}
 		
-		DataFilterSessionContext.reset();
+		Set<Patient> patientsToReindex = new HashSet();
+		for (EntityBasisMap map : saveNewEntityBasisMaps(candidates)) {
+			if (isPatientLocationLink(map)) {
+				patientsToReindex.add(idPatientMap.get(map.getNormalizedEntityIdentifier()));
+			}
+		}
+		
+		patientsToReindex.forEach(dao::updatePatientSearchIndex);
+		
+		onAccessChanged();
 	}
 	
 	/**
@@ -86,15 +143,146 @@ public class DataFilterServiceImpl extends BaseOpenmrsService implements DataFil
 	@Transactional
 	@Override
 	public void revokeAccess(OpenmrsObject entity, Collection<OpenmrsObject> bases) {
+		revokeAccess(Collections.singleton(entity), bases);
+	}
+	
+	/**
+	 * @see DataFilterService#revokeAccess(Collection, Collection)
+	 */
+	@Transactional
+	@Override
+	public void revokeAccess(Collection<OpenmrsObject> entities, Collection<OpenmrsObject> bases) {
+		List<EntityBasisMap> mapsToDelete = new ArrayList();
+		Set<Patient> patientsToReindex = new HashSet();
+		Map<String, Map<String, OpenmrsObject>> typeIdBasisMap = groupByType(bases);
+		for (Map.Entry<String, Map<String, OpenmrsObject>> entityEntry : groupByType(entities).entrySet()) {
+			Map<String, OpenmrsObject> idEntityMap = entityEntry.getValue();
+			for (Map.Entry<String, Map<String, OpenmrsObject>> basisEntry : typeIdBasisMap.entrySet()) {
+				List<EntityBasisMap> maps = dao.getEntityBasisMaps(entityEntry.getKey(), idEntityMap.keySet(),
+				    basisEntry.getKey(), basisEntry.getValue().keySet());
+				mapsToDelete.addAll(maps);
+				for (EntityBasisMap map : maps) {
+					OpenmrsObject entity = idEntityMap.get(map.getNormalizedEntityIdentifier());
+					OpenmrsObject basis = basisEntry.getValue().get(map.getNormalizedBasisIdentifier());
+					if (isPatientLocationLink(entity, basis)) {
+						patientsToReindex.add((Patient) entity);
+					}
+				}
+			}
+		}
+		
+		dao.deleteEntityBasisMaps(mapsToDelete);
+		patientsToReindex.forEach(dao::updatePatientSearchIndex);
+		
+		onAccessChanged();
+	}
+	
+	/**
+	 * @see DataFilterService#setAccess(OpenmrsObject, Class, Collection)
+	 */
+	@Transactional
+	@Override
+	public void setAccess(OpenmrsObject entity, Class<? extends OpenmrsObject> basisType, Collection<OpenmrsObject> bases) {
+		Map<String, OpenmrsObject> idBasisMap = new LinkedHashMap();
 		for (OpenmrsObject basis : bases) {
-			EntityBasisMap map = dao.getEntityBasisMap(getIdentifier(entity), Hibernate.getClass(entity).getName(),
-			    getIdentifier(basis), Hibernate.getClass(basis).getName());
-			if (map != null) {
-				dao.deleteEntityBasisMap(map);
+			if (!basisType.equals(Hibernate.getClass(basis))) {
+				throw new APIException("Expected a basis of type " + basisType.getName() + " but found: " + basis);
 			}
+			
+			idBasisMap.put(EntityBasisMap.normalize(getIdentifier(basis)), basis);
 		}
 		
-		DataFilterSessionContext.reset();
+		List<EntityBasisMap> mapsToDelete = new ArrayList();
+		for (EntityBasisMap map : dao.getEntityBasisMaps(Hibernate.getClass(entity).getName(),
+		    Collections.singleton(getIdentifier(entity)), basisType.getName(), null)) {
+			//Whatever remains in the map after this loop is what needs to be added
+			if (idBasisMap.remove(map.getNormalizedBasisIdentifier()) == null) {
+				mapsToDelete.add(map);
+			}
+		}
+		
+		List<EntityBasisMap> newMaps = new ArrayList(idBasisMap.size());
+		for (OpenmrsObject basis : idBasisMap.values()) {
+			newMaps.add(createEntityBasisMap(entity, basis));
+		}
+		
+		dao.deleteEntityBasisMaps(mapsToDelete);
+		dao.saveEntityBasisMaps(newMaps);
+		boolean changed = !mapsToDelete.isEmpty() || !newMaps.isEmpty();
+		if (changed && entity instanceof Patient && Location.class.equals(basisType)) {
+			dao.updatePatientSearchIndex((Patient) entity);
+		}
+		
+		onAccessChanged();
+	}
+	
+	/**
+	 * @see DataFilterService#importEntityBasisMaps(Reader)
+	 */
+	@Transactional
+	@Override
+	public int importEntityBasisMaps(Reader reader) {
+		BufferedReader bufferedReader = new BufferedReader(reader);
+		Map<Integer, EntityBasisMap> chunk = new LinkedHashMap();
+		int importCount = 0;
+		int lineNumber = 0;
+		try {
+			String line;
+			while ((line = bufferedReader.readLine()) != null) {
+				lineNumber++;
+				if (StringUtils.isBlank(line)) {
+					continue;
+				}
+				
+				List<String> values = CsvUtil.parseLine(line);
+				if (lineNumber == 1 && CSV_HEADER[0].equalsIgnoreCase(values.get(0))) {
+					continue;
+				}
+				
+				chunk.put(lineNumber, createEntityBasisMap(values, lineNumber));
+				if (chunk.size() == IMPORT_CHUNK_SIZE) {
+					importCount += importChunk(chunk);
+					chunk.clear();
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new APIException("Failed to read the entity basis mappings", e);
+		}
+		
+		importCount += importChunk(chunk);
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Imported " + importCount + " entity basis mapping(s) from " + lineNumber + " line(s)");
+		}
+		
+		onAccessChanged();
+		
+		return importCount;
+	}
+	
+	/**
+	 * @see DataFilterService#exportEntityBasisMaps(Writer)
+	 */
+	@Override
+	public void exportEntityBasisMaps(Writer writer) {
+		try {
+			writer.write(CsvUtil.formatLine(CSV_HEADER) + LINE_SEPARATOR);
+			dao.forEachEntityBasisMap(map -> {
+				try {
+					writer.write(CsvUtil.formatLine(map.getEntityType(), map.getEntityIdentifier(), map.getBasisType(),
+					    map.getBasisIdentifier()) + LINE_SEPARATOR);
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			
+			writer.flush();
+		}
+		catch (IOException | UncheckedIOException e) {
+			throw new APIException("Failed to write the entity basis mappings", e);
+		}
 	}
 	
 	/**
@@ -112,6 +300,207 @@ public class DataFilterServiceImpl extends BaseOpenmrsService implements DataFil
 		return false;
 	}
 	
+	/**
+	 * Clears the cached access data and the filters set on the current thread after entity basis maps
+	 * are saved or deleted, the cache is cleared again after the transaction completes so that no data
+	 * cached by other threads before the changes were committed is kept.
+	 */
+	private void onAccessChanged() {
+		AccessUtil.clearCaches();
+		DataFilterSessionContext.reset();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					AccessUtil.clearCaches();
+				}
+				
+			});
+		}
+	}
+	
+	/**
+	 * Checks if the specified entity and basis are a patient and a location, such links are indexed in
+	 * the search documents of the patient's names, identifiers and attributes.
+	 */
+	private boolean isPatientLocationLink(OpenmrsObject entity, OpenmrsObject basis) {
+		return entity instanceof Patient && basis instanceof Location;
+	}
+	
+	/**
+	 * Groups the specified objects by type and then by their normalized identifiers since identifiers
+	 * are matched case insensitively.
+	 */
+	private Map<String, Map<String, OpenmrsObject>> groupByType(Collection<OpenmrsObject> openmrsObjects) {
+		Map<String, Map<String, OpenmrsObject>> typeIdObjectMap = new LinkedHashMap();
+		for (OpenmrsObject openmrsObject : openmrsObjects) {
+			typeIdObjectMap.computeIfAbsent(Hibernate.getClass(openmrsObject).getName(), type -> new LinkedHashMap())
+			        .put(EntityBasisMap.normalize(getIdentifier(openmrsObject)), openmrsObject);
+		}
+		
+		return typeIdObjectMap;
+	}
+	
+	/**
+	 * Saves the specified candidate maps that don't exist yet in the database, the existing maps are
+	 * looked up with a single query per entity and basis type pair and the new ones are saved in a
+	 * single batch.
+	 *
+	 * @param candidates the maps to save if they don't exist yet
+	 * @return the maps that were saved
+	 */
+	private List<EntityBasisMap> saveNewEntityBasisMaps(List<EntityBasisMap> candidates) {
+		Map<List<String>, List<EntityBasisMap>> typesCandidatesMap = new LinkedHashMap();
+		for (EntityBasisMap candidate : candidates) {
+			typesCandidatesMap.computeIfAbsent(Arrays.asList(candidate.getEntityType(), candidate.getBasisType()),
+			    types -> new ArrayList()).add(candidate);
+		}
+		
+		List<EntityBasisMap> newMaps = new ArrayList();
+		for (Map.Entry<List<String>, List<EntityBasisMap>> entry : typesCandidatesMap.entrySet()) {
+			Set<String> entityIds = new HashSet();
+			Set<String> basisIds = new HashSet();
+			for (EntityBasisMap candidate : entry.getValue()) {
+				entityIds.add(candidate.getNormalizedEntityIdentifier());
+				basisIds.add(candidate.getNormalizedBasisIdentifier());
+			}
+			
+			Set<List<String>> existingKeys = new HashSet();
+			for (EntityBasisMap map : dao.getEntityBasisMaps(entry.getKey().get(0), entityIds, entry.getKey().get(1),
+			    basisIds)) {
+				existingKeys.add(createKey(map.getNormalizedEntityIdentifier(), map.getNormalizedBasisIdentifier()));
+				//We only need the keys, this keeps the session small when importing a large number of maps
+				Context.evictFromSession(map);
+			}
+			
+			for (EntityBasisMap candidate : entry.getValue()) {
+				if (existingKeys.add(createKey(candidate.getNormalizedEntityIdentifier(),
+				    candidate.getNormalizedBasisIdentifier()))) {
+					newMaps.add(candidate);
+				}
+			}
+		}
+		
+		dao.saveEntityBasisMaps(newMaps);
+		
+		return newMaps;
+	}
+	
+	/**
+	 * Saves the new maps in the specified chunk of imported maps keyed by line number, the maps whose
+	 * entity or basis doesn't exist are skipped, the existing identifiers are looked up with a single
+	 * query per type. The search index documents of the patients linked to new locations are updated
+	 * and the session is cleared afterwards so that the memory used doesn't grow with the number of
+	 * imported lines.
+	 *
+	 * @param chunk the maps to import keyed by their line numbers
+	 * @return the number of maps that were saved
+	 */
+	private int importChunk(Map<Integer, EntityBasisMap> chunk) {
+		if (chunk.isEmpty()) {
+			return 0;
+		}
+		
+		Map<String, Set<String>> typeIdentifiersMap = new HashMap();
+		for (EntityBasisMap map : chunk.values()) {
+			typeIdentifiersMap.computeIfAbsent(map.getEntityType(), type -> new HashSet()).add(map.getEntityIdentifier());
+			typeIdentifiersMap.computeIfAbsent(map.getBasisType(), type -> new HashSet()).add(map.getBasisIdentifier());
+		}
+		
+		Map<String, Set<String>> typeExistingIdentifiersMap = new HashMap();
+		typeIdentifiersMap.forEach((type, identifiers) -> typeExistingIdentifiersMap.put(type,
+		    dao.getExistingIdentifiers(type, identifiers)));
+		
+		List<EntityBasisMap> candidates = new ArrayList(chunk.size());
+		for (Map.Entry<Integer, EntityBasisMap> entry : chunk.entrySet()) {
+			EntityBasisMap map = entry.getValue();
+			if (typeExistingIdentifiersMap.get(map.getEntityType()).contains(map.getNormalizedEntityIdentifier())
+			        && typeExistingIdentifiersMap.get(map.getBasisType()).contains(map.getNormalizedBasisIdentifier())) {
+				candidates.add(map);
+			} else {
+				log.warn("Skipping the entity basis mapping at line " + entry.getKey()
+				        + " because its entity or basis doesn't exist");
+			}
+		}
+		
+		List<EntityBasisMap> newMaps = saveNewEntityBasisMaps(candidates);
+		Set<Integer> patientIds = new HashSet();
+		for (EntityBasisMap map : newMaps) {
+			if (isPatientLocationLink(map)) {
+				patientIds.add(map.getEntityIdentifierNumber());
+			}
+		}
+		
+		dao.updatePatientSearchIndex(patientIds);
+		dao.flushAndClearSession();
+		
+		return newMaps.size();
+	}
+	
+	private EntityBasisMap createEntityBasisMap(List<String> values, int lineNumber) {
+		if (values.size() != CSV_HEADER.length || values.stream().anyMatch(StringUtils::isBlank)) {
+			throw new APIException("Expected " + CSV_HEADER.length + " non blank values at line " + lineNumber);
+		}
+		
+		if (!IMPORT_ENTITY_TYPES.contains(values.get(0))) {
+			throw new APIException("Invalid entity type " + values.get(0) + " at line " + lineNumber);
+		}
+		
+		if (!IMPORT_BASIS_TYPES.contains(values.get(2))) {
+			throw new APIException("Invalid basis type " + values.get(2) + " at line " + lineNumber);
+		}
+		
+		EntityBasisMap map = new EntityBasisMap();
+		map.setEntityType(values.get(0));
+		map.setEntityIdentifier(toCanonicalIdentifier(values.get(0), values.get(1)));
+		map.setBasisType(values.get(2));
+		map.setBasisIdentifier(toCanonicalIdentifier(values.get(2), values.get(3)));
+		map.setCreator(Context.getAuthenticatedUser());
+		map.setDateCreated(new Date());
+		
+		return map;
+	}
+	
+	/**
+	 * Converts the specified identifier of a numeric type to its canonical form e.g. 007 to 7 so that
+	 * the imported identifiers match those of the mappings created from the entities themselves.
+	 *
+	 * @param type the entity or basis type
+	 * @param identifier the identifier to convert
+	 * @return the canonical identifier
+	 */
+	private String toCanonicalIdentifier(String type, String identifier) {
+		if (Role.class.getName().equals(type) || Privilege.class.getName().equals(type)) {
+			return identifier;
+		}
+		
+		Integer number = EntityBasisMap.toNumber(identifier);
+		
+		return number == null ? identifier : number.toString();
+	}
+	
+	private boolean isPatientLocationLink(EntityBasisMap map) {
+		return Patient.class.getName().equals(map.getEntityType()) && Location.class.getName().equals(map.getBasisType());
+	}
+	
+	private List<String> createKey(String entityIdentifier, String basisIdentifier) {
+		return Arrays.asList(EntityBasisMap.normalize(entityIdentifier), EntityBasisMap.normalize(basisIdentifier));
+	}
+	
+	private EntityBasisMap createEntityBasisMap(OpenmrsObject entity, OpenmrsObject basis) {
+		EntityBasisMap map = new EntityBasisMap();
+		map.setEntityIdentifier(getIdentifier(entity));
+		map.setEntityType(Hibernate.getClass(entity).getName());
+		map.setBasisIdentifier(getIdentifier(basis));
+		map.setBasisType(Hibernate.getClass(basis).getName());
+		//The maps are inserted in bulk bypassing the session so the auditable fields have to be set here
+		map.setCreator(Context.getAuthenticatedUser());
+		map.setDateCreated(new Date());
+		
+		return map;
+	}
+	
 	private String getIdentifier(OpenmrsObject openmrsObject) {
 		String entityId = null;
 		try {
@@ -137,4 +526,53 @@ public class DataFilterServiceImpl extends BaseOpenmrsService implements DataFil
 	public Collection<EntityBasisMap> getEntityBasisMaps(OpenmrsObject entity, String basisClassName) {
 		return dao.getEntityBasisMaps(entity.getId().toString(), Hibernate.getClass(entity).getName(), basisClassName);
 	}
+	
+	/**
+	 * @see DataFilterService#getEntityBasisMaps(Collection, String)
+	 */
+	@Override
+	public Map<OpenmrsObject, Collection<EntityBasisMap>> getEntityBasisMaps(Collection<OpenmrsObject> entities,
+	        String basisClassName) {
+		
+		Map<OpenmrsObject, Collection<EntityBasisMap>> entityMapsMap = new LinkedHashMap();
+		for (Map.Entry<String, Map<String, OpenmrsObject>> entry : groupByType(entities).entrySet()) {
+			Map<String, OpenmrsObject> idEntityMap = entry.getValue();
+			idEntityMap.values().forEach(entity -> entityMapsMap.put(entity, new ArrayList()));
+			for (EntityBasisMap map : dao.getEntityBasisMaps(entry.getKey(), idEntityMap.keySet(), basisClassName, null)) {
+				entityMapsMap.get(idEntityMap.get(map.getNormalizedEntityIdentifier())).add(map);
+			}
+		}
+		
+		return entityMapsMap;
+	}
+	
+	/**
+	 * @see DataFilterService#getEntityBasisMaps(OpenmrsObject, String, int, int)
+	 */
+	@Override
+	public List<EntityBasisMap> getEntityBasisMaps(OpenmrsObject entity, String basisClassName, int firstResult,
+	        int maxResults) {
+		return dao.getEntityBasisMaps(getIdentifier(entity), Hibernate.getClass(entity).getName(), basisClassName,
+		    firstResult, maxResults);
+	}
+	
+	/**
+	 * @see DataFilterService#getEntityBasisMapsByBasis(OpenmrsObject, String, int, int)
+	 */
+	@Override
+	public List<EntityBasisMap> getEntityBasisMapsByBasis(OpenmrsObject basis, String entityClassName, int firstResult,
+	        int maxResults) {
+		return dao.getEntityBasisMapsByBasis(getIdentifier(basis), Hibernate.getClass(basis).getName(), entityClassName,
+		    firstResult, maxResults);
+	}
+	
+	/**
+	 * @see DataFilterService#forEachEntityBasisMapByBasis(OpenmrsObject, String, Consumer)
+	 */
+	@Override
+	public void forEachEntityBasisMapByBasis(OpenmrsObject basis, String entityClassName, Consumer<EntityBasisMap> action) {
+		dao.forEachEntityBasisMapByBasis(getIdentifier(basis), Hibernate.getClass(basis).getName(), entityClassName,
+		    action);
+	}
+	
 }
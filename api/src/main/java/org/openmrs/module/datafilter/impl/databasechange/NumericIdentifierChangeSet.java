@@ -0,0 +1,147 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl.databasechange;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+import org.openmrs.module.datafilter.DataFilterConstants;
+import org.openmrs.module.datafilter.impl.EntityBasisMap;
+
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Populates the numeric identifier columns of the existing rows in the entity basis map table, the
+ * identifiers are converted with {@link EntityBasisMap#toNumber(String)} like those of new rows so
+ * that the same rows get numeric identifiers on all databases. The upgrade fails if an identifier
+ * made of digits only can't be converted since the filters would no longer match the row.
+ */
+public class NumericIdentifierChangeSet implements CustomTaskChange {
+	
+	private static final String TABLE_NAME = DataFilterConstants.MODULE_ID + "_entity_basis_map";
+	
+	private static final String SELECT_SQL = "SELECT entity_basis_map_id, entity_identifier, basis_identifier FROM "
+	        + TABLE_NAME + " WHERE entity_identifier_num IS NULL OR basis_identifier_num IS NULL";
+	
+	private static final String UPDATE_SQL = "UPDATE " + TABLE_NAME
+	        + " SET entity_identifier_num = ?, basis_identifier_num = ? WHERE entity_basis_map_id = ?";
+	
+	private static final int BATCH_SIZE = 500;
+	
+	private int updatedCount;
+	
+	/**
+	 * @see CustomTaskChange#execute(Database)
+	 */
+	@Override
+	public void execute(Database database) throws CustomChangeException {
+		Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+		int unconvertedCount = 0;
+		try (Statement select = connection.createStatement();
+		        PreparedStatement update = connection.prepareStatement(UPDATE_SQL)) {
+			
+			select.setFetchSize(BATCH_SIZE);
+			int batchCount = 0;
+			try (ResultSet rs = select.executeQuery(SELECT_SQL)) {
+				while (rs.next()) {
+					String entityIdentifier = rs.getString(2);
+					String basisIdentifier = rs.getString(3);
+					Integer entityIdentifierNum = EntityBasisMap.toNumber(entityIdentifier);
+					Integer basisIdentifierNum = EntityBasisMap.toNumber(basisIdentifier);
+					if (entityIdentifierNum == null && isDigits(entityIdentifier)) {
+						unconvertedCount++;
+					}
+					
+					if (basisIdentifierNum == null && isDigits(basisIdentifier)) {
+						unconvertedCount++;
+					}
+					
+					if (entityIdentifierNum == null && basisIdentifierNum == null) {
+						continue;
+					}
+					
+					setInteger(update, 1, entityIdentifierNum);
+					setInteger(update, 2, basisIdentifierNum);
+					update.setInt(3, rs.getInt(1));
+					update.addBatch();
+					updatedCount++;
+					if (++batchCount == BATCH_SIZE) {
+						update.executeBatch();
+						batchCount = 0;
+					}
+				}
+			}
+			
+			if (batchCount > 0) {
+				update.executeBatch();
+			}
+		}
+		catch (SQLException e) {
+			throw new CustomChangeException("Failed to populate the numeric identifier columns of " + TABLE_NAME, e);
+		}
+		
+		if (unconvertedCount > 0) {
+			throw new CustomChangeException(unconvertedCount + " numeric identifiers in " + TABLE_NAME
+			        + " are out of the integer range and can't be converted, fix or remove the rows and try again");
+		}
+	}
+	
+	private void setInteger(PreparedStatement statement, int index, Integer value) throws SQLException {
+		if (value == null) {
+			statement.setNull(index, Types.INTEGER);
+		} else {
+			statement.setInt(index, value);
+		}
+	}
+	
+	private boolean isDigits(String identifier) {
+		return identifier != null && !identifier.isEmpty() && identifier.chars().allMatch(c -> c >= '0' && c <= '9');
+	}
+	
+	/**
+	 * @see CustomTaskChange#getConfirmationMessage()
+	 */
+	@Override
+	public String getConfirmationMessage() {
+		return "Populated the numeric identifiers of " + updatedCount + " rows in " + TABLE_NAME;
+	}
+	
+	/**
+	 * @see CustomTaskChange#setUp()
+	 */
+	@Override
+	public void setUp() {
+	}
+	
+	/**
+	 * @see CustomTaskChange#setFileOpener(ResourceAccessor)
+	 */
+	@Override
+	public void setFileOpener(ResourceAccessor resourceAccessor) {
+	}
+	
+	/**
+	 * @see CustomTaskChange#validate(Database)
+	 */
+	@Override
+	public ValidationErrors validate(Database database) {
+		return null;
+	}
+	
+}
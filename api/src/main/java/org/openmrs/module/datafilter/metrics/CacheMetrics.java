@@ -0,0 +1,92 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps track of the hits, misses and evictions of a cache using striped counters
+ */
+public class CacheMetrics implements CacheMetricsMBean {
+	
+	private final LongAdder hits = new LongAdder();
+	
+	private final LongAdder misses = new LongAdder();
+	
+	private final LongAdder evictions = new LongAdder();
+	
+	/**
+	 * Records a lookup that found a cached value
+	 */
+	public void hit() {
+		hits.increment();
+	}
+	
+	/**
+	 * Records a lookup that didn't find a cached value
+	 */
+	public void miss() {
+		misses.increment();
+	}
+	
+	/**
+	 * Records the eviction of the specified number of cached values
+	 *
+	 * @param count the number of evicted values
+	 */
+	public void evicted(long count) {
+		evictions.add(count);
+	}
+	
+	/**
+	 * @see CacheMetricsMBean#getHitCount()
+	 */
+	@Override
+	public long getHitCount() {
+		return hits.sum();
+	}
+	
+	/**
+	 * @see CacheMetricsMBean#getMissCount()
+	 */
+	@Override
+	public long getMissCount() {
+		return misses.sum();
+	}
+	
+	/**
+	 * @see CacheMetricsMBean#getEvictionCount()
+	 */
+	@Override
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+	
+	/**
+	 * @see CacheMetricsMBean#getHitRate()
+	 */
+	@Override
+	public double getHitRate() {
+		long hitCount = getHitCount();
+		long lookups = hitCount + getMissCount();
+		return lookups == 0 ? 0 : (double) hitCount / lookups;
+	}
+	
+	/**
+	 * @see CacheMetricsMBean#reset()
+	 */
+	@Override
+	public void reset() {
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+	
+}
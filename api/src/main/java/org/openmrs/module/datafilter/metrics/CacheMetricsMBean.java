@@ -0,0 +1,50 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.metrics;
+
+/**
+ * JMX management interface of a {@link CacheMetrics}
+ */
+public interface CacheMetricsMBean {
+	
+	/**
+	 * Gets the number of lookups that found a cached value
+	 *
+	 * @return the hit count
+	 */
+	long getHitCount();
+	
+	/**
+	 * Gets the number of lookups that didn't find a cached value
+	 *
+	 * @return the miss count
+	 */
+	long getMissCount();
+	
+	/**
+	 * Gets the number of cached values that were discarded
+	 *
+	 * @return the eviction count
+	 */
+	long getEvictionCount();
+	
+	/**
+	 * Gets the ratio of the hit count to the number of lookups
+	 *
+	 * @return the hit rate between 0 and 1
+	 */
+	double getHitRate();
+	
+	/**
+	 * Sets all the counts back to zero
+	 */
+	void reset();
+	
+}
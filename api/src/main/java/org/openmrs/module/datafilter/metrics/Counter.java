@@ -0,0 +1,54 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter backed by a {@link LongAdder} which stripes the count across cells so that threads
+ * incrementing it concurrently don't contend on a single value.
+ */
+public class Counter implements CounterMBean {
+	
+	private final LongAdder count = new LongAdder();
+	
+	/**
+	 * Adds one to the count
+	 */
+	public void increment() {
+		count.increment();
+	}
+	
+	/**
+	 * Adds the specified value to the count
+	 *
+	 * @param value the value to add
+	 */
+	public void add(long value) {
+		count.add(value);
+	}
+	
+	/**
+	 * @see CounterMBean#getCount()
+	 */
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+	
+	/**
+	 * @see CounterMBean#reset()
+	 */
+	@Override
+	public void reset() {
+		count.reset();
+	}
+	
+}
@@ -0,0 +1,177 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.openmrs.module.datafilter.DataFilterConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the counters, histograms and cache metrics of the module's hot paths, each metric is
+ * created once per name and registered as an MBean with the platform MBean server in the module's
+ * JMX domain e.g. org.openmrs.module.datafilter:type=Histogram,name="sessionContext.filterSetup" so
+ * that it can be inspected with any JMX client. Failing to register a metric is logged and never
+ * fails the operation being measured.
+ */
+public final class DataFilterMetrics {
+	
+	private static final Logger log = LoggerFactory.getLogger(DataFilterMetrics.class);
+	
+	public static final String DOMAIN = "org.openmrs.module." + DataFilterConstants.MODULE_ID;
+	
+	public static final String UNIT_NANOSECONDS = "nanoseconds";
+	
+	public static final String UNIT_VALUES = "values";
+	
+	public static final String SESSION_CONTEXT_FILTER_SETUP = "sessionContext.filterSetup";
+	
+	public static final String LISTENER_PREFIX = "listener.";
+	
+	public static final String PARAMETER_LIST_SIZE_PREFIX = "parameterListSize.";
+	
+	private static final Map<String, Histogram> histograms = new ConcurrentHashMap();
+	
+	private static final Map<String, Counter> counters = new ConcurrentHashMap();
+	
+	private static final Map<String, CacheMetrics> caches = new ConcurrentHashMap();
+	
+	private static final Map<Class<?>, Histogram> listenerHistograms = new ConcurrentHashMap();
+	
+	private static final Map<String, Histogram> parameterListSizeHistograms = new ConcurrentHashMap();
+	
+	private DataFilterMetrics() {
+	}
+	
+	/**
+	 * Gets the histogram with the specified name, it is created and registered if it doesn't exist
+	 *
+	 * @param name the name of the histogram
+	 * @param unit the unit of the values recorded by the histogram
+	 * @return the histogram
+	 */
+	public static Histogram getHistogram(String name, String unit) {
+		return histograms.computeIfAbsent(name, k -> register("Histogram", name, new Histogram(unit)));
+	}
+	
+	/**
+	 * Gets the counter with the specified name, it is created and registered if it doesn't exist
+	 *
+	 * @param name the name of the counter
+	 * @return the counter
+	 */
+	public static Counter getCounter(String name) {
+		return counters.computeIfAbsent(name, k -> register("Counter", name, new Counter()));
+	}
+	
+	/**
+	 * Gets the metrics of the cache with the specified name, they are created and registered if they
+	 * don't exist
+	 *
+	 * @param name the name of the cache
+	 * @return the cache metrics
+	 */
+	public static CacheMetrics getCacheMetrics(String name) {
+		return caches.computeIfAbsent(name, k -> register("Cache", name, new CacheMetrics()));
+	}
+	
+	/**
+	 * Gets the histogram of the time taken by the onEnableFilter method of the specified listener
+	 * class, the lookup is by class to avoid building the metric name on every call.
+	 *
+	 * @param listenerClass the listener class
+	 * @return the histogram
+	 */
+	public static Histogram getListenerHistogram(Class<?> listenerClass) {
+		return listenerHistograms.computeIfAbsent(listenerClass,
+		    k -> getHistogram(LISTENER_PREFIX + listenerClass.getSimpleName() + ".onEnableFilter", UNIT_NANOSECONDS));
+	}
+	
+	/**
+	 * Gets the histogram of the number of values bound to the list filter parameter with the specified
+	 * name, the lookup is by parameter name to avoid building the metric name on every call.
+	 *
+	 * @param parameterName the name of the filter parameter
+	 * @return the histogram
+	 */
+	public static Histogram getParameterListSizeHistogram(String parameterName) {
+		return parameterListSizeHistograms.computeIfAbsent(parameterName,
+		    k -> getHistogram(PARAMETER_LIST_SIZE_PREFIX + parameterName, UNIT_VALUES));
+	}
+	
+	/**
+	 * Resets all the metrics
+	 */
+	public static void resetAll() {
+		histograms.values().forEach(Histogram::reset);
+		counters.values().forEach(Counter::reset);
+		caches.values().forEach(CacheMetrics::reset);
+	}
+	
+	/**
+	 * Unregisters all the metrics from the platform MBean server, it is called when the module is
+	 * stopped since the next instance of the module would otherwise find the names taken.
+	 */
+	public static void unregisterAll() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			for (ObjectName objectName : server.queryNames(new ObjectName(DOMAIN + ":*"), null)) {
+				server.unregisterMBean(objectName);
+			}
+		}
+		catch (JMException e) {
+			log.warn("Failed to unregister the data filter metrics", e);
+		}
+		
+		listenerHistograms.clear();
+		parameterListSizeHistograms.clear();
+		histograms.clear();
+		counters.clear();
+		caches.clear();
+	}
+	
+	/**
+	 * Gets the JMX object name of the metric with the specified type and name
+	 *
+	 * @param type the metric type
+	 * @param name the metric name
+	 * @return the object name
+	 * @throws JMException
+	 */
+	public static ObjectName getObjectName(String type, String name) throws JMException {
+		return new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+	}
+	
+	private static <T> T register(String type, String name, T metric) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = getObjectName(type, name);
+			//A metric left behind by a previous instance of the module is replaced
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			
+			server.registerMBean(metric, objectName);
+		}
+		catch (JMException e) {
+			log.warn("Failed to register the " + name + " metric", e);
+		}
+		
+		return metric;
+	}
+	
+}
@@ -0,0 +1,192 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of non negative long values with log linear buckets like those of an HDR
+ * histogram, values below {@link #SUB_BUCKET_COUNT} are counted exactly and every larger power of 2
+ * range is split into {@link #SUB_BUCKET_COUNT} equal buckets which bounds the error of a reported
+ * percentile to about 3% of its value whatever the magnitude. Recording a value is a couple of
+ * atomic increments and never allocates which makes it cheap enough for the hot paths.
+ */
+public class Histogram implements HistogramMBean {
+	
+	private static final int SUB_BUCKET_BITS = 5;
+	
+	public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	
+	private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+	
+	private final String unit;
+	
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	
+	private final LongAdder count = new LongAdder();
+	
+	private final LongAdder sum = new LongAdder();
+	
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+	
+	public Histogram(String unit) {
+		this.unit = unit;
+	}
+	
+	/**
+	 * Records the specified value, negative values are recorded as zero
+	 *
+	 * @param value the value to record
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		
+		buckets.incrementAndGet(getBucketIndex(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+	
+	/**
+	 * Gets the value below which the specified percentage of the recorded values fall, the returned
+	 * value is the highest value of the matching bucket but never more than the largest recorded value
+	 *
+	 * @param percentile the percentile between 0 and 100
+	 * @return the value at the percentile or zero if no value has been recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] snapshot = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		
+		if (total == 0) {
+			return 0;
+		}
+		
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long cumulative = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			cumulative += snapshot[i];
+			if (cumulative >= rank) {
+				return Math.min(getHighestValue(i), getMax());
+			}
+		}
+		
+		return getMax();
+	}
+	
+	/**
+	 * @see HistogramMBean#getUnit()
+	 */
+	@Override
+	public String getUnit() {
+		return unit;
+	}
+	
+	/**
+	 * @see HistogramMBean#getCount()
+	 */
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+	
+	/**
+	 * @see HistogramMBean#getMean()
+	 */
+	@Override
+	public double getMean() {
+		long n = getCount();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+	
+	/**
+	 * @see HistogramMBean#getMax()
+	 */
+	@Override
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * @see HistogramMBean#get50thPercentile()
+	 */
+	@Override
+	public long get50thPercentile() {
+		return getValueAtPercentile(50);
+	}
+	
+	/**
+	 * @see HistogramMBean#get90thPercentile()
+	 */
+	@Override
+	public long get90thPercentile() {
+		return getValueAtPercentile(90);
+	}
+	
+	/**
+	 * @see HistogramMBean#get99thPercentile()
+	 */
+	@Override
+	public long get99thPercentile() {
+		return getValueAtPercentile(99);
+	}
+	
+	/**
+	 * @see HistogramMBean#get999thPercentile()
+	 */
+	@Override
+	public long get999thPercentile() {
+		return getValueAtPercentile(99.9);
+	}
+	
+	/**
+	 * @see HistogramMBean#reset()
+	 */
+	@Override
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			buckets.set(i, 0);
+		}
+		
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+	
+	private static int getBucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		
+		int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+		return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + subBucket;
+	}
+	
+	private static long getHighestValue(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		
+		int exponent = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT + SUB_BUCKET_BITS;
+		long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+		long shift = exponent - SUB_BUCKET_BITS;
+		return ((SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+	}
+	
+}
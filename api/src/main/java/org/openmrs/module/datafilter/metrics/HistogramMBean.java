@@ -0,0 +1,78 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.metrics;
+
+/**
+ * JMX management interface of a {@link Histogram}
+ */
+public interface HistogramMBean {
+	
+	/**
+	 * Gets the unit of the recorded values
+	 *
+	 * @return the unit
+	 */
+	String getUnit();
+	
+	/**
+	 * Gets the number of recorded values
+	 *
+	 * @return the count
+	 */
+	long getCount();
+	
+	/**
+	 * Gets the mean of the recorded values
+	 *
+	 * @return the mean
+	 */
+	double getMean();
+	
+	/**
+	 * Gets the largest recorded value
+	 *
+	 * @return the max
+	 */
+	long getMax();
+	
+	/**
+	 * Gets the median of the recorded values
+	 *
+	 * @return the median
+	 */
+	long get50thPercentile();
+	
+	/**
+	 * Gets the 90th percentile of the recorded values
+	 *
+	 * @return the 90th percentile
+	 */
+	long get90thPercentile();
+	
+	/**
+	 * Gets the 99th percentile of the recorded values
+	 *
+	 * @return the 99th percentile
+	 */
+	long get99thPercentile();
+	
+	/**
+	 * Gets the 99.9th percentile of the recorded values
+	 *
+	 * @return the 99.9th percentile
+	 */
+	long get999thPercentile();
+	
+	/**
+	 * Discards all the recorded values
+	 */
+	void reset();
+	
+}
@@ -0,0 +1,220 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.metrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.Session;
+
+/**
+ * Tallies the SQL statements executed on the current thread while a unit of work like an http
+ * request is processed, the statements issued by the module are tallied per source separately from
+ * those issued by the application.
+ * <p>
+ * The statements the module runs over plain JDBC or in a stateless session are recorded explicitly
+ * by the module code that runs them with {@link #record(String)}. Those executed by hibernate on the
+ * current session are counted by a listener that {@link #attach(Session)} adds to the session, such a
+ * statement is attributed to the source of the enclosing {@link #enter(String)} and
+ * {@link #exit(String)} calls if any otherwise to the application. Statements the application runs
+ * over plain JDBC aren't visible to the listener and therefore aren't tallied.
+ */
+public class StatementTally {
+	
+	private static final ThreadLocal<StatementTally> currentTally = new ThreadLocal();
+	
+	private static final ThreadLocal<String> currentSource = new ThreadLocal();
+	
+	private final Map<String, Integer> sourceCountMap = new LinkedHashMap();
+	
+	private int applicationCount;
+	
+	private Session session;
+	
+	/**
+	 * Starts tallying the statements executed on the current thread
+	 */
+	public static void begin() {
+		currentTally.set(new StatementTally());
+	}
+	
+	/**
+	 * Stops tallying the statements executed on the current thread
+	 *
+	 * @return the tally or null if none was started
+	 */
+	public static StatementTally end() {
+		StatementTally tally = currentTally.get();
+		currentTally.remove();
+		currentSource.remove();
+		
+		return tally;
+	}
+	
+	/**
+	 * Gets the tally of the current thread
+	 *
+	 * @return the tally or null if none was started
+	 */
+	public static StatementTally getCurrent() {
+		return currentTally.get();
+	}
+	
+	/**
+	 * Records a statement issued by the module from the specified source, it does nothing if no tally
+	 * was started on the current thread.
+	 *
+	 * @param source the name of the module code that issued the statement
+	 */
+	public static void record(String source) {
+		StatementTally tally = currentTally.get();
+		if (tally != null) {
+			tally.add(source);
+		}
+	}
+	
+	/**
+	 * Marks the start of module code that executes statements on the current session, the statements
+	 * are attributed to the specified source until {@link #exit(String)} is called with the returned
+	 * value, nested calls leave the statements attributed to the outermost source.
+	 *
+	 * @param source the name of the module code
+	 * @return the source that was already active or null if there was none
+	 */
+	public static String enter(String source) {
+		if (currentTally.get() == null) {
+			return null;
+		}
+		
+		String previous = currentSource.get();
+		if (previous == null) {
+			currentSource.set(source);
+		}
+		
+		return previous;
+	}
+	
+	/**
+	 * Marks the end of module code started with {@link #enter(String)}
+	 *
+	 * @param previous the value returned by the matching call to {@link #enter(String)}
+	 */
+	public static void exit(String previous) {
+		if (previous == null) {
+			currentSource.remove();
+		}
+	}
+	
+	/**
+	 * Adds a listener to the specified session that tallies the statements hibernate executes on it, it
+	 * does nothing if no tally was started on the current thread or the listener was already added.
+	 *
+	 * @param session the session to attach to
+	 */
+	public static void attach(Session session) {
+		StatementTally tally = currentTally.get();
+		if (tally != null && tally.session != session) {
+			tally.session = session;
+			session.addEventListeners(new TallyListener(tally));
+		}
+	}
+	
+	/**
+	 * Gets the number of statements issued by the module
+	 *
+	 * @return the module statement count
+	 */
+	public int getModuleCount() {
+		return sourceCountMap.values().stream().mapToInt(Integer::intValue).sum();
+	}
+	
+	/**
+	 * Gets the number of statements issued by the module per source
+	 *
+	 * @return a map of source names and statement counts
+	 */
+	public Map<String, Integer> getSourceCounts() {
+		return Collections.unmodifiableMap(sourceCountMap);
+	}
+	
+	/**
+	 * Gets the number of statements hibernate executed on the attached session for the application
+	 *
+	 * @return the application statement count
+	 */
+	public int getApplicationCount() {
+		return applicationCount;
+	}
+	
+	/**
+	 * Gets a one line summary of the tally
+	 *
+	 * @return the summary
+	 */
+	public String getSummary() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("datafilter=").append(getModuleCount());
+		if (!sourceCountMap.isEmpty()) {
+			sb.append(" ").append(sourceCountMap);
+		}
+		
+		return sb.append(", application=").append(applicationCount).toString();
+	}
+	
+	private void add(String source) {
+		sourceCountMap.merge(source, 1, Integer::sum);
+	}
+	
+	/**
+	 * Session event listener that counts the statements hibernate executes for the tally that added it
+	 * for as long as the tally is the current one of the thread executing the statements.
+	 */
+	private static class TallyListener extends BaseSessionEventListener {
+		
+		private final StatementTally tally;
+		
+		TallyListener(StatementTally tally) {
+			this.tally = tally;
+		}
+		
+		/**
+		 * @see BaseSessionEventListener#jdbcExecuteStatementStart()
+		 */
+		@Override
+		public void jdbcExecuteStatementStart() {
+			count();
+		}
+		
+		/**
+		 * @see BaseSessionEventListener#jdbcExecuteBatchStart()
+		 */
+		@Override
+		public void jdbcExecuteBatchStart() {
+			count();
+		}
+		
+		private void count() {
+			if (currentTally.get() != tally) {
+				return;
+			}
+			
+			String source = currentSource.get();
+			if (source != null) {
+				tally.add(source);
+			} else {
+				tally.applicationCount++;
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,46 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.metrics;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * Method interceptor that attributes the statements executed by the methods of the bean it advises
+ * to the configured source in the current {@link StatementTally}
+ */
+public class StatementTallyInterceptor implements MethodInterceptor {
+	
+	private String source;
+	
+	/**
+	 * Sets the source
+	 *
+	 * @param source the source to set
+	 */
+	public void setSource(String source) {
+		this.source = source;
+	}
+	
+	/**
+	 * @see MethodInterceptor#invoke(MethodInvocation)
+	 */
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		String previous = StatementTally.enter(source);
+		try {
+			return invocation.proceed();
+		}
+		finally {
+			StatementTally.exit(previous);
+		}
+	}
+	
+}
@@ -0,0 +1,59 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.registration;
+
+/**
+ * An instance of this class represents a hibernate search class bridge to be added to the target
+ * classes of a {@link FullTextFilterRegistration}, it is typically used to index extra fields that
+ * the filter implementation matches against.
+ */
+public class ClassBridgeRegistration {
+	
+	private String name;
+	
+	private Class impl;
+	
+	/**
+	 * Gets the name
+	 *
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Sets the name
+	 *
+	 * @param name the name to set
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * Gets the impl
+	 *
+	 * @return the impl
+	 */
+	public Class getImpl() {
+		return impl;
+	}
+	
+	/**
+	 * Sets the impl
+	 *
+	 * @param impl the impl to set
+	 */
+	public void setImpl(Class impl) {
+		this.impl = impl;
+	}
+	
+}
@@ -15,6 +15,8 @@ public class FullTextFilterRegistration extends FilterRegistration<FilterParamet
 	
 	private String cacheMode;
 	
+	private ClassBridgeRegistration classBridge;
+	
 	/**
 	 * Gets the implClass
 	 *
@@ -51,4 +53,22 @@ public class FullTextFilterRegistration extends FilterRegistration<FilterParamet
 		this.cacheMode = cacheMode;
 	}
 	
+	/**
+	 * Gets the classBridge
+	 *
+	 * @return the classBridge
+	 */
+	public ClassBridgeRegistration getClassBridge() {
+		return classBridge;
+	}
+	
+	/**
+	 * Sets the classBridge
+	 *
+	 * @param classBridge the classBridge to set
+	 */
+	public void setClassBridge(ClassBridgeRegistration classBridge) {
+		this.classBridge = classBridge;
+	}
+	
 }
@@ -10,6 +10,7 @@
 package org.openmrs.module.datafilter.registration;
 
 import java.util.List;
+import java.util.Map;
 
 public class HibernateFilterRegistration extends FilterRegistration<HibernateFilterParameter> {
 	
@@ -19,10 +20,20 @@ public class HibernateFilterRegistration extends FilterRegistration<HibernateFil
 	
 	private String condition;
 	
+	private Map<String, String> dialectConditions;
+	
 	private boolean deduceAliasInjectionPoints;
 	
 	private List<FilterAlias> aliases;
 	
+	private String variantOf;
+	
+	private Map<String, HibernateFilterRegistration> idSetVariants;
+	
+	private Map<String, HibernateFilterRegistration> emptyListVariants;
+	
+	private List<String> fusedFilters;
+	
 	/**
 	 * Gets the property
 	 *
@@ -77,6 +88,26 @@ public class HibernateFilterRegistration extends FilterRegistration<HibernateFil
 		this.condition = condition;
 	}
 	
+	/**
+	 * Gets the dialectConditions, these are optional database specific variants of the condition keyed
+	 * by the lower case name of the hibernate dialect without the Dialect suffix or a prefix of it e.g.
+	 * mysql, mysql8, mariadb, postgresql or h2.
+	 *
+	 * @return the dialectConditions
+	 */
+	public Map<String, String> getDialectConditions() {
+		return dialectConditions;
+	}
+	
+	/**
+	 * Sets the dialectConditions
+	 *
+	 * @param dialectConditions the dialectConditions to set
+	 */
+	public void setDialectConditions(Map<String, String> dialectConditions) {
+		this.dialectConditions = dialectConditions;
+	}
+	
 	/**
 	 * Gets the deduceAliasInjectionPoints
 	 *
@@ -113,4 +144,81 @@ public class HibernateFilterRegistration extends FilterRegistration<HibernateFil
 		this.aliases = aliases;
 	}
 	
+	/**
+	 * Gets the name of the filter this registration is a generated variant of, variants are defined
+	 * alongside the filter and are enabled in its place, they are never enabled on their own.
+	 *
+	 * @return the variantOf
+	 */
+	public String getVariantOf() {
+		return variantOf;
+	}
+	
+	/**
+	 * Sets the variantOf
+	 *
+	 * @param variantOf the variantOf to set
+	 */
+	public void setVariantOf(String variantOf) {
+		this.variantOf = variantOf;
+	}
+	
+	/**
+	 * Gets the idSetVariants, these are generated variants of this filter keyed by the name of the
+	 * integer list parameter they replace with a lookup of the values in a persisted id set.
+	 *
+	 * @return the idSetVariants
+	 */
+	public Map<String, HibernateFilterRegistration> getIdSetVariants() {
+		return idSetVariants;
+	}
+	
+	/**
+	 * Sets the idSetVariants
+	 *
+	 * @param idSetVariants the idSetVariants to set
+	 */
+	public void setIdSetVariants(Map<String, HibernateFilterRegistration> idSetVariants) {
+		this.idSetVariants = idSetVariants;
+	}
+	
+	/**
+	 * Gets the emptyListVariants, these are generated variants of this filter keyed by the name of the
+	 * integer list parameter they fold into a constant for when the list is empty.
+	 *
+	 * @return the emptyListVariants
+	 */
+	public Map<String, HibernateFilterRegistration> getEmptyListVariants() {
+		return emptyListVariants;
+	}
+	
+	/**
+	 * Sets the emptyListVariants
+	 *
+	 * @param emptyListVariants the emptyListVariants to set
+	 */
+	public void setEmptyListVariants(Map<String, HibernateFilterRegistration> emptyListVariants) {
+		this.emptyListVariants = emptyListVariants;
+	}
+	
+	/**
+	 * Gets the names of the filters this registration is a generated fusion of, a fused filter is
+	 * enabled in place of the filters it is made of when they are exactly the ones enabled for its
+	 * target class.
+	 *
+	 * @return the fusedFilters
+	 */
+	public List<String> getFusedFilters() {
+		return fusedFilters;
+	}
+	
+	/**
+	 * Sets the fusedFilters
+	 *
+	 * @param fusedFilters the fusedFilters to set
+	 */
+	public void setFusedFilters(List<String> fusedFilters) {
+		this.fusedFilters = fusedFilters;
+	}
+	
 }
@@ -0,0 +1,51 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.task;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.module.datafilter.IdSetUtil;
+import org.openmrs.scheduler.tasks.AbstractTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scheduled task that deletes the id sets saved by {@link IdSetUtil} that haven't been used for the
+ * number of days set by the {@link #PROP_RETENTION_DAYS} task property, sets that are still in use
+ * are marked as used at least every hour so they are never deleted.
+ */
+public class DeleteUnusedIdSetsTask extends AbstractTask {
+	
+	private static final Logger log = LoggerFactory.getLogger(DeleteUnusedIdSetsTask.class);
+	
+	public static final String PROP_RETENTION_DAYS = "retentionDays";
+	
+	public static final int DEFAULT_RETENTION_DAYS = 7;
+	
+	/**
+	 * @see AbstractTask#execute()
+	 */
+	@Override
+	public void execute() {
+		int retentionDays = DEFAULT_RETENTION_DAYS;
+		String value = getTaskDefinition() != null ? getTaskDefinition().getProperty(PROP_RETENTION_DAYS) : null;
+		if (StringUtils.isNotBlank(value)) {
+			retentionDays = Math.max(1, Integer.parseInt(value.trim()));
+		}
+		
+		int deletedCount = IdSetUtil
+		        .deleteUnusedIdSets(new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays)));
+		
+		log.info("Deleted " + deletedCount + " id sets that were not used in the last " + retentionDays + " days");
+	}
+	
+}
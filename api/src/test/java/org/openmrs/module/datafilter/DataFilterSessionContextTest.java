@@ -9,7 +9,9 @@
  */
 package org.openmrs.module.datafilter;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -17,6 +19,15 @@ import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.support.membermodification.MemberMatcher.method;
 import static org.powermock.api.support.membermodification.MemberModifier.suppress;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.hibernate.Filter;
+import org.hibernate.Session;
 import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.junit.Before;
 import org.junit.Test;
@@ -24,7 +35,10 @@ import org.junit.runner.RunWith;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.openmrs.EncounterType;
+import org.openmrs.Location;
 import org.openmrs.api.context.Daemon;
+import org.openmrs.module.datafilter.registration.HibernateFilterRegistration;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 import org.powermock.reflect.Whitebox;
@@ -41,6 +55,12 @@ public class DataFilterSessionContextTest {
 	@Mock
 	private Logger mockLogger;
 	
+	@Mock
+	private Session session;
+	
+	@Mock
+	private Filter filter;
+	
 	@Before
 	public void setup() {
 		MockitoAnnotations.initMocks(this);
@@ -79,4 +99,66 @@ public class DataFilterSessionContextTest {
 		    ((ThreadLocal<Boolean>) Whitebox.getInternalState(DataFilterSessionContext.class, "areFiltersSet")).get());
 	}
 	
+	@Test
+	public void enableFusedFilters_shouldIgnoreFiltersThatCannotBeFusedWhenMatchingTheFusedFilters() throws Exception {
+		HibernateFilterRegistration filterReg1 = new HibernateFilterRegistration();
+		filterReg1.setName("filter1");
+		filterReg1.setTargetClasses(Collections.singletonList(Location.class));
+		filterReg1.setCondition("location_id = 1");
+		HibernateFilterRegistration filterReg2 = new HibernateFilterRegistration();
+		filterReg2.setName("filter2");
+		filterReg2.setTargetClasses(Collections.singletonList(Location.class));
+		filterReg2.setCondition("retired = 0");
+		HibernateFilterRegistration filterReg3 = new HibernateFilterRegistration();
+		filterReg3.setName("filter3");
+		filterReg3.setTargetClasses(Arrays.asList(Location.class, EncounterType.class));
+		filterReg3.setCondition("creator = 1");
+		List<HibernateFilterRegistration> registrations = Arrays.asList(filterReg1, filterReg2, filterReg3);
+		List<HibernateFilterRegistration> fused = Util.createFusedFilters(registrations);
+		assertEquals(1, fused.size());
+		Whitebox.setInternalState(Util.class, "hibernateFilterRegistrations", registrations);
+		Whitebox.setInternalState(Util.class, "fusedFilterRegistrations", fused);
+		
+		try {
+			Set<String> fusedFilters = Whitebox.invokeMethod(new DataFilterSessionContext(sfImpl), "enableFusedFilters",
+			    registrations, new HashMap(), session, 10);
+			
+			assertEquals(new HashSet(Arrays.asList("filter1", "filter2")), fusedFilters);
+			verify(session).enableFilter(fused.get(0).getName());
+		}
+		finally {
+			Whitebox.setInternalState(Util.class, "hibernateFilterRegistrations", (Object) null);
+			Whitebox.setInternalState(Util.class, "fusedFilterRegistrations", (Object) null);
+		}
+	}
+	
+	@Test
+	public void enableFilter_shouldNotReEnableAPropertyFilterThatIsAlreadyEnabledForItsClass() throws Exception {
+		HibernateFilterRegistration registration = new HibernateFilterRegistration();
+		registration.setName("filter1");
+		registration.setTargetClasses(Collections.singletonList(Location.class));
+		registration.setProperty("childLocations");
+		when(session.getEnabledFilter("filter1")).thenReturn(filter);
+		
+		Whitebox.invokeMethod(new DataFilterSessionContext(sfImpl), "enableFilter", registration, new HashMap(), session,
+		    10);
+		
+		verify(session, never()).disableFilter(Matchers.anyString());
+		verify(session, never()).enableFilter(Matchers.anyString());
+	}
+	
+	@Test
+	public void enableFilter_shouldEnableAPropertyFilterThatIsNotYetEnabled() throws Exception {
+		HibernateFilterRegistration registration = new HibernateFilterRegistration();
+		registration.setName("filter1");
+		registration.setTargetClasses(Collections.singletonList(Location.class));
+		registration.setProperty("childLocations");
+		when(session.enableFilter("filter1")).thenReturn(filter);
+		
+		Whitebox.invokeMethod(new DataFilterSessionContext(sfImpl), "enableFilter", registration, new HashMap(), session,
+		    10);
+		
+		verify(session).enableFilter("filter1");
+	}
+	
 }
@@ -27,6 +27,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.openmrs.Concept;
 import org.openmrs.PersonName;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.FullTextQueryAndEntityClass;
@@ -72,4 +73,20 @@ public class FullTextQueryCreatedEventListenerTest {
 		verify(fullTextQuery, times(1)).enableFullTextFilter(eq(filter2));
 	}
 	
+	@Test
+	public void onApplicationEvent_shouldNotEvaluateAnyFiltersForAnEntityClassThatIsNotFiltered() {
+		mockStatic(Util.class);
+		mockStatic(Context.class);
+		FullTextFilterRegistration filterReg = new FullTextFilterRegistration();
+		filterReg.setName("filter1");
+		filterReg.setTargetClasses(Collections.singletonList(PersonName.class));
+		when(Util.getFullTextFilterRegistrations()).thenReturn(Collections.singletonList(filterReg));
+		when(Util.skipFilter(anyString())).thenThrow(new IllegalStateException("Filters should not be evaluated"));
+		
+		new FullTextQueryCreatedEventListener().onApplicationEvent(
+		    new FullTextQueryCreatedEvent(new FullTextQueryAndEntityClass(fullTextQuery, Concept.class)));
+		
+		verify(fullTextQuery, never()).enableFullTextFilter(anyString());
+	}
+	
 }
@@ -0,0 +1,119 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Savepoint;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.ReturningWork;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.powermock.reflect.Whitebox;
+
+public class IdSetUtilTest {
+	
+	@Test
+	public void getKey_shouldReturnTheSameKeyForTheSameIdsInAnyOrder() {
+		String key = IdSetUtil.getKey(Arrays.asList(3, 1, 2, 2));
+		
+		assertEquals(64, key.length());
+		assertEquals(key, IdSetUtil.getKey(Arrays.asList(1, 2, 3)));
+		assertEquals(key, IdSetUtil.getKey(Arrays.asList("2", "3", "1")));
+		assertNotEquals(key, IdSetUtil.getKey(Arrays.asList(1, 2, 4)));
+	}
+	
+	private Session mockSession(Connection connection) throws Exception {
+		Session session = mock(Session.class);
+		when(session.doReturningWork(any(ReturningWork.class)))
+		        .thenAnswer(invocation -> ((ReturningWork) invocation.getArguments()[0]).execute(connection));
+		when(session.getTransaction()).thenReturn(mock(Transaction.class));
+		return session;
+	}
+	
+	@Test
+	public void saveIdSet_shouldReturnNullIfTheSetIsNotSavedAndTheConnectionIsReadOnly() throws Exception {
+		Connection connection = mock(Connection.class);
+		PreparedStatement statement = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		when(connection.isReadOnly()).thenReturn(true);
+		when(connection.prepareStatement(anyString())).thenReturn(statement);
+		when(statement.executeQuery()).thenReturn(rs);
+		when(rs.next()).thenReturn(true);
+		when(rs.getInt(1)).thenReturn(0);
+		
+		assertNull(IdSetUtil.saveIdSet(Arrays.asList(-1, -2, -3), mockSession(connection)));
+		verify(connection, never()).prepareStatement(startsWith("INSERT"));
+	}
+	
+	@Test
+	public void saveIdSet_shouldSaveTheSetOnTheConnectionOfTheSessionInASavepoint() throws Exception {
+		List<Integer> ids = IntStream.range(-1000, 0).boxed().collect(Collectors.toList());
+		Connection connection = mock(Connection.class);
+		PreparedStatement statement = mock(PreparedStatement.class);
+		Savepoint savepoint = mock(Savepoint.class);
+		when(connection.prepareStatement(anyString())).thenReturn(statement);
+		when(connection.setSavepoint()).thenReturn(savepoint);
+		when(statement.executeUpdate()).thenReturn(0);
+		Session session = mockSession(connection);
+		
+		assertEquals(IdSetUtil.getKey(ids), IdSetUtil.saveIdSet(ids, session));
+		
+		verify(connection).prepareStatement(startsWith("UPDATE " + IdSetUtil.KEY_TABLE_NAME));
+		verify(connection, times(2)).prepareStatement(startsWith("INSERT INTO " + IdSetUtil.TABLE_NAME + " ("));
+		verify(connection).prepareStatement(startsWith("INSERT INTO " + IdSetUtil.KEY_TABLE_NAME));
+		verify(connection).releaseSavepoint(savepoint);
+		verify(session.getTransaction()).registerSynchronization(any(Synchronization.class));
+	}
+	
+	@Test
+	public void saveIdSet_shouldResetTheFiltersIfTheTransactionIsRolledBack() throws Exception {
+		List<Integer> ids = IntStream.range(-2000, -1000).boxed().collect(Collectors.toList());
+		Connection connection = mock(Connection.class);
+		when(connection.prepareStatement(anyString())).thenReturn(mock(PreparedStatement.class));
+		when(connection.setSavepoint()).thenReturn(mock(Savepoint.class));
+		Session session = mockSession(connection);
+		ThreadLocal<Boolean> areFiltersSet = Whitebox.getInternalState(DataFilterSessionContext.class, "areFiltersSet");
+		areFiltersSet.set(true);
+		IdSetUtil.saveIdSet(ids, session);
+		ArgumentCaptor<Synchronization> captor = ArgumentCaptor.forClass(Synchronization.class);
+		verify(session.getTransaction()).registerSynchronization(captor.capture());
+		
+		captor.getValue().afterCompletion(Status.STATUS_COMMITTED);
+		assertNotNull(areFiltersSet.get());
+		
+		captor.getValue().afterCompletion(Status.STATUS_ROLLEDBACK);
+		assertNull(areFiltersSet.get());
+	}
+	
+}
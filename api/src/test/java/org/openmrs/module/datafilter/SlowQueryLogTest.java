@@ -0,0 +1,89 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SlowQueryLogTest {
+	
+	private static final String CONDITION = "patient_id IN (SELECT datafilter_pl.patient_id FROM "
+	        + "datafilter_patient_location datafilter_pl WHERE datafilter_pl.location_id IN (:basisIds))";
+	
+	private static final String SQL = "select encounter0_.encounter_id as encounter1_ from encounter encounter0_ where "
+	        + "encounter0_.patient_id IN (SELECT datafilter_pl.patient_id FROM datafilter_patient_location "
+	        + "datafilter_pl WHERE datafilter_pl.location_id IN (?, ?)) and encounter0_.voided=0";
+	
+	@Test
+	public void toFingerprint_shouldExcludeParametersAndAliasInjectionPoints() {
+		assertEquals(asList("person_id", "in", "select", "p.id", "from", "person", "p", "where", "p.voided", "in"),
+		    SlowQueryLog.toFingerprint("{alias}.person_id IN (SELECT p.id FROM person p WHERE p.voided IN (:voided))"));
+	}
+	
+	@Test
+	public void matches_shouldMatchAConditionRenderedWithQualifiedColumns() {
+		assertTrue(SlowQueryLog.matches(SQL.toLowerCase(), SlowQueryLog.toFingerprint(CONDITION)));
+	}
+	
+	@Test
+	public void matches_shouldNotMatchAConditionThatWasNotRendered() {
+		String sql = "select encounter0_.encounter_id from encounter encounter0_ where encounter0_.voided=0";
+		
+		assertFalse(SlowQueryLog.matches(sql, SlowQueryLog.toFingerprint(CONDITION)));
+	}
+	
+	@Test
+	public void maskLiterals_shouldMaskStringLiterals() {
+		assertEquals("select * from person_name where given_name = '?' and family_name = '?'",
+		    SlowQueryLog.maskLiterals("select * from person_name where given_name = 'John' and family_name = 'O''Brien'"));
+	}
+	
+	@Test
+	public void createEntry_shouldIncludeTheEnabledFiltersRenderedIntoTheStatementAndTheirParameterSizes() {
+		Map<List<String>, List<String>> fingerprintFiltersMap = new LinkedHashMap();
+		fingerprintFiltersMap.put(SlowQueryLog.toFingerprint(CONDITION),
+		    asList("datafilter_locationBasedVisitFilter", "datafilter_locationBasedEncounterFilter"));
+		fingerprintFiltersMap.put(SlowQueryLog.toFingerprint("encounter_type IN (:encounterTypeIds)"),
+		    asList("datafilter_encTypePrivBasedEncounterFilter"));
+		Map<String, Map<String, Integer>> enabledFilters = new LinkedHashMap();
+		enabledFilters.put("datafilter_locationBasedEncounterFilter", singletonMap("basisIds", 2));
+		enabledFilters.put("datafilter_encTypePrivBasedEncounterFilter", singletonMap("encounterTypeIds", 3));
+		
+		String entry = SlowQueryLog.createEntry(SQL, TimeUnit.MILLISECONDS.toNanos(1500), fingerprintFiltersMap,
+		    enabledFilters);
+		
+		assertEquals("1500ms filters=[datafilter_locationBasedEncounterFilter{basisIds=2}] sql=" + SQL, entry);
+	}
+	
+	@Test
+	public void createEntry_shouldIncludeAllFiltersWithARenderedConditionIfNoneIsEnabledOnTheThread() {
+		Map<List<String>, List<String>> fingerprintFiltersMap = Collections.singletonMap(
+		    SlowQueryLog.toFingerprint(CONDITION),
+		    asList("datafilter_locationBasedVisitFilter", "datafilter_locationBasedEncounterFilter"));
+		
+		String entry = SlowQueryLog.createEntry(SQL, TimeUnit.MILLISECONDS.toNanos(20), fingerprintFiltersMap,
+		    Collections.emptyMap());
+		
+		assertEquals("20ms filters=[datafilter_locationBasedVisitFilter, datafilter_locationBasedEncounterFilter] sql="
+		        + SQL, entry);
+	}
+	
+}
@@ -25,8 +25,12 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -133,6 +137,17 @@ public class UtilTest {
 		assertNull(Util.getMappingResource(TEST_HIBERNATE_CFG_FILE, Concept.class.getName()));
 	}
 	
+	@Test
+	public void getMappedClassName_shouldReturnTheFullyQualifiedNameOfTheMappedClass() {
+		assertEquals(Location.class.getName(), Util.getMappedClassName(TEST_LOCATION_HBM_FILE));
+		assertEquals(EncounterType.class.getName(), Util.getMappedClassName(TEST_ENC_TYPE_HBM_FILE));
+	}
+	
+	@Test
+	public void getMappedClassName_shouldReturnNullForAMissingResource() {
+		assertNull(Util.getMappedClassName("someMissingResource.hbm.xml"));
+	}
+	
 	@Test
 	public void addFilterToMappingResource_shouldAddTheFilterToTheMappingResourceName() throws Exception {
 		final String filterName = "myFilterName";
@@ -258,4 +273,199 @@ public class UtilTest {
 		assertTrue(Util.skipFilter("someFilter"));
 	}
 	
+	@Test
+	public void getCondition_shouldReturnTheDialectConditionWithTheLongestKeyMatchingTheDialect() {
+		HibernateFilterRegistration filterReg = new HibernateFilterRegistration();
+		filterReg.setCondition("default");
+		Map<String, String> dialectConditions = new HashMap();
+		dialectConditions.put("mysql", "mysql condition");
+		dialectConditions.put("MySQL8", "mysql8 condition");
+		dialectConditions.put("postgresql", "postgresql condition");
+		filterReg.setDialectConditions(dialectConditions);
+		
+		assertEquals("mysql8 condition", Util.getCondition(filterReg, Arrays.asList("mysql8", "mysql57", "mysql")));
+		assertEquals("mysql condition", Util.getCondition(filterReg, Arrays.asList("mariadb103", "mysql57", "mysql")));
+		assertEquals("postgresql condition", Util.getCondition(filterReg, Arrays.asList("postgresql95", "postgresql")));
+		assertEquals("default", Util.getCondition(filterReg, Arrays.asList("h2")));
+		assertEquals("default", Util.getCondition(filterReg, Collections.emptyList()));
+	}
+	
+	@Test
+	public void getCondition_shouldReturnTheConditionIfThereAreNoDialectConditions() {
+		HibernateFilterRegistration filterReg = new HibernateFilterRegistration();
+		filterReg.setCondition("default");
+		
+		assertEquals("default", Util.getCondition(filterReg, Arrays.asList("mysql57", "mysql")));
+	}
+	
+	@Test
+	public void getDialectNames_shouldReturnTheNamesOfTheConfiguredDialectAndItsSuperDialects() {
+		mockStatic(Context.class);
+		Properties props = new Properties();
+		props.setProperty("hibernate.dialect", "org.hibernate.dialect.MySQL57Dialect");
+		when(Context.getRuntimeProperties()).thenReturn(props);
+		
+		List<String> dialectNames = Util.getDialectNames();
+		
+		assertEquals("mysql57", dialectNames.get(0));
+		assertTrue(dialectNames.contains("mysql"));
+		assertFalse(dialectNames.contains(""));
+	}
+	
+	@Test
+	public void getDialectNames_shouldReturnTheDatabaseNameInTheConnectionUrlIfNoDialectIsConfigured() {
+		mockStatic(Context.class);
+		Properties props = new Properties();
+		props.setProperty("connection.url", "jdbc:postgresql://localhost:5432/openmrs");
+		when(Context.getRuntimeProperties()).thenReturn(props);
+		
+		assertEquals(Collections.singletonList("postgresql"), Util.getDialectNames());
+	}
+	
+	@Test
+	public void addIdSetVariants_shouldAddAVariantForAnIntegerListParameter() {
+		HibernateFilterRegistration filterReg = new HibernateFilterRegistration();
+		filterReg.setName("myFilter");
+		filterReg.setCondition("person_id = (:personId) OR location_id in ( :locationIds )");
+		HibernateFilterParameter param1 = new HibernateFilterParameter();
+		param1.setName("personId");
+		param1.setType("integer");
+		HibernateFilterParameter param2 = new HibernateFilterParameter();
+		param2.setName("locationIds");
+		param2.setType("integer");
+		filterReg.setParameters(Arrays.asList(param1, param2));
+		
+		Util.addIdSetVariants(Collections.singletonList(filterReg));
+		
+		assertEquals(1, filterReg.getIdSetVariants().size());
+		HibernateFilterRegistration variant = filterReg.getIdSetVariants().get("locationIds");
+		assertEquals("myFilter_locationIdsIdSet", variant.getName());
+		assertEquals("myFilter", variant.getVariantOf());
+		assertEquals("person_id = (:personId) OR location_id IN (SELECT datafilter_ids.id_value FROM datafilter_id_set "
+		        + "datafilter_ids WHERE datafilter_ids.id_set_key = :locationIdsIdSetKey)",
+		    variant.getCondition());
+		assertEquals("personId", variant.getParameters().get(0).getName());
+		assertEquals("locationIdsIdSetKey", variant.getParameters().get(1).getName());
+		assertEquals("string", variant.getParameters().get(1).getType());
+	}
+	
+	@Test
+	public void addIdSetVariants_shouldNotAddAVariantIfTheParameterIsUsedOutsideAList() {
+		HibernateFilterRegistration filterReg = new HibernateFilterRegistration();
+		filterReg.setName("myFilter");
+		filterReg.setCondition("location_id IN (:locationIds) OR parent_location = :locationIds");
+		HibernateFilterParameter param = new HibernateFilterParameter();
+		param.setName("locationIds");
+		param.setType("integer");
+		filterReg.setParameters(Collections.singletonList(param));
+		
+		Util.addIdSetVariants(Collections.singletonList(filterReg));
+		
+		assertNull(filterReg.getIdSetVariants());
+	}
+	
+	@Test
+	public void addEmptyListVariants_shouldAddAVariantThatFoldsTheListPredicateIntoAConstant() {
+		HibernateFilterRegistration filterReg = new HibernateFilterRegistration();
+		filterReg.setName("myFilter");
+		filterReg.setCondition("person_id = (:personId) OR datafilter_l.location_id in ( :locationIds )");
+		HibernateFilterParameter param1 = new HibernateFilterParameter();
+		param1.setName("personId");
+		param1.setType("integer");
+		HibernateFilterParameter param2 = new HibernateFilterParameter();
+		param2.setName("locationIds");
+		param2.setType("integer");
+		filterReg.setParameters(Arrays.asList(param1, param2));
+		
+		Util.addEmptyListVariants(Collections.singletonList(filterReg));
+		
+		assertEquals(1, filterReg.getEmptyListVariants().size());
+		HibernateFilterRegistration variant = filterReg.getEmptyListVariants().get("locationIds");
+		assertEquals("myFilter_locationIdsEmpty", variant.getName());
+		assertEquals("myFilter", variant.getVariantOf());
+		assertEquals("person_id = (:personId) OR 1=0", variant.getCondition());
+		assertEquals(1, variant.getParameters().size());
+		assertEquals("personId", variant.getParameters().get(0).getName());
+	}
+	
+	@Test
+	public void addEmptyListVariants_shouldFoldANotInListPredicateIntoATrueConstant() {
+		HibernateFilterRegistration filterReg = new HibernateFilterRegistration();
+		filterReg.setName("myFilter");
+		filterReg.setCondition("location_id NOT IN (:locationIds)");
+		HibernateFilterParameter param = new HibernateFilterParameter();
+		param.setName("locationIds");
+		param.setType("integer");
+		filterReg.setParameters(Collections.singletonList(param));
+		
+		Util.addEmptyListVariants(Collections.singletonList(filterReg));
+		
+		HibernateFilterRegistration variant = filterReg.getEmptyListVariants().get("locationIds");
+		assertEquals("1=1", variant.getCondition());
+		assertTrue(variant.getParameters().isEmpty());
+	}
+	
+	@Test
+	public void createFusedFilters_shouldFuseTheFiltersForAClassIntoOneFilter() {
+		HibernateFilterRegistration filterReg1 = new HibernateFilterRegistration();
+		filterReg1.setName("filter1");
+		filterReg1.setTargetClasses(Collections.singletonList(Location.class));
+		filterReg1.setCondition("location_id IN (:locationIds)");
+		HibernateFilterParameter param1 = new HibernateFilterParameter();
+		param1.setName("locationIds");
+		param1.setType("integer");
+		filterReg1.setParameters(Collections.singletonList(param1));
+		HibernateFilterRegistration filterReg2 = new HibernateFilterRegistration();
+		filterReg2.setName("filter2");
+		filterReg2.setTargetClasses(Collections.singletonList(Location.class));
+		filterReg2.setCondition("retired = :retired");
+		HibernateFilterParameter param2 = new HibernateFilterParameter();
+		param2.setName("retired");
+		param2.setType("boolean");
+		filterReg2.setParameters(Collections.singletonList(param2));
+		HibernateFilterRegistration filterReg3 = new HibernateFilterRegistration();
+		filterReg3.setName("filter3");
+		filterReg3.setTargetClasses(Collections.singletonList(EncounterType.class));
+		filterReg3.setCondition("retired = 0");
+		
+		List<HibernateFilterRegistration> fused = Util.createFusedFilters(Arrays.asList(filterReg1, filterReg2, filterReg3));
+		
+		assertEquals(1, fused.size());
+		HibernateFilterRegistration fusedReg = fused.get(0);
+		assertEquals(Util.FUSED_FILTER_NAME_PREFIX + "Location_3", fusedReg.getName());
+		assertEquals(Collections.singletonList(Location.class), fusedReg.getTargetClasses());
+		assertEquals("(location_id IN (:locationIds)) AND (retired = :retired)", fusedReg.getCondition());
+		assertEquals(Arrays.asList("filter1", "filter2"), fusedReg.getFusedFilters());
+		assertEquals(Arrays.asList("locationIds", "retired"),
+		    fusedReg.getParameters().stream().map(p -> p.getName()).collect(Collectors.toList()));
+	}
+	
+	@Test
+	public void createFusedFilters_shouldNotFuseFiltersThatDeclareTheSameParameter() {
+		HibernateFilterParameter param = new HibernateFilterParameter();
+		param.setName("locationIds");
+		param.setType("integer");
+		HibernateFilterRegistration filterReg1 = new HibernateFilterRegistration();
+		filterReg1.setName("filter1");
+		filterReg1.setTargetClasses(Collections.singletonList(Location.class));
+		filterReg1.setCondition("location_id IN (:locationIds)");
+		filterReg1.setParameters(Collections.singletonList(param));
+		HibernateFilterRegistration filterReg2 = new HibernateFilterRegistration();
+		filterReg2.setName("filter2");
+		filterReg2.setTargetClasses(Collections.singletonList(Location.class));
+		filterReg2.setCondition("parent_location IN (:locationIds)");
+		filterReg2.setParameters(Collections.singletonList(param));
+		
+		assertTrue(Util.createFusedFilters(Arrays.asList(filterReg1, filterReg2)).isEmpty());
+	}
+	
+	@Test
+	public void padToBucketSize_shouldPadTheValuesToTheNextPowerOfTwoSize() {
+		assertEquals(Collections.emptyList(), Util.padToBucketSize(Collections.emptyList()));
+		assertEquals(Arrays.asList(1), Util.padToBucketSize(Arrays.asList(1)));
+		assertEquals(Arrays.asList(1, 2), Util.padToBucketSize(Arrays.asList(1, 2)));
+		assertEquals(Arrays.asList(1, 2, 3, 3), Util.padToBucketSize(Arrays.asList(1, 2, 3)));
+		assertEquals(8, Util.padToBucketSize(Arrays.asList(1, 2, 3, 4, 5)).size());
+	}
+	
 }
@@ -0,0 +1,105 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.query.NativeQuery;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.openmrs.api.context.Context;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Context.class)
+@PowerMockIgnore("javax.management.*")
+public class AccessUtilPatientLocationIdsTest {
+	
+	@Mock
+	private SessionFactory sessionFactory;
+	
+	@Mock
+	private StatelessSession session;
+	
+	@Mock
+	private NativeQuery query;
+	
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		mockStatic(Context.class);
+		when(Context.getRegisteredComponents(eq(SessionFactory.class)))
+		        .thenReturn(Collections.singletonList(sessionFactory));
+		when(sessionFactory.openStatelessSession()).thenReturn(session);
+		when(session.createSQLQuery(anyString())).thenReturn(query);
+		when(query.list()).thenReturn(
+		    Arrays.asList(new Object[] { 1001, 4000 }, new Object[] { 1001, 4001 }, new Object[] { 1002, 4002 }));
+		//Discards any links loaded on the current thread by other tests
+		AccessUtil.clearCaches();
+	}
+	
+	@Test
+	public void getPatientLocationIds_shouldLoadTheLinksOfARangeOfPatientsWithASingleQueryOutsideATransaction() {
+		assertEquals(new HashSet(Arrays.asList("4000", "4001")), AccessUtil.getPatientLocationIds(1001));
+		assertEquals(Collections.singleton("4002"), AccessUtil.getPatientLocationIds(1002));
+		assertTrue(AccessUtil.getPatientLocationIds(1003).isEmpty());
+		
+		verify(sessionFactory, times(1)).openStatelessSession();
+		verify(session).createSQLQuery(contains("BETWEEN 1000 AND 1999"));
+		verify(session).close();
+	}
+	
+	@Test
+	public void getPatientLocationIds_shouldLoadTheLinksOfTheNextRangeOfPatients() {
+		AccessUtil.getPatientLocationIds(1001);
+		AccessUtil.getPatientLocationIds(2001);
+		
+		verify(sessionFactory, times(2)).openStatelessSession();
+		verify(session).createSQLQuery(contains("BETWEEN 2000 AND 2999"));
+	}
+	
+	@Test
+	public void getPatientLocationIds_shouldReloadTheLinksAfterTheCacheIsCleared() {
+		AccessUtil.getPatientLocationIds(1001);
+		AccessUtil.clearCaches();
+		AccessUtil.getPatientLocationIds(1001);
+		
+		verify(sessionFactory, times(2)).openStatelessSession();
+	}
+	
+	@Test
+	public void getPatientLocationIds_shouldReloadTheLinksAfterThePatientLocationCacheIsCleared() {
+		AccessUtil.getPatientLocationIds(1001);
+		AccessUtil.clearPatientLocationCache();
+		AccessUtil.getPatientLocationIds(1001);
+		
+		verify(sessionFactory, times(2)).openStatelessSession();
+	}
+	
+}
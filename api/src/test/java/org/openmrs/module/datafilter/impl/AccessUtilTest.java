@@ -10,14 +10,19 @@
 package org.openmrs.module.datafilter.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.openmrs.Location;
 import org.openmrs.Program;
+import org.openmrs.Role;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.datafilter.TestConstants;
 import org.openmrs.module.datafilter.impl.api.DataFilterService;
@@ -84,6 +89,13 @@ public class AccessUtilTest extends BaseFilterTest {
 		assertTrue(patientIds.contains("1003"));
 	}
 	
+	@Test
+	public void getPatientLocationIds_shouldReturnTheIdsOfTheLocationsThePatientIsLinkedTo() {
+		Collection<String> locationIds = AccessUtil.getPatientLocationIds(1001);
+		assertEquals(1, locationIds.size());
+		assertTrue(locationIds.contains("4000"));
+	}
+	
 	@Test
 	public void getViewPrivilege_shouldReturnTheTheEncounterViewPrivilege() {
 		executeDataSet(TestConstants.ROOT_PACKAGE_DIR + "privilegedEncounters.xml");
@@ -103,4 +115,61 @@ public class AccessUtilTest extends BaseFilterTest {
 		assertTrue(privileges.contains("Program 4 Coordinator"));
 	}
 	
+	@Test
+	public void getAllowedEncounterTypeIds_shouldExcludeEncounterTypesWithAViewPrivilegeNotGrantedToTheRoles() {
+		executeDataSet(TestConstants.ROOT_PACKAGE_DIR + "privilegedEncounters.xml");
+		Set<Integer> encounterTypeIds = AccessUtil.getAllowedEncounterTypeIds(Collections.singleton("Physician"));
+		assertEquals(3, encounterTypeIds.size());
+		assertFalse(encounterTypeIds.contains(5000));
+		assertFalse(AccessUtil.getAllowedEncounterTypeIds(Collections.emptySet()).contains(5000));
+	}
+	
+	@Test
+	public void getAllowedEncounterTypeIds_shouldIncludeEncounterTypesWithAViewPrivilegeGrantedToTheRoles() {
+		executeDataSet(TestConstants.ROOT_PACKAGE_DIR + "privilegedEncounters.xml");
+		reloginAs("dyorke", "test");
+		final String role = "Physician";
+		assertFalse(AccessUtil.getAllowedEncounterTypeIds(Collections.singleton(role)).contains(5000));
+		
+		//The cached ids should be discarded when the role's privileges change
+		DataFilterTestUtils.addPrivilege("Manage Chemo Patients");
+		Set<Integer> encounterTypeIds = AccessUtil.getAllowedEncounterTypeIds(Collections.singleton(role));
+		assertEquals(4, encounterTypeIds.size());
+		assertTrue(encounterTypeIds.contains(5000));
+	}
+	
+	@Test
+	public void getVisibleUserIds_shouldReturnUsersWithAccessToTheSameProgramsAsTheRoles() {
+		executeDataSet(TestConstants.ROOT_PACKAGE_DIR + "persons.xml");
+		executeDataSet(TestConstants.ROOT_PACKAGE_DIR + "users.xml");
+		final String role = "Program 1 Coordinator";
+		Set<Integer> userIds = AccessUtil.getVisibleUserIds(Arrays.asList(role, "Physician"));
+		assertTrue(userIds.contains(10001));
+		assertTrue(userIds.contains(10002));
+		assertFalse(userIds.contains(10003));
+		assertTrue(userIds.contains(10004));
+		assertTrue(userIds.contains(10005));
+		assertTrue(userIds.contains(10006));
+		assertTrue(userIds.contains(10007));
+		
+		//The cached ids should be discarded when the program mappings change
+		service.grantAccess(new Role(role), new Program(10002));
+		assertTrue(AccessUtil.getVisibleUserIds(Collections.singleton(role)).contains(10003));
+	}
+	
+	@Test
+	public void getVisibleUserIds_shouldOnlyReturnUsersWithNoProgramRolesIfTheRolesHaveNoProgramRoles() {
+		executeDataSet(TestConstants.ROOT_PACKAGE_DIR + "persons.xml");
+		executeDataSet(TestConstants.ROOT_PACKAGE_DIR + "users.xml");
+		Set<Integer> userIds = AccessUtil.getVisibleUserIds(Collections.singleton("Some Other Role 1"));
+		assertFalse(userIds.contains(10001));
+		assertFalse(userIds.contains(10002));
+		assertFalse(userIds.contains(10003));
+		assertFalse(userIds.contains(10004));
+		assertTrue(userIds.contains(10005));
+		assertTrue(userIds.contains(10006));
+		assertFalse(userIds.contains(10007));
+		assertEquals(userIds, AccessUtil.getVisibleUserIds(Collections.emptySet()));
+	}
+	
 }
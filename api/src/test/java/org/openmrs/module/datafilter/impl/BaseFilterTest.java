@@ -36,6 +36,12 @@ public abstract class BaseFilterTest extends BaseModuleContextSensitiveTest {
 		executeDataSet(TestConstants.MODULE_TEST_DATASET_XML);
 	}
 	
+	@Before
+	public void clearAccessCaches() {
+		//Test datasets are inserted without going through hibernate so the cache is never cleared by the interceptor
+		AccessUtil.clearCaches();
+	}
+	
 	protected void reloginAs(String username, String password) {
 		Context.logout();
 		Context.authenticate(new UsernamePasswordCredentials(username, password));
@@ -0,0 +1,50 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.openmrs.api.APIException;
+
+public class CsvUtilTest {
+	
+	@Test
+	public void parseLine_shouldParseTheValuesInTheLine() {
+		assertEquals(Arrays.asList("org.openmrs.User", "1", "org.openmrs.Location", "2"),
+		    CsvUtil.parseLine("org.openmrs.User, 1,org.openmrs.Location,2"));
+	}
+	
+	@Test
+	public void parseLine_shouldParseQuotedValues() {
+		assertEquals(Arrays.asList("org.openmrs.Role", "Clerk, \"Senior\"", "org.openmrs.Program", ""),
+		    CsvUtil.parseLine("org.openmrs.Role,\"Clerk, \"\"Senior\"\"\",org.openmrs.Program,"));
+	}
+	
+	@Test(expected = APIException.class)
+	public void parseLine_shouldFailForAnUnterminatedQuotedValue() {
+		CsvUtil.parseLine("org.openmrs.Role,\"Clerk");
+	}
+	
+	@Test
+	public void formatLine_shouldQuoteValuesThatNeedIt() {
+		assertEquals("org.openmrs.Role,\"Clerk, \"\"Senior\"\"\",org.openmrs.Program,1",
+		    CsvUtil.formatLine("org.openmrs.Role", "Clerk, \"Senior\"", "org.openmrs.Program", "1"));
+	}
+	
+	@Test
+	public void formatLine_shouldProduceALineThatParsesToTheSameValues() {
+		String[] values = { "a", "b,c", "\"d\"", "" };
+		assertEquals(Arrays.asList(values), CsvUtil.parseLine(CsvUtil.formatLine(values)));
+	}
+	
+}
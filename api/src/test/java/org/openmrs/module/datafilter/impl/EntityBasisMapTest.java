@@ -0,0 +1,44 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class EntityBasisMapTest {
+	
+	@Test
+	public void toNumber_shouldConvertAnIntegerIdentifier() {
+		assertEquals(Integer.valueOf(4000), EntityBasisMap.toNumber("4000"));
+		assertEquals(Integer.valueOf(Integer.MAX_VALUE), EntityBasisMap.toNumber(String.valueOf(Integer.MAX_VALUE)));
+	}
+	
+	@Test
+	public void toNumber_shouldReturnNullForAnIdentifierThatIsNotAnInteger() {
+		assertNull(EntityBasisMap.toNumber(null));
+		assertNull(EntityBasisMap.toNumber(""));
+		assertNull(EntityBasisMap.toNumber("Data Clerk"));
+		assertNull(EntityBasisMap.toNumber("-1"));
+		assertNull(EntityBasisMap.toNumber("2147483648"));
+	}
+	
+	@Test
+	public void setIdentifiers_shouldSetTheNumericIdentifiers() {
+		EntityBasisMap map = new EntityBasisMap();
+		map.setEntityIdentifier("Data Clerk");
+		map.setBasisIdentifier("4000");
+		
+		assertNull(map.getEntityIdentifierNumber());
+		assertEquals(Integer.valueOf(4000), map.getBasisIdentifierNumber());
+	}
+	
+}
@@ -10,15 +10,21 @@
 package org.openmrs.module.datafilter.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.openmrs.Location;
+import org.openmrs.OpenmrsObject;
 import org.openmrs.api.LocationService;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.datafilter.DataFilterContext;
 import org.openmrs.module.datafilter.TestConstants;
 import org.openmrs.module.datafilter.impl.api.DataFilterService;
 import org.openmrs.test.TestUtil;
@@ -86,6 +92,30 @@ public class LocationFilterTest extends BaseFilterTest {
 		assertTrue(TestUtil.containsId(locations, 40008));
 	}
 	
+	@Test
+	public void onEnableFilter_shouldSkipTheLocationFilterIfTheUserIsGrantedAccessToAllLocations() {
+		Collection<OpenmrsObject> locations = new ArrayList(locationService.getAllLocations(true));
+		reloginAs("dyorke", "test");
+		service.grantAccess(Context.getAuthenticatedUser(), locations);
+		
+		assertFalse(new ImplDataFilterListener().onEnableFilter(createContext(ImplConstants.LOCATION_FILTER_NAME)));
+	}
+	
+	@Test
+	public void onEnableFilter_shouldNotSkipTheLocationFilterIfTheUserIsGrantedAccessToMissingLocations() {
+		Collection<OpenmrsObject> locations = new ArrayList(locationService.getAllLocations(true));
+		locations.remove(locationService.getLocation(40002));
+		//The mapping to a location that doesn't exist makes up for the missing one in the number of ids
+		locations.add(new Location(999999));
+		reloginAs("dyorke", "test");
+		service.grantAccess(Context.getAuthenticatedUser(), locations);
+		
+		assertTrue(new ImplDataFilterListener().onEnableFilter(createContext(ImplConstants.LOCATION_FILTER_NAME)));
+		Collection<Location> kampalaLocations = locationService.getLocations("Kampala");
+		assertEquals(7, kampalaLocations.size());
+		assertFalse(TestUtil.containsId(kampalaLocations, 40002));
+	}
+	
 	@Test
 	public void getLocations_shouldReturnAllLocationsIfTheAuthenticatedUserIsASuperUser() {
 		assertTrue(Context.getAuthenticatedUser().isSuperUser());
@@ -104,4 +134,10 @@ public class LocationFilterTest extends BaseFilterTest {
 		assertEquals(8, locationService.getLocations("Kampala").size());
 	}
 	
+	private DataFilterContext createContext(String filterName) {
+		Map<String, Map<String, Object>> filterAndParamValueMap = new HashMap();
+		filterAndParamValueMap.put(filterName, new HashMap());
+		return new DataFilterContext(filterName, filterAndParamValueMap);
+	}
+	
 }
@@ -0,0 +1,100 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.BitSet;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+
+public class PatientIdDocValuesFullTextFilterTest {
+	
+	private static final String FIELD = ImplConstants.FIELD_PATIENT_ID;
+	
+	private Directory createIndex(int... patientIds) throws Exception {
+		Directory directory = new RAMDirectory();
+		try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new KeywordAnalyzer()))) {
+			for (int patientId : patientIds) {
+				Document document = new Document();
+				document.add(new NumericDocValuesField(FIELD, patientId));
+				writer.addDocument(document);
+			}
+			//A document without the field
+			writer.addDocument(new Document());
+		}
+		
+		return directory;
+	}
+	
+	private int countMatches(Directory directory, BitSet patientIdBits) throws Exception {
+		PatientIdDocValuesFullTextFilter factory = new PatientIdDocValuesFullTextFilter();
+		factory.setPatientIdBits(patientIdBits);
+		Filter filter = factory.getFilter();
+		int count = 0;
+		try (DirectoryReader reader = DirectoryReader.open(directory)) {
+			for (LeafReaderContext context : reader.leaves()) {
+				DocIdSet docIdSet = filter.getDocIdSet(context, null);
+				if (docIdSet == null) {
+					continue;
+				}
+				
+				DocIdSetIterator iterator = docIdSet.iterator();
+				while (iterator.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+					count++;
+				}
+			}
+		}
+		
+		return count;
+	}
+	
+	@Test
+	public void getFilter_shouldMatchOnlyDocumentsForTheAccessiblePatients() throws Exception {
+		Directory directory = createIndex(2, 3, 3, 7, 11);
+		BitSet patientIdBits = new BitSet();
+		patientIdBits.set(3);
+		patientIdBits.set(11);
+		
+		assertEquals(3, countMatches(directory, patientIdBits));
+	}
+	
+	@Test
+	public void getFilter_shouldMatchNoDocumentsIfNoPatientIsAccessible() throws Exception {
+		assertEquals(0, countMatches(createIndex(2, 3), new BitSet()));
+	}
+	
+	@Test
+	public void getFilter_shouldMatchNoDocumentsInASegmentWithoutTheField() throws Exception {
+		Directory directory = createIndex();
+		BitSet patientIdBits = new BitSet();
+		patientIdBits.set(1);
+		PatientIdDocValuesFullTextFilter factory = new PatientIdDocValuesFullTextFilter();
+		factory.setPatientIdBits(patientIdBits);
+		
+		try (DirectoryReader reader = DirectoryReader.open(directory)) {
+			assertNull(factory.getFilter().getDocIdSet(reader.leaves().get(0), null));
+		}
+	}
+	
+}
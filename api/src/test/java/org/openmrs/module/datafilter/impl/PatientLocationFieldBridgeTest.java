@@ -0,0 +1,86 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+import java.util.Collections;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.lucene.document.Document;
+import org.hibernate.search.bridge.LuceneOptions;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.openmrs.Patient;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.Person;
+import org.openmrs.PersonName;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(AccessUtil.class)
+public class PatientLocationFieldBridgeTest {
+	
+	private static final String FIELD_NAME = ImplConstants.FIELD_LOCATION_IDS;
+	
+	@Mock
+	private LuceneOptions luceneOptions;
+	
+	private PatientLocationFieldBridge bridge = new PatientLocationFieldBridge();
+	
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		mockStatic(AccessUtil.class);
+	}
+	
+	@Test
+	public void set_shouldAddTheLocationIdsOfThePatientToTheDocument() {
+		when(AccessUtil.getPatientLocationIds(2)).thenReturn(Stream.of("3", "4").collect(Collectors.toSet()));
+		PersonName name = new PersonName();
+		name.setPerson(new Person(2));
+		Document document = new Document();
+		
+		bridge.set(FIELD_NAME, name, document, luceneOptions);
+		
+		verify(luceneOptions).addFieldToDocument(FIELD_NAME, "3", document);
+		verify(luceneOptions).addFieldToDocument(FIELD_NAME, "4", document);
+	}
+	
+	@Test
+	public void set_shouldUseThePatientOfAPatientIdentifier() {
+		when(AccessUtil.getPatientLocationIds(5)).thenReturn(Collections.singleton("6"));
+		PatientIdentifier identifier = new PatientIdentifier();
+		identifier.setPatient(new Patient(5));
+		Document document = new Document();
+		
+		bridge.set(FIELD_NAME, identifier, document, luceneOptions);
+		
+		verify(luceneOptions).addFieldToDocument(FIELD_NAME, "6", document);
+	}
+	
+	@Test
+	public void set_shouldNotAddAnyFieldIfThereIsNoPerson() {
+		bridge.set(FIELD_NAME, new PersonName(), new Document(), luceneOptions);
+		
+		verify(luceneOptions, never()).addFieldToDocument(anyString(), anyString(), any(Document.class));
+	}
+	
+}
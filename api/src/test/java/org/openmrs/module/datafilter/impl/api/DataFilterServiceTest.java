@@ -14,7 +14,14 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -23,10 +30,15 @@ import org.junit.Before;
 import org.junit.Test;
 import org.openmrs.Location;
 import org.openmrs.OpenmrsObject;
+import org.openmrs.Patient;
 import org.openmrs.Program;
+import org.openmrs.Role;
 import org.openmrs.User;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.datafilter.DataFilterSessionContext;
 import org.openmrs.module.datafilter.TestConstants;
+import org.openmrs.module.datafilter.impl.AccessUtil;
 import org.openmrs.module.datafilter.impl.BaseFilterTest;
 import org.openmrs.module.datafilter.impl.EntityBasisMap;
 import org.powermock.reflect.Whitebox;
@@ -56,6 +68,14 @@ public class DataFilterServiceTest extends BaseFilterTest {
 		assertTrue(service.hasAccess(new User(501), new Location(4000)));
 	}
 	
+	@Test
+	public void hasAccess_shouldMatchTheIdentifiersCaseInsensitively() {
+		service.grantAccess(new Role("Data Clerk"), new Program(1));
+		
+		assertTrue(service.hasAccess(new Role("data clerk"), new Program(1)));
+		assertTrue(service.hasAccess(new Role("DATA CLERK"), new Program(1)));
+	}
+	
 	@Test
 	public void grantAccess_shouldGrantTheUserAccessToRecordsAtTheSpecifiedBasis() {
 		User user = new User(3000);
@@ -112,10 +132,270 @@ public class DataFilterServiceTest extends BaseFilterTest {
 		}
 	}
 	
+	@Test
+	public void grantAccess_shouldGrantEachEntityAccessToRecordsAtEachOfTheSpecifiedBases() {
+		Collection<OpenmrsObject> users = Stream.of(new User(501), new User(3000)).collect(Collectors.toList());
+		Collection<OpenmrsObject> bases = Stream.of(new Location(1), new Location(4001)).collect(Collectors.toList());
+		assertTrue(service.hasAccess(new User(3000), new Location(1)));
+		assertFalse(service.hasAccess(new User(501), new Location(1)));
+		
+		service.grantAccess(users, bases);
+		
+		assertNull(((ThreadLocal) Whitebox.getInternalState(DataFilterSessionContext.class, "areFiltersSet")).get());
+		for (OpenmrsObject user : users) {
+			for (OpenmrsObject basis : bases) {
+				assertTrue(service.hasAccess(user, basis));
+			}
+		}
+		Assert.assertEquals(3, service.getEntityBasisMaps(new User(3000), Location.class.getName()).size());
+	}
+	
+	@Test
+	public void revokeAccess_shouldRevokeAccessForEachEntityToRecordsAtEachOfTheSpecifiedBases() {
+		Collection<OpenmrsObject> users = Stream.of(new User(501), new User(3000)).collect(Collectors.toList());
+		Collection<OpenmrsObject> bases = Stream.of(new Location(1), new Location(4000), new Program(1))
+		        .collect(Collectors.toList());
+		
+		service.revokeAccess(users, bases);
+		
+		assertNull(((ThreadLocal) Whitebox.getInternalState(DataFilterSessionContext.class, "areFiltersSet")).get());
+		for (OpenmrsObject user : users) {
+			for (OpenmrsObject basis : bases) {
+				assertFalse(service.hasAccess(user, basis));
+			}
+		}
+	}
+	
+	@Test
+	public void revokeAccess_shouldRevokeAccessToMoreBasesThanFitInASingleInClause() {
+		User user = new User(3000);
+		Collection<OpenmrsObject> locations = new ArrayList();
+		for (int i = 5000; i < 6200; i++) {
+			locations.add(new Location(i));
+		}
+		service.grantAccess(user, locations);
+		Assert.assertEquals(1202, service.getEntityBasisMaps(user, Location.class.getName()).size());
+		
+		service.revokeAccess(user, locations);
+		
+		Assert.assertEquals(2, service.getEntityBasisMaps(user, Location.class.getName()).size());
+	}
+	
+	@Test
+	public void grantAccess_shouldEvictTheCachedMappingQueryResults() {
+		User user = new User(3000);
+		Collection<OpenmrsObject> locations = Stream.of(new Location(4001), new Location(4002))
+		        .collect(Collectors.toList());
+		//Cache the results of the mapping queries before the bulk insert
+		Assert.assertEquals(2, service.getEntityBasisMaps(user, Location.class.getName()).size());
+		assertFalse(service.hasAccess(user, new Location(4001)));
+		
+		service.grantAccess(user, locations);
+		
+		Assert.assertEquals(4, service.getEntityBasisMaps(user, Location.class.getName()).size());
+		assertTrue(service.hasAccess(user, new Location(4001)));
+	}
+	
+	@Test
+	public void revokeAccess_shouldEvictTheCachedMappingQueryResults() {
+		User user = new User(3000);
+		Collection<OpenmrsObject> locations = Stream.of(new Location(1), new Location(4000)).collect(Collectors.toList());
+		//Cache the results of the mapping queries before the bulk delete
+		Assert.assertEquals(2, service.getEntityBasisMaps(user, Location.class.getName()).size());
+		assertTrue(service.hasAccess(user, new Location(4000)));
+		
+		service.revokeAccess(user, locations);
+		
+		Assert.assertEquals(0, service.getEntityBasisMaps(user, Location.class.getName()).size());
+		assertFalse(service.hasAccess(user, new Location(4000)));
+	}
+	
+	@Test
+	public void setAccess_shouldReplaceTheBasesOfTheSpecifiedTypeTheEntityHasAccessTo() {
+		User user = new User(3000);
+		assertTrue(service.hasAccess(user, new Location(1)));
+		assertTrue(service.hasAccess(user, new Location(4000)));
+		
+		Collection<OpenmrsObject> locations = Stream.of(new Location(4000), new Location(4001)).collect(Collectors.toList());
+		
+		service.setAccess(user, Location.class, locations);
+		
+		assertFalse(service.hasAccess(user, new Location(1)));
+		assertTrue(service.hasAccess(user, new Location(4000)));
+		assertTrue(service.hasAccess(user, new Location(4001)));
+		//Bases of other types should be untouched
+		assertTrue(service.hasAccess(user, new Program(1)));
+	}
+	
+	@Test
+	public void setAccess_shouldRevokeAccessToAllBasesOfTheSpecifiedTypeIfNoBasesAreSpecified() {
+		User user = new User(3000);
+		
+		service.setAccess(user, Location.class, Collections.emptyList());
+		
+		Assert.assertEquals(0, service.getEntityBasisMaps(user, Location.class.getName()).size());
+		assertTrue(service.hasAccess(user, new Program(1)));
+	}
+	
+	@Test
+	public void importEntityBasisMaps_shouldAddTheMappingsThatDoNotExist() {
+		String csv = "entity_type,entity_identifier,basis_type,basis_identifier\n"
+		        + "org.openmrs.User,3000,org.openmrs.Location,1\n" + "org.openmrs.User,3000,org.openmrs.Location,4001\n"
+		        + "\n" + "org.openmrs.User,501,org.openmrs.Program,1\n";
+		assertTrue(service.hasAccess(new User(3000), new Location(1)));
+		assertFalse(service.hasAccess(new User(3000), new Location(4001)));
+		assertFalse(service.hasAccess(new User(501), new Program(1)));
+		
+		Assert.assertEquals(2, service.importEntityBasisMaps(new StringReader(csv)));
+		
+		assertTrue(service.hasAccess(new User(3000), new Location(4001)));
+		assertTrue(service.hasAccess(new User(501), new Program(1)));
+	}
+	
+	@Test(expected = APIException.class)
+	public void importEntityBasisMaps_shouldFailForAnInvalidType() {
+		service.importEntityBasisMaps(new StringReader("org.openmrs.Unknown,3000,org.openmrs.Location,1"));
+	}
+	
+	@Test(expected = APIException.class)
+	public void importEntityBasisMaps_shouldFailForAnUnsupportedBasisType() {
+		service.importEntityBasisMaps(new StringReader("org.openmrs.User,3000,org.openmrs.Patient,1001"));
+	}
+	
+	@Test
+	public void importEntityBasisMaps_shouldSkipTheMappingsWhoseEntityOrBasisDoesNotExist() {
+		String csv = "org.openmrs.User,9999,org.openmrs.Location,1\n" + "org.openmrs.User,3000,org.openmrs.Location,9999\n"
+		        + "org.openmrs.User,abc,org.openmrs.Location,1\n" + "org.openmrs.Role,Unknown Role,org.openmrs.Program,1\n"
+		        + "org.openmrs.Role,physician,org.openmrs.Program,1\n";
+		
+		Assert.assertEquals(1, service.importEntityBasisMaps(new StringReader(csv)));
+		
+		assertTrue(service.hasAccess(new Role("Physician"), new Program(1)));
+		assertFalse(service.hasAccess(new User(9999), new Location(1)));
+		assertFalse(service.hasAccess(new Role("Unknown Role"), new Program(1)));
+	}
+	
+	@Test
+	public void importEntityBasisMaps_shouldLinkThePatientsToTheImportedLocations() {
+		assertFalse(service.hasAccess(new Patient(1001), new Location(4002)));
+		
+		Assert.assertEquals(1,
+		    service.importEntityBasisMaps(new StringReader("org.openmrs.Patient,1001,org.openmrs.Location,4002")));
+		
+		assertTrue(service.hasAccess(new Patient(1001), new Location(4002)));
+	}
+	
+	@Test
+	public void importEntityBasisMaps_shouldStoreTheCanonicalFormOfNumericIdentifiers() {
+		String csv = "org.openmrs.Patient,01001,org.openmrs.Location,4002\n"
+		        + "org.openmrs.Patient,1001,org.openmrs.Location,004002\n";
+		
+		Assert.assertEquals(1, service.importEntityBasisMaps(new StringReader(csv)));
+		
+		Collection<EntityBasisMap> maps = service.getEntityBasisMaps(new Patient(1001), Location.class.getName());
+		assertTrue(maps.stream().anyMatch(map -> "1001".equals(map.getEntityIdentifier())
+		        && "4002".equals(map.getBasisIdentifier())));
+		Assert.assertEquals(0, service
+		        .importEntityBasisMaps(new StringReader("org.openmrs.Patient,0001001,org.openmrs.Location,4002")));
+	}
+	
+	@Test
+	public void exportEntityBasisMaps_shouldWriteAllTheMappingsAsCsv() {
+		StringWriter writer = new StringWriter();
+		
+		service.exportEntityBasisMaps(writer);
+		
+		List<String> lines = Arrays.asList(writer.toString().split("\r\n"));
+		Assert.assertEquals("entity_type,entity_identifier,basis_type,basis_identifier", lines.get(0));
+		assertTrue(lines.contains("org.openmrs.User,3000,org.openmrs.Location,4000"));
+		assertTrue(lines.contains("org.openmrs.User,3000,org.openmrs.Program,1"));
+	}
+	
+	@Test
+	public void exportEntityBasisMaps_shouldWriteDataThatCanBeImported() {
+		StringWriter writer = new StringWriter();
+		service.exportEntityBasisMaps(writer);
+		
+		Assert.assertEquals(0, service.importEntityBasisMaps(new StringReader(writer.toString())));
+	}
+	
 	@Test
 	public void get_shouldGetAllEntityBasisForAnEntityForABasisType() {
 		User user = new User(3000);
 		Collection<EntityBasisMap> map = service.getEntityBasisMaps(user, Location.class.getName());
 		Assert.assertEquals(2, map.size());
 	}
+	
+	@Test
+	public void getEntityBasisMaps_shouldGetTheEntityBasisMapsForEachOfTheSpecifiedEntities() {
+		User user1 = new User(3000);
+		User user2 = new User(501);
+		User user3 = new User(3001);
+		
+		Map<OpenmrsObject, Collection<EntityBasisMap>> entityMaps = service
+		        .getEntityBasisMaps(Arrays.asList(user1, user2, user3), Location.class.getName());
+		
+		Assert.assertEquals(3, entityMaps.size());
+		Assert.assertEquals(2, entityMaps.get(user1).size());
+		Assert.assertEquals(1, entityMaps.get(user2).size());
+		Assert.assertEquals(0, entityMaps.get(user3).size());
+	}
+	
+	@Test
+	public void getEntityBasisMaps_shouldGetTheSpecifiedPageOfEntityBasisMaps() {
+		User user = new User(3000);
+		
+		List<EntityBasisMap> firstPage = service.getEntityBasisMaps(user, Location.class.getName(), 0, 1);
+		List<EntityBasisMap> secondPage = service.getEntityBasisMaps(user, Location.class.getName(), 1, 1);
+		
+		Assert.assertEquals(1, firstPage.size());
+		Assert.assertEquals("1", firstPage.get(0).getBasisIdentifier());
+		Assert.assertEquals(1, secondPage.size());
+		Assert.assertEquals("4000", secondPage.get(0).getBasisIdentifier());
+		Assert.assertEquals(0, service.getEntityBasisMaps(user, Location.class.getName(), 2, 1).size());
+	}
+	
+	@Test
+	public void getEntityBasisMapsByBasis_shouldGetTheEntityBasisMapsOfTheEntitiesMappedToTheBasis() {
+		List<EntityBasisMap> maps = service.getEntityBasisMapsByBasis(new Location(4000), User.class.getName(), 0, 10);
+		
+		Assert.assertEquals(2, maps.size());
+		Assert.assertEquals("3000", maps.get(0).getEntityIdentifier());
+		Assert.assertEquals("501", maps.get(1).getEntityIdentifier());
+	}
+	
+	@Test
+	public void getEntityBasisMapsByBasis_shouldOrderTheEntityBasisMapsByTheNormalizedEntityIdentifier() {
+		service.grantAccess(new Role("admin"), new Program(1));
+		service.grantAccess(new Role("Data Clerk"), new Program(1));
+		
+		List<EntityBasisMap> maps = service.getEntityBasisMapsByBasis(new Program(1), Role.class.getName(), 0, 10);
+		
+		Assert.assertEquals(Arrays.asList("admin", "Data Clerk", "Some made up role"),
+		    maps.stream().map(EntityBasisMap::getEntityIdentifier).collect(Collectors.toList()));
+	}
+	
+	@Test
+	public void forEachEntityBasisMapByBasis_shouldPassEachEntityBasisMapOfTheBasisToTheAction() {
+		List<String> userIds = new ArrayList<>();
+		
+		service.forEachEntityBasisMapByBasis(new Location(4000), User.class.getName(),
+		    map -> userIds.add(map.getEntityIdentifier()));
+		
+		Assert.assertEquals(Arrays.asList("3000", "501"), userIds);
+	}
+	
+	@Test
+	public void grantAccess_shouldMaintainTheLinksInThePatientLocationTable() {
+		Patient patient = Context.getPatientService().getPatient(1002);
+		Location location = new Location(4000);
+		assertFalse(AccessUtil.getPatientLocationIds(1002).contains("4000"));
+		
+		service.grantAccess(patient, location);
+		assertTrue(AccessUtil.getPatientLocationIds(1002).contains("4000"));
+		
+		service.revokeAccess(patient, location);
+		assertFalse(AccessUtil.getPatientLocationIds(1002).contains("4000"));
+		assertTrue(AccessUtil.getPatientLocationIds(1002).contains("4001"));
+	}
 }
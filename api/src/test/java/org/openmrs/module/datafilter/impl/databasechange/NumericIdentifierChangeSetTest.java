@@ -0,0 +1,74 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl.databasechange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.Test;
+import org.openmrs.module.datafilter.impl.BaseFilterTest;
+
+import liquibase.database.Database;
+import liquibase.database.core.H2Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+
+public class NumericIdentifierChangeSetTest extends BaseFilterTest {
+	
+	private Database getDatabase() {
+		Database database = new H2Database();
+		database.setConnection(new JdbcConnection(getConnection()));
+		return database;
+	}
+	
+	private void execute(String sql) throws SQLException {
+		try (Statement statement = getConnection().createStatement()) {
+			statement.executeUpdate(sql);
+		}
+	}
+	
+	private Integer getInteger(String sql) throws SQLException {
+		try (Statement statement = getConnection().createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+			rs.next();
+			int value = rs.getInt(1);
+			return rs.wasNull() ? null : value;
+		}
+	}
+	
+	@Test
+	public void execute_shouldPopulateTheNumericIdentifiersOfTheExistingRows() throws Exception {
+		execute("UPDATE datafilter_entity_basis_map SET entity_identifier_num = NULL, basis_identifier_num = NULL");
+		execute("UPDATE datafilter_entity_basis_map SET basis_identifier = 'Data Clerk' WHERE entity_basis_map_id = 3");
+		
+		new NumericIdentifierChangeSet().execute(getDatabase());
+		
+		assertEquals(0, getInteger("SELECT COUNT(*) FROM datafilter_entity_basis_map WHERE entity_identifier_num IS NULL")
+		        .intValue());
+		assertEquals(3000, getInteger(
+		    "SELECT entity_identifier_num FROM datafilter_entity_basis_map WHERE entity_basis_map_id = 1").intValue());
+		assertEquals(4000, getInteger(
+		    "SELECT basis_identifier_num FROM datafilter_entity_basis_map WHERE entity_basis_map_id = 1").intValue());
+		assertNull(getInteger("SELECT basis_identifier_num FROM datafilter_entity_basis_map WHERE entity_basis_map_id = 3"));
+	}
+	
+	@Test(expected = CustomChangeException.class)
+	public void execute_shouldFailIfANumericIdentifierCannotBeConverted() throws Exception {
+		execute("UPDATE datafilter_entity_basis_map SET basis_identifier = '99999999999', basis_identifier_num = NULL "
+		        + "WHERE entity_basis_map_id = 1");
+		
+		new NumericIdentifierChangeSet().execute(getDatabase());
+	}
+	
+}
@@ -0,0 +1,387 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl.performance;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.Criteria;
+import org.hibernate.Filter;
+import org.hibernate.Session;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.engine.query.spi.HQLQueryPlan;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.internal.FilterImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.Patient;
+import org.openmrs.Person;
+import org.openmrs.Visit;
+import org.openmrs.module.datafilter.DataFilterConstants;
+import org.openmrs.module.datafilter.DataFilterSessionContext;
+import org.openmrs.module.datafilter.impl.AccessUtil;
+import org.openmrs.module.datafilter.impl.BaseFilterTest;
+import org.openmrs.module.datafilter.testsupport.SyntheticDataGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Guards the performance of the filter conditions, it generates a synthetic dataset and runs
+ * representative queries first as a super user for whom no filter is enabled and then as a user that
+ * is granted access to some of the generated locations. The test fails if the filters enabled for
+ * the user introduce a full scan of a table or slow down a query beyond the configured threshold.
+ * The plans and timings are written to target/datafilter-performance, the timings file can be
+ * passed back as a baseline in later runs. These tests only run with the performance profile.
+ */
+public class FilterQueryPlanTest extends BaseFilterTest {
+	
+	private static final Logger log = LoggerFactory.getLogger(FilterQueryPlanTest.class);
+	
+	private static final String PROP_PREFIX = DataFilterConstants.MODULE_ID + ".performance.";
+	
+	private static final int USER_ID = 3000;
+	
+	private static final Pattern FILTER_PARAM_PATTERN = Pattern.compile(":(\\w+)\\.(\\w+)");
+	
+	private static final List<Pattern> FULL_SCAN_PATTERNS = Arrays.asList(
+	    //H2
+	    Pattern.compile("(?i)/\\*\\s*PUBLIC\\.(\\w+)\\.tableScan"),
+	    //PostgreSQL
+	    Pattern.compile("(?i)Seq Scan on (\\w+)"),
+	    //MySQL
+	    Pattern.compile("(?i)\\btable=(\\w+)[^\\n]*\\btype=ALL\\b"));
+	
+	private static final File REPORT_DIR = new File("target", "datafilter-performance");
+	
+	@Autowired
+	private SessionFactoryImplementor sessionFactory;
+	
+	private SyntheticDataGenerator generator;
+	
+	@Before
+	public void generateDataset() {
+		generator = new SyntheticDataGenerator(Long.getLong(PROP_PREFIX + "seed", 1));
+		generator.setLocationCount(Integer.getInteger(PROP_PREFIX + "locations", 20));
+		generator.setPatientCount(Integer.getInteger(PROP_PREFIX + "patients", 5000));
+		generator.setEncountersPerPatient(Integer.getInteger(PROP_PREFIX + "encountersPerPatient", 3));
+		generator.setObsPerEncounter(Integer.getInteger(PROP_PREFIX + "obsPerEncounter", 4));
+		int grantedLocations = Integer.getInteger(PROP_PREFIX + "grantedLocations", 5);
+		sessionFactory.getCurrentSession().doWork(connection -> {
+			generator.generate(connection);
+			generator.grantLocationAccess(connection, USER_ID, grantedLocations);
+		});
+		
+		//The dataset is inserted without going through hibernate
+		AccessUtil.clearCaches();
+		DataFilterSessionContext.reset();
+	}
+	
+	@Test
+	public void filters_shouldNotIntroduceFullScansOrSlowDownQueriesBeyondTheThreshold() throws IOException {
+		final int patientId = generator.getPatientId(0);
+		final int encounterId = generator.getFirstEncounterId(0);
+		Map<String, String> queries = new LinkedHashMap();
+		queries.put("patientById", "from Patient p where p.patientId = " + patientId);
+		queries.put("patientsByName", "select p from Patient p join p.names n where n.givenName = 'Given1'");
+		queries.put("visitsByPatient", "from Visit v where v.patient.patientId = " + patientId);
+		queries.put("encountersByPatient", "from Encounter e where e.patient.patientId = " + patientId);
+		queries.put("obsByPatient", "from Obs o where o.person.personId = " + patientId);
+		queries.put("obsByEncounter", "from Obs o where o.encounter.encounterId = " + encounterId);
+		queries.put("conditionsByPatient", "from Condition c where c.patient.patientId = " + patientId);
+		queries.put("diagnosesByPatient", "from Diagnosis d where d.patient.patientId = " + patientId);
+		queries.put("userByUsername", "from User u where u.username = 'dyorke'");
+		queries.put("providerByIdentifier", "from Provider p where p.identifier = 'mOne'");
+		queries.put("locationByName", "from Location l where l.name = 'Synthetic Location 1'");
+		queries.put("encounterTypeByName", "from EncounterType t where t.name = 'Scheduled'");
+		
+		Map<String, Function<Session, Criteria>> criteriaQueries = new LinkedHashMap();
+		criteriaQueries.put("criteriaPatientById",
+		    s -> s.createCriteria(Patient.class).add(Restrictions.idEq(patientId)));
+		criteriaQueries.put("criteriaVisitsByPatient",
+		    s -> s.createCriteria(Visit.class).add(Restrictions.eq("patient", new Patient(patientId))));
+		criteriaQueries.put("criteriaEncountersByPatient",
+		    s -> s.createCriteria(Encounter.class).add(Restrictions.eq("patient", new Patient(patientId))));
+		criteriaQueries.put("criteriaObsByPatient",
+		    s -> s.createCriteria(Obs.class).add(Restrictions.eq("person", new Person(patientId))));
+		
+		Map<String, QueryMeasurement> unfiltered = measure(queries, criteriaQueries);
+		reloginAs("dyorke", "test");
+		Map<String, QueryMeasurement> filtered = measure(queries, criteriaQueries);
+		
+		Properties baseline = loadBaseline();
+		double maxSlowdownFactor = Double.parseDouble(System.getProperty(PROP_PREFIX + "maxSlowdownFactor", "10"));
+		long minSlackMillis = Long.getLong(PROP_PREFIX + "minSlackMillis", 20);
+		Set<String> allowedFullScans = Arrays
+		        .stream(StringUtils.split(System.getProperty(PROP_PREFIX + "allowedFullScans", ""), ','))
+		        .map(t -> t.trim().toLowerCase(Locale.ROOT)).collect(Collectors.toSet());
+		
+		List<String> failures = new ArrayList();
+		StringBuilder plans = new StringBuilder();
+		Properties timings = new Properties();
+		for (Map.Entry<String, QueryMeasurement> entry : filtered.entrySet()) {
+			String name = entry.getKey();
+			QueryMeasurement withFilters = entry.getValue();
+			QueryMeasurement withoutFilters = unfiltered.get(name);
+			timings.setProperty(name, String.valueOf(withFilters.millis));
+			plans.append("-- ").append(name).append(" (").append(withFilters.millis).append("ms, ")
+			        .append(withoutFilters.millis).append("ms without filters)\n").append(withFilters.sql).append("\n");
+			if (withFilters.plan != null) {
+				plans.append(withFilters.plan).append("\n");
+				Set<String> introducedScans = new HashSet(withFilters.fullScans);
+				introducedScans.removeAll(withoutFilters.fullScans);
+				introducedScans.removeAll(allowedFullScans);
+				if (!introducedScans.isEmpty()) {
+					failures.add(name + ": the filters introduce a full scan of " + introducedScans);
+				}
+			}
+			
+			plans.append("\n");
+			if (withFilters.millis > withoutFilters.millis * maxSlowdownFactor
+			        && withFilters.millis - withoutFilters.millis > minSlackMillis) {
+				failures.add(name + ": took " + withFilters.millis + "ms with the filters and " + withoutFilters.millis
+				        + "ms without them");
+			}
+			
+			String baselineMillis = baseline.getProperty(name);
+			if (baselineMillis != null) {
+				long previousMillis = Long.parseLong(baselineMillis);
+				if (withFilters.millis > previousMillis * maxSlowdownFactor
+				        && withFilters.millis - previousMillis > minSlackMillis) {
+					failures.add(name + ": took " + withFilters.millis + "ms compared to " + previousMillis
+					        + "ms in the baseline");
+				}
+			}
+		}
+		
+		writeReport(plans.toString(), timings);
+		
+		assertTrue(StringUtils.join(failures, "\n"), failures.isEmpty());
+	}
+	
+	private Map<String, QueryMeasurement> measure(Map<String, String> queries,
+	        Map<String, Function<Session, Criteria>> criteriaQueries) {
+		
+		Map<String, QueryMeasurement> nameMeasurementMap = new LinkedHashMap();
+		SessionImplementor session = (SessionImplementor) sessionFactory.getCurrentSession();
+		Map<String, Filter> enabledFilters = session.getLoadQueryInfluencers().getEnabledFilters();
+		for (Map.Entry<String, String> entry : queries.entrySet()) {
+			HQLQueryPlan plan = sessionFactory.getQueryPlanCache().getHQLQueryPlan(entry.getValue(), false,
+			    enabledFilters);
+			String sql = bindFilterParameters(plan.getSqlStrings()[0], session);
+			QueryMeasurement measurement = new QueryMeasurement(sql);
+			session.doWork(connection -> {
+				try (Statement statement = connection.createStatement()) {
+					measurement.plan = explain(statement, sql);
+					measurement.fullScans = getFullScans(measurement.plan);
+					measurement.millis = time(() -> {
+						try (ResultSet rs = statement.executeQuery(sql)) {
+							while (rs.next()) {
+								//Read all the rows
+							}
+						}
+						
+						return null;
+					});
+				}
+			});
+			
+			nameMeasurementMap.put(entry.getKey(), measurement);
+		}
+		
+		for (Map.Entry<String, Function<Session, Criteria>> entry : criteriaQueries.entrySet()) {
+			QueryMeasurement measurement = new QueryMeasurement(entry.getKey());
+			measurement.millis = time(() -> {
+				entry.getValue().apply(session).list();
+				session.clear();
+				return null;
+			});
+			
+			nameMeasurementMap.put(entry.getKey(), measurement);
+		}
+		
+		return nameMeasurementMap;
+	}
+	
+	/**
+	 * Replaces the filter parameter placeholders hibernate adds to the generated sql with the values
+	 * bound to the enabled filters.
+	 */
+	private String bindFilterParameters(String sql, SessionImplementor session) {
+		Matcher matcher = FILTER_PARAM_PATTERN.matcher(sql);
+		StringBuffer sb = new StringBuffer();
+		while (matcher.find()) {
+			String replacement = matcher.group();
+			Filter filter = session.getEnabledFilter(matcher.group(1));
+			if (filter != null) {
+				replacement = toSqlLiteral(((FilterImpl) filter).getParameter(matcher.group(2)));
+			}
+			
+			matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+		}
+		
+		matcher.appendTail(sb);
+		
+		return sb.toString();
+	}
+	
+	private String toSqlLiteral(Object value) {
+		if (value instanceof Collection) {
+			return ((Collection<?>) value).stream().map(this::toSqlLiteral).collect(Collectors.joining(", "));
+		} else if (value instanceof Number) {
+			return value.toString();
+		} else if (value instanceof Boolean) {
+			return ((Boolean) value) ? "TRUE" : "FALSE";
+		}
+		
+		return "'" + String.valueOf(value).replace("'", "''") + "'";
+	}
+	
+	private String explain(Statement statement, String sql) {
+		StringBuilder plan = new StringBuilder();
+		try (ResultSet rs = statement.executeQuery("EXPLAIN " + sql)) {
+			ResultSetMetaData metadata = rs.getMetaData();
+			while (rs.next()) {
+				List<String> columns = new ArrayList();
+				for (int i = 1; i <= metadata.getColumnCount(); i++) {
+					columns.add(metadata.getColumnCount() == 1 ? rs.getString(i)
+					        : metadata.getColumnLabel(i).toLowerCase(Locale.ROOT) + "=" + rs.getString(i));
+				}
+				
+				plan.append(StringUtils.join(columns, ", ")).append("\n");
+			}
+		}
+		catch (Exception e) {
+			log.warn("Failed to get the plan for the query: " + sql, e);
+			return null;
+		}
+		
+		return plan.toString();
+	}
+	
+	private static Set<String> getFullScans(String plan) {
+		if (plan == null) {
+			return Collections.emptySet();
+		}
+		
+		Set<String> tables = new HashSet();
+		for (Pattern pattern : FULL_SCAN_PATTERNS) {
+			Matcher matcher = pattern.matcher(plan);
+			while (matcher.find()) {
+				tables.add(matcher.group(1).toLowerCase(Locale.ROOT));
+			}
+		}
+		
+		return tables;
+	}
+	
+	/**
+	 * Runs the specified query a number of times after warming up and returns the median duration
+	 */
+	private long time(Query query) {
+		final int warmups = Integer.getInteger(PROP_PREFIX + "warmups", 3);
+		final int iterations = Integer.getInteger(PROP_PREFIX + "iterations", 9);
+		long[] durations = new long[iterations];
+		try {
+			for (int i = 0; i < warmups; i++) {
+				query.run();
+			}
+			
+			for (int i = 0; i < iterations; i++) {
+				long start = System.nanoTime();
+				query.run();
+				durations[i] = System.nanoTime() - start;
+			}
+		}
+		catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		
+		Arrays.sort(durations);
+		
+		return TimeUnit.NANOSECONDS.toMillis(durations[iterations / 2]);
+	}
+	
+	private Properties loadBaseline() throws IOException {
+		Properties baseline = new Properties();
+		String path = System.getProperty(PROP_PREFIX + "baseline");
+		if (StringUtils.isNotBlank(path)) {
+			try (InputStream in = new FileInputStream(path)) {
+				baseline.load(in);
+			}
+		}
+		
+		return baseline;
+	}
+	
+	private void writeReport(String plans, Properties timings) throws IOException {
+		REPORT_DIR.mkdirs();
+		Files.write(new File(REPORT_DIR, "query-plans.txt").toPath(), plans.getBytes(StandardCharsets.UTF_8));
+		try (OutputStream out = new FileOutputStream(new File(REPORT_DIR, "query-timings.properties"))) {
+			timings.store(out, "Median query durations in milliseconds with the filters enabled");
+		}
+		
+		log.info("Wrote the filter query plans and timings to " + REPORT_DIR.getAbsolutePath());
+	}
+	
+	private interface Query {
+		
+		Object run() throws Exception;
+		
+	}
+	
+	private static class QueryMeasurement {
+		
+		private String sql;
+		
+		private String plan;
+		
+		private Set<String> fullScans = Collections.emptySet();
+		
+		private long millis;
+		
+		QueryMeasurement(String sql) {
+			this.sql = sql;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,96 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class DataFilterMetricsTest {
+	
+	private static final String NAME = "test.metric";
+	
+	@After
+	public void after() {
+		DataFilterMetrics.unregisterAll();
+	}
+	
+	@Test
+	public void getHistogram_shouldRegisterTheHistogramAsAnMBean() throws Exception {
+		Histogram histogram = DataFilterMetrics.getHistogram(NAME, DataFilterMetrics.UNIT_NANOSECONDS);
+		histogram.record(7);
+		
+		assertSame(histogram, DataFilterMetrics.getHistogram(NAME, DataFilterMetrics.UNIT_NANOSECONDS));
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = DataFilterMetrics.getObjectName("Histogram", NAME);
+		assertEquals(1L, server.getAttribute(objectName, "Count"));
+		assertEquals(7L, server.getAttribute(objectName, "99thPercentile"));
+		assertEquals(DataFilterMetrics.UNIT_NANOSECONDS, server.getAttribute(objectName, "Unit"));
+	}
+	
+	@Test
+	public void getCacheMetrics_shouldRegisterTheCacheMetricsAsAnMBean() throws Exception {
+		CacheMetrics cacheMetrics = DataFilterMetrics.getCacheMetrics(NAME);
+		cacheMetrics.hit();
+		cacheMetrics.hit();
+		cacheMetrics.hit();
+		cacheMetrics.miss();
+		cacheMetrics.evicted(2);
+		
+		ObjectName objectName = DataFilterMetrics.getObjectName("Cache", NAME);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		assertEquals(0.75, server.getAttribute(objectName, "HitRate"));
+		assertEquals(2L, server.getAttribute(objectName, "EvictionCount"));
+	}
+	
+	@Test
+	public void getListenerHistogram_shouldReturnTheSameHistogramForAListenerClass() {
+		Histogram histogram = DataFilterMetrics.getListenerHistogram(DataFilterMetricsTest.class);
+		
+		assertSame(histogram, DataFilterMetrics.getListenerHistogram(DataFilterMetricsTest.class));
+		assertSame(histogram, DataFilterMetrics.getHistogram(
+		    DataFilterMetrics.LISTENER_PREFIX + "DataFilterMetricsTest.onEnableFilter", DataFilterMetrics.UNIT_NANOSECONDS));
+	}
+	
+	@Test
+	public void resetAll_shouldResetAllTheMetrics() {
+		Counter counter = DataFilterMetrics.getCounter(NAME);
+		counter.add(3);
+		Histogram histogram = DataFilterMetrics.getParameterListSizeHistogram("ids");
+		histogram.record(10);
+		
+		DataFilterMetrics.resetAll();
+		
+		assertEquals(0, counter.getCount());
+		assertEquals(0, histogram.getCount());
+	}
+	
+	@Test
+	public void unregisterAll_shouldUnregisterAllTheMetrics() throws Exception {
+		DataFilterMetrics.getCounter(NAME);
+		ObjectName objectName = DataFilterMetrics.getObjectName("Counter", NAME);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		assertTrue(server.isRegistered(objectName));
+		
+		DataFilterMetrics.unregisterAll();
+		
+		assertFalse(server.isRegistered(objectName));
+	}
+	
+}
@@ -0,0 +1,76 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HistogramTest {
+	
+	@Test
+	public void getValueAtPercentile_shouldReturnExactValuesBelowTheSubBucketCount() {
+		Histogram histogram = new Histogram(DataFilterMetrics.UNIT_VALUES);
+		for (int i = 1; i <= 10; i++) {
+			histogram.record(i);
+		}
+		
+		assertEquals(10, histogram.getCount());
+		assertEquals(5.5, histogram.getMean(), 0);
+		assertEquals(10, histogram.getMax());
+		assertEquals(5, histogram.get50thPercentile());
+		assertEquals(9, histogram.get90thPercentile());
+		assertEquals(10, histogram.get99thPercentile());
+	}
+	
+	@Test
+	public void getValueAtPercentile_shouldBoundTheRelativeErrorForLargeValues() {
+		Histogram histogram = new Histogram(DataFilterMetrics.UNIT_NANOSECONDS);
+		for (long i = 1; i <= 100000; i++) {
+			histogram.record(i * 1000);
+		}
+		
+		assertPercentile(50000000, histogram.get50thPercentile());
+		assertPercentile(90000000, histogram.get90thPercentile());
+		assertPercentile(99000000, histogram.get99thPercentile());
+		assertPercentile(99900000, histogram.get999thPercentile());
+		assertEquals(100000000, histogram.getMax());
+	}
+	
+	@Test
+	public void record_shouldRecordNegativeValuesAsZeroAndHandleTheLargestValue() {
+		Histogram histogram = new Histogram(DataFilterMetrics.UNIT_VALUES);
+		histogram.record(-5);
+		assertEquals(0, histogram.get50thPercentile());
+		
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+	}
+	
+	@Test
+	public void reset_shouldDiscardAllTheRecordedValues() {
+		Histogram histogram = new Histogram(DataFilterMetrics.UNIT_VALUES);
+		histogram.record(100);
+		
+		histogram.reset();
+		
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.get99thPercentile());
+		assertEquals(0, histogram.getMean(), 0);
+	}
+	
+	private void assertPercentile(long expected, long actual) {
+		assertTrue("Expected about " + expected + " but was " + actual,
+		    actual >= expected && actual <= expected + expected / Histogram.SUB_BUCKET_COUNT);
+	}
+	
+}
@@ -0,0 +1,62 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class StatementTallyTest {
+	
+	@After
+	public void after() {
+		StatementTally.end();
+	}
+	
+	@Test
+	public void record_shouldTallyTheStatementsPerSource() {
+		StatementTally.begin();
+		StatementTally.record("AccessUtil");
+		StatementTally.record("IdSetUtil");
+		StatementTally.record("AccessUtil");
+		
+		StatementTally tally = StatementTally.end();
+		
+		assertEquals(3, tally.getModuleCount());
+		assertEquals(2, tally.getSourceCounts().get("AccessUtil").intValue());
+		assertEquals(1, tally.getSourceCounts().get("IdSetUtil").intValue());
+		assertEquals("datafilter=3 {AccessUtil=2, IdSetUtil=1}, application=0", tally.getSummary());
+	}
+	
+	@Test
+	public void record_shouldDoNothingIfNoTallyWasStarted() {
+		StatementTally.record("AccessUtil");
+		
+		assertNull(StatementTally.getCurrent());
+		assertNull(StatementTally.end());
+	}
+	
+	@Test
+	public void enter_shouldKeepTheOutermostSourceActive() {
+		StatementTally.begin();
+		
+		String outer = StatementTally.enter("DataFilterDAO");
+		assertNull(outer);
+		String inner = StatementTally.enter("AccessUtil");
+		assertEquals("DataFilterDAO", inner);
+		StatementTally.exit(inner);
+		assertEquals("DataFilterDAO", StatementTally.enter("IdSetUtil"));
+		StatementTally.exit(outer);
+		assertNull(StatementTally.enter("IdSetUtil"));
+	}
+	
+}
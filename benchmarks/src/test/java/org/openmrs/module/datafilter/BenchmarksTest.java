@@ -0,0 +1,75 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter;
+
+import static org.junit.Assert.assertFalse;
+
+import java.util.Collection;
+import java.util.Properties;
+
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.cfg.Environment;
+import org.junit.Test;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+
+/**
+ * Runs the JMH benchmarks in the JVM of this test so that they can use the application context it
+ * starts against the embedded database, the included benchmarks, iterations and the location,
+ * patient and user counts can be set with the benchmarks.* system properties and the results are
+ * written to the file set by the benchmarks.resultFile system property. The module test dataset is
+ * not loaded because the benchmark threads can't see the uncommitted rows of the test transaction.
+ */
+public class BenchmarksTest extends BaseModuleContextSensitiveTest {
+	
+	private static final String PROP_PREFIX = "benchmarks.";
+	
+	@Override
+	public Properties getRuntimeProperties() {
+		Properties props = super.getRuntimeProperties();
+		//Fixes the error reported by the h2 driver in tests
+		props.setProperty(Environment.URL, props.getProperty(Environment.URL) + ";DB_CLOSE_ON_EXIT=FALSE");
+		return props;
+	}
+	
+	@Test
+	public void runBenchmarks() throws RunnerException {
+		ChainedOptionsBuilder options = new OptionsBuilder()
+		        .include(System.getProperty(PROP_PREFIX + "include", ".*Benchmark.*")).forks(0).threads(1)
+		        .warmupIterations(Integer.getInteger(PROP_PREFIX + "warmupIterations", 3))
+		        .measurementIterations(Integer.getInteger(PROP_PREFIX + "measurementIterations", 5));
+		
+		String resultFile = System.getProperty(PROP_PREFIX + "resultFile");
+		if (StringUtils.isNotBlank(resultFile)) {
+			options.result(resultFile).resultFormat(ResultFormatType.JSON);
+		}
+		
+		setParam(options, "locationCount", "locations");
+		setParam(options, "patientCount", "patients");
+		setParam(options, "userCount", "users");
+		
+		Collection<RunResult> results = new Runner(options.build()).run();
+		
+		assertFalse(results.isEmpty());
+	}
+	
+	private void setParam(ChainedOptionsBuilder options, String paramName, String propertyName) {
+		String values = System.getProperty(PROP_PREFIX + propertyName);
+		if (StringUtils.isNotBlank(values)) {
+			options.param(paramName, StringUtils.split(values, ','));
+		}
+	}
+	
+}
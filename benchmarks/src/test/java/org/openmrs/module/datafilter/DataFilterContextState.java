@@ -0,0 +1,89 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UsernamePasswordCredentials;
+import org.openmrs.module.datafilter.impl.AccessUtil;
+import org.openmrs.module.datafilter.impl.ImplConstants;
+import org.openmrs.module.datafilter.testsupport.SyntheticDataGenerator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * Benchmark state that generates a synthetic dataset in a transaction bound to the benchmark thread
+ * and authenticates as one of the generated users, the transaction is rolled back at the end of the
+ * trial. The benchmarks are run in the JVM of {@link BenchmarksTest} which starts the application
+ * context.
+ */
+@State(Scope.Thread)
+public class DataFilterContextState {
+	
+	@Param("20")
+	public int locationCount;
+	
+	@Param("5000")
+	public int patientCount;
+	
+	@Param("100")
+	public int userCount;
+	
+	public SyntheticDataGenerator generator;
+	
+	public SessionFactoryImplementor sessionFactory;
+	
+	private PlatformTransactionManager transactionManager;
+	
+	private TransactionStatus transaction;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		Context.openSession();
+		Context.authenticate(new UsernamePasswordCredentials("admin", "test"));
+		transactionManager = Context.getRegisteredComponent("transactionManager", PlatformTransactionManager.class);
+		transaction = transactionManager.getTransaction(new DefaultTransactionDefinition());
+		sessionFactory = Context.getRegisteredComponent("sessionFactory", SessionFactoryImplementor.class);
+		
+		generator = new SyntheticDataGenerator(1);
+		generator.setLocationCount(locationCount);
+		generator.setPatientCount(patientCount);
+		generator.setUserCount(userCount);
+		sessionFactory.getCurrentSession().doWork(generator::generate);
+		Context.getAdministrationService().setGlobalProperty(ImplConstants.GP_RUN_IN_STRICT_MODE, "true");
+		Context.flushSession();
+		
+		Context.logout();
+		Context.authenticate(new UsernamePasswordCredentials(generator.getUsername(0), "test"));
+		//The dataset is inserted without going through hibernate
+		AccessUtil.clearCaches();
+		DataFilterSessionContext.reset();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		try {
+			transactionManager.rollback(transaction);
+		}
+		finally {
+			AccessUtil.clearCaches();
+			DataFilterSessionContext.reset();
+			Context.closeSession();
+		}
+	}
+	
+}
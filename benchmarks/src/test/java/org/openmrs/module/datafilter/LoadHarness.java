@@ -0,0 +1,365 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.SessionFactory;
+import org.openmrs.Encounter;
+import org.openmrs.Patient;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UsernamePasswordCredentials;
+import org.openmrs.module.datafilter.impl.AccessUtil;
+import org.openmrs.module.datafilter.testsupport.SyntheticDataGenerator;
+import org.openmrs.util.PrivilegeConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Drives concurrent simulated users through the patient search, chart load and encounter save
+ * flows, each user is one of the users created by the {@link SyntheticDataGenerator} and therefore
+ * has a different set of location grants and program roles. Each operation runs in its own
+ * transaction through the application's services and session context, the filters are reset before
+ * each operation like at the end of each web request so that every operation pays for setting them
+ * up. The number of statements each operation executes is read from the {@link RoundTripCounter}.
+ */
+public class LoadHarness {
+	
+	private static final Logger log = LoggerFactory.getLogger(LoadHarness.class);
+	
+	public enum Operation {
+		LOGIN, PATIENT_SEARCH, CHART_LOAD, ENCOUNTER_SAVE
+	}
+	
+	//The program roles of the generated users have no privileges, they are granted just what the simulated flows need
+	private static final List<String> PRIVILEGES = Arrays.asList(PrivilegeConstants.GET_PATIENTS,
+	    PrivilegeConstants.GET_PERSONS, PrivilegeConstants.GET_VISITS, PrivilegeConstants.GET_VISIT_TYPES,
+	    PrivilegeConstants.GET_ENCOUNTERS, PrivilegeConstants.GET_ENCOUNTER_TYPES, PrivilegeConstants.GET_OBS,
+	    PrivilegeConstants.GET_CONCEPTS, PrivilegeConstants.GET_LOCATIONS, PrivilegeConstants.GET_PROVIDERS,
+	    PrivilegeConstants.ADD_ENCOUNTERS, PrivilegeConstants.EDIT_ENCOUNTERS);
+	
+	private static final String PATIENT_SEARCH_QUERY = "select distinct p from Patient p join p.names n "
+	        + "where n.familyName like :name";
+	
+	private static final String PATIENT_LOCATION_QUERY = "SELECT location_id, patient_id FROM "
+	        + "datafilter_patient_location WHERE patient_id >= ? AND patient_id < ?";
+	
+	private static final int ENCOUNTER_TYPE_ID = 1;
+	
+	private SyntheticDataGenerator generator;
+	
+	private PlatformTransactionManager transactionManager;
+	
+	private SessionFactory sessionFactory;
+	
+	private int concurrentUsers = 20;
+	
+	private int iterations = 50;
+	
+	private int reloginInterval = 10;
+	
+	private Map<Integer, List<Integer>> locationPatientsMap;
+	
+	private Map<Operation, Queue<long[]>> operationSamplesMap;
+	
+	public LoadHarness(SyntheticDataGenerator generator, PlatformTransactionManager transactionManager,
+	    SessionFactory sessionFactory) {
+		this.generator = generator;
+		this.transactionManager = transactionManager;
+		this.sessionFactory = sessionFactory;
+	}
+	
+	/**
+	 * Sets the concurrentUsers, it can't be more than the number of generated users
+	 *
+	 * @param concurrentUsers the concurrentUsers to set
+	 */
+	public void setConcurrentUsers(int concurrentUsers) {
+		this.concurrentUsers = concurrentUsers;
+	}
+	
+	/**
+	 * Sets the number of times each user runs through the flows
+	 *
+	 * @param iterations the iterations to set
+	 */
+	public void setIterations(int iterations) {
+		this.iterations = iterations;
+	}
+	
+	/**
+	 * Sets the number of iterations after which a user logs in again
+	 *
+	 * @param reloginInterval the reloginInterval to set
+	 */
+	public void setReloginInterval(int reloginInterval) {
+		this.reloginInterval = reloginInterval;
+	}
+	
+	/**
+	 * Generates and commits the dataset, this has to be done on a thread other than that of the test
+	 * since the test transaction is rolled back.
+	 */
+	public void setUp() throws Exception {
+		runOnNewThread(() -> {
+			Context.openSession();
+			try {
+				Context.authenticate(new UsernamePasswordCredentials("admin", "test"));
+				inTransaction(() -> sessionFactory.getCurrentSession().doWork(connection -> {
+					generator.generate(connection);
+					locationPatientsMap = new HashMap();
+					try (PreparedStatement statement = connection.prepareStatement(PATIENT_LOCATION_QUERY)) {
+						statement.setInt(1, generator.getPatientId(0));
+						statement.setInt(2, generator.getPatientId(generator.getPatientCount()));
+						try (ResultSet rs = statement.executeQuery()) {
+							while (rs.next()) {
+								locationPatientsMap.computeIfAbsent(rs.getInt(1), k -> new ArrayList()).add(rs.getInt(2));
+							}
+						}
+					}
+				}));
+			}
+			finally {
+				Context.closeSession();
+			}
+		});
+		
+		//The dataset is inserted without going through hibernate
+		AccessUtil.clearCaches();
+	}
+	
+	/**
+	 * Starts all the simulated users at the same time and waits for them to complete
+	 *
+	 * @return the report
+	 */
+	public Report run() throws InterruptedException {
+		operationSamplesMap = new EnumMap(Operation.class);
+		for (Operation operation : Operation.values()) {
+			operationSamplesMap.put(operation, new ConcurrentLinkedQueue());
+		}
+		
+		AtomicInteger errorCount = new AtomicInteger();
+		CountDownLatch startSignal = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(concurrentUsers);
+		for (int i = 0; i < concurrentUsers; i++) {
+			final int userIndex = i;
+			executor.submit(() -> {
+				try {
+					simulateUser(userIndex, startSignal);
+				}
+				catch (Exception e) {
+					errorCount.incrementAndGet();
+					log.error("Simulated user " + generator.getUsername(userIndex) + " failed", e);
+				}
+			});
+		}
+		
+		long start = System.nanoTime();
+		startSignal.countDown();
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.HOURS);
+		
+		return new Report(operationSamplesMap, System.nanoTime() - start, errorCount.get());
+	}
+	
+	private void simulateUser(int userIndex, CountDownLatch startSignal) throws Exception {
+		Random random = new Random(generator.getSeed() + userIndex);
+		List<Integer> locationIds = new ArrayList();
+		for (Integer locationId : generator.getGrantedLocationIds(userIndex)) {
+			if (locationPatientsMap.containsKey(locationId)) {
+				locationIds.add(locationId);
+			}
+		}
+		
+		Context.openSession();
+		try {
+			startSignal.await();
+			for (int i = 0; i < iterations; i++) {
+				if (i % reloginInterval == 0) {
+					measure(Operation.LOGIN, () -> login(userIndex));
+				}
+				
+				String name = "Family" + random.nextInt(50) + "%";
+				measure(Operation.PATIENT_SEARCH, () -> searchPatients(name));
+				if (locationIds.isEmpty()) {
+					continue;
+				}
+				
+				Integer locationId = locationIds.get(random.nextInt(locationIds.size()));
+				List<Integer> patientIds = locationPatientsMap.get(locationId);
+				Integer patientId = patientIds.get(random.nextInt(patientIds.size()));
+				measure(Operation.CHART_LOAD, () -> loadChart(patientId));
+				measure(Operation.ENCOUNTER_SAVE, () -> saveEncounter(patientId, locationId));
+			}
+		}
+		finally {
+			Context.closeSession();
+		}
+	}
+	
+	private void login(int userIndex) {
+		if (Context.isAuthenticated()) {
+			Context.logout();
+		}
+		
+		Context.authenticate(new UsernamePasswordCredentials(generator.getUsername(userIndex), "test"));
+		PRIVILEGES.forEach(Context::addProxyPrivilege);
+		//Include the cost of enabling the filters for the new user
+		inTransaction(() -> sessionFactory.getCurrentSession());
+	}
+	
+	private void searchPatients(String name) {
+		inTransaction(() -> sessionFactory.getCurrentSession().createQuery(PATIENT_SEARCH_QUERY)
+		        .setParameter("name", name).setMaxResults(50).list());
+	}
+	
+	private void loadChart(Integer patientId) {
+		inTransaction(() -> {
+			Patient patient = Context.getPatientService().getPatient(patientId);
+			if (patient != null) {
+				Context.getVisitService().getVisitsByPatient(patient);
+				Context.getEncounterService().getEncountersByPatient(patient);
+				Context.getObsService().getObservationsByPerson(patient);
+			}
+		});
+	}
+	
+	private void saveEncounter(Integer patientId, Integer locationId) {
+		inTransaction(() -> {
+			Encounter encounter = new Encounter();
+			encounter.setPatient(Context.getPatientService().getPatient(patientId));
+			encounter.setEncounterType(Context.getEncounterService().getEncounterType(ENCOUNTER_TYPE_ID));
+			encounter.setLocation(Context.getLocationService().getLocation(locationId));
+			encounter.setEncounterDatetime(new Date());
+			Context.getEncounterService().saveEncounter(encounter);
+		});
+	}
+	
+	private void measure(Operation operation, Runnable action) {
+		//Each operation is a new request, DataFilterWebFilter resets the filters after every request
+		DataFilterSessionContext.reset();
+		RoundTripCounter.reset();
+		long start = System.nanoTime();
+		action.run();
+		operationSamplesMap.get(operation).add(new long[] { System.nanoTime() - start, RoundTripCounter.get() });
+	}
+	
+	private void inTransaction(Runnable action) {
+		new TransactionTemplate(transactionManager).execute(status -> {
+			action.run();
+			return null;
+		});
+	}
+	
+	private void runOnNewThread(Runnable action) throws Exception {
+		Exception[] exception = new Exception[1];
+		Thread thread = new Thread(() -> {
+			try {
+				action.run();
+			}
+			catch (Exception e) {
+				exception[0] = e;
+			}
+		});
+		
+		thread.start();
+		thread.join();
+		if (exception[0] != null) {
+			throw exception[0];
+		}
+	}
+	
+	/**
+	 * The throughput, latency percentiles and statements executed per operation
+	 */
+	public static class Report {
+		
+		private Map<Operation, Queue<long[]>> operationSamplesMap;
+		
+		private long durationNanos;
+		
+		private int errorCount;
+		
+		Report(Map<Operation, Queue<long[]>> operationSamplesMap, long durationNanos, int errorCount) {
+			this.operationSamplesMap = operationSamplesMap;
+			this.durationNanos = durationNanos;
+			this.errorCount = errorCount;
+		}
+		
+		/**
+		 * Gets the number of simulated users that failed
+		 *
+		 * @return the errorCount
+		 */
+		public int getErrorCount() {
+			return errorCount;
+		}
+		
+		@Override
+		public String toString() {
+			double seconds = durationNanos / 1e9;
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("%-16s %8s %10s %10s %10s %12s%n", "operation", "count", "ops/s", "p50 (ms)",
+			    "p99 (ms)", "statements"));
+			long total = 0;
+			for (Map.Entry<Operation, Queue<long[]>> entry : operationSamplesMap.entrySet()) {
+				List<long[]> samples = new ArrayList(entry.getValue());
+				if (samples.isEmpty()) {
+					continue;
+				}
+				
+				total += samples.size();
+				List<Long> durations = new ArrayList();
+				long statements = 0;
+				for (long[] sample : samples) {
+					durations.add(sample[0]);
+					statements += sample[1];
+				}
+				
+				Collections.sort(durations);
+				sb.append(String.format("%-16s %8d %10.1f %10.2f %10.2f %12.1f%n", entry.getKey(), samples.size(),
+				    samples.size() / seconds, percentile(durations, 50), percentile(durations, 99),
+				    (double) statements / samples.size()));
+			}
+			
+			sb.append(String.format("%d operations in %.1fs, %.1f ops/s, %d failed users%n", total, seconds,
+			    total / seconds, errorCount));
+			
+			return sb.toString();
+		}
+		
+		private double percentile(List<Long> sortedDurations, int percentile) {
+			int index = (int) Math.ceil(percentile / 100.0 * sortedDurations.size()) - 1;
+			return sortedDurations.get(Math.max(index, 0)) / 1e6;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,86 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Environment;
+import org.junit.Test;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.datafilter.testsupport.SyntheticDataGenerator;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Runs the {@link LoadHarness}, the dataset size, number of concurrent users and iterations can be
+ * set with the load.* system properties and the report is written to the file set by the
+ * load.reportFile system property. The dataset is committed, it is discarded with the embedded
+ * database when the test JVM exits.
+ */
+public class LoadHarnessTest extends BaseModuleContextSensitiveTest {
+	
+	private static final Logger log = LoggerFactory.getLogger(LoadHarnessTest.class);
+	
+	private static final String PROP_PREFIX = "load.";
+	
+	@Override
+	public Properties getRuntimeProperties() {
+		Properties props = super.getRuntimeProperties();
+		//Fixes the error reported by the h2 driver in tests
+		props.setProperty(Environment.URL, props.getProperty(Environment.URL) + ";DB_CLOSE_ON_EXIT=FALSE");
+		props.setProperty(AvailableSettings.AUTO_SESSION_EVENTS_LISTENER, RoundTripCounter.class.getName());
+		return props;
+	}
+	
+	@Test
+	public void runLoadHarness() throws Exception {
+		int concurrentUsers = Integer.getInteger(PROP_PREFIX + "users", 20);
+		SyntheticDataGenerator generator = new SyntheticDataGenerator(Long.getLong(PROP_PREFIX + "seed", 1));
+		generator.setLocationCount(Integer.getInteger(PROP_PREFIX + "locations", 20));
+		generator.setPatientCount(Integer.getInteger(PROP_PREFIX + "patients", 5000));
+		generator.setUserCount(concurrentUsers);
+		generator.setLocationsPerUser(Integer.getInteger(PROP_PREFIX + "locationsPerUser", 3));
+		generator.setProgramCount(Integer.getInteger(PROP_PREFIX + "programs", 5));
+		
+		LoadHarness harness = new LoadHarness(generator,
+		        Context.getRegisteredComponent("transactionManager", PlatformTransactionManager.class),
+		        Context.getRegisteredComponent("sessionFactory", SessionFactory.class));
+		harness.setConcurrentUsers(concurrentUsers);
+		harness.setIterations(Integer.getInteger(PROP_PREFIX + "iterations", 50));
+		harness.setReloginInterval(Integer.getInteger(PROP_PREFIX + "reloginInterval", 10));
+		harness.setUp();
+		
+		LoadHarness.Report report = harness.run();
+		
+		log.info("Load harness report:\n" + report);
+		String reportFile = System.getProperty(PROP_PREFIX + "reportFile");
+		if (reportFile != null) {
+			writeReport(new File(reportFile), report.toString());
+		}
+		
+		assertEquals(0, report.getErrorCount());
+	}
+	
+	private void writeReport(File file, String report) throws IOException {
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), report.getBytes(StandardCharsets.UTF_8));
+	}
+	
+}
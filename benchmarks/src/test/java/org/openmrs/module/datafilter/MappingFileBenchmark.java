@@ -0,0 +1,65 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openmrs.Location;
+import org.openmrs.module.datafilter.registration.HibernateFilterRegistration;
+
+/**
+ * Benchmarks {@link Util#createNewMappingFile(String, List, File)} for a mapping file the location
+ * filters are added to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MappingFileBenchmark {
+	
+	private static final String HBM_FILE = "testLocation.hbm.xml";
+	
+	private List<HibernateFilterRegistration> registrations;
+	
+	private File outputDir;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		registrations = Util.getHibernateFilterRegistrations().stream()
+		        .filter(r -> r.getProperty() == null && r.getTargetClasses().contains(Location.class))
+		        .collect(Collectors.toList());
+		outputDir = Files.createTempDirectory(DataFilterConstants.MODULE_ID).toFile();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(outputDir);
+	}
+	
+	@Benchmark
+	public File createNewMappingFile() throws IOException {
+		return Util.createNewMappingFile(HBM_FILE, registrations, outputDir);
+	}
+	
+}
@@ -0,0 +1,54 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter;
+
+import org.hibernate.BaseSessionEventListener;
+
+/**
+ * Session event listener that counts the statements executed by the sessions opened on the current
+ * thread, it is added to every session by setting the hibernate.session.events.auto property.
+ */
+public class RoundTripCounter extends BaseSessionEventListener {
+	
+	private static final ThreadLocal<long[]> count = ThreadLocal.withInitial(() -> new long[1]);
+	
+	/**
+	 * @see BaseSessionEventListener#jdbcExecuteStatementStart()
+	 */
+	@Override
+	public void jdbcExecuteStatementStart() {
+		count.get()[0]++;
+	}
+	
+	/**
+	 * @see BaseSessionEventListener#jdbcExecuteBatchStart()
+	 */
+	@Override
+	public void jdbcExecuteBatchStart() {
+		count.get()[0]++;
+	}
+	
+	/**
+	 * Resets the count for the current thread
+	 */
+	public static void reset() {
+		count.get()[0] = 0;
+	}
+	
+	/**
+	 * Gets the count for the current thread
+	 *
+	 * @return the number of executed statements since the last reset
+	 */
+	public static long get() {
+		return count.get()[0];
+	}
+	
+}
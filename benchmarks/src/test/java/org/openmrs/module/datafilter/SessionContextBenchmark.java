@@ -0,0 +1,47 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openmrs.module.datafilter.impl.AccessUtil;
+
+/**
+ * Benchmarks {@link DataFilterSessionContext#currentSession()} when the filters are already set on
+ * the current thread, when they have to be set again and when the access caches are also empty.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SessionContextBenchmark {
+	
+	@Benchmark
+	public Session currentSession_warm(DataFilterContextState state) {
+		return state.sessionFactory.getCurrentSession();
+	}
+	
+	@Benchmark
+	public Session currentSession_cold(DataFilterContextState state) {
+		DataFilterSessionContext.reset();
+		return state.sessionFactory.getCurrentSession();
+	}
+	
+	@Benchmark
+	public Session currentSession_coldWithEmptyCaches(DataFilterContextState state) {
+		AccessUtil.clearCaches();
+		DataFilterSessionContext.reset();
+		return state.sessionFactory.getCurrentSession();
+	}
+	
+}
@@ -0,0 +1,39 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openmrs.Location;
+import org.openmrs.module.datafilter.DataFilterContextState;
+
+/**
+ * Benchmarks the lookups of the bases and persons the authenticated user has access to
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AccessUtilBenchmark {
+	
+	@Benchmark
+	public Collection<String> getAssignedBasisIds(DataFilterContextState state) {
+		return AccessUtil.getAssignedBasisIds(Location.class);
+	}
+	
+	@Benchmark
+	public Collection<String> getAccessiblePersonIds(DataFilterContextState state) {
+		return AccessUtil.getAccessiblePersonIds(Location.class);
+	}
+	
+}
@@ -0,0 +1,57 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.search.Filter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the creation of the full text filter for the specified number of patient ids
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PatientIdFullTextFilterBenchmark {
+	
+	@Param({ "100", "10000" })
+	public int patientIdCount;
+	
+	private PatientIdFullTextFilter fullTextFilter;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		Set<String> patientIds = new HashSet(patientIdCount);
+		for (int i = 0; i < patientIdCount; i++) {
+			patientIds.add(String.valueOf(i));
+		}
+		
+		fullTextFilter = new PatientIdFullTextFilter();
+		fullTextFilter.setField("patient.patientId");
+		fullTextFilter.setPatientIds(patientIds);
+	}
+	
+	@Benchmark
+	public Filter getFilter() {
+		return fullTextFilter.getFilter();
+	}
+	
+}
@@ -0,0 +1,109 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.impl.api.db.hibernate;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.Type;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openmrs.EncounterType;
+import org.openmrs.Patient;
+import org.openmrs.module.datafilter.DataFilterContextState;
+
+/**
+ * Benchmarks {@link AccessInterceptor#onLoad(Object, Serializable, Object[], String[], Type[])} for
+ * each of the entity types it checks, the loaded entity is one the authenticated user has access to.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AccessInterceptorBenchmark {
+	
+	private static final String PATIENT_QUERY = "SELECT MIN(patient_id) FROM datafilter_patient_location "
+	        + "WHERE location_id = ?";
+	
+	@Param({ "Patient", "Visit", "Encounter", "Obs", "EncounterType" })
+	public String entityType;
+	
+	private AccessInterceptor interceptor = new AccessInterceptor();
+	
+	private Object entity;
+	
+	private Serializable id;
+	
+	private Object[] state;
+	
+	private String[] propertyNames;
+	
+	private Type[] types;
+	
+	@Setup(Level.Trial)
+	public void setUp(DataFilterContextState contextState) {
+		SessionImplementor session = (SessionImplementor) contextState.sessionFactory.getCurrentSession();
+		Integer[] patientId = new Integer[1];
+		session.doWork(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(PATIENT_QUERY)) {
+				//The generated user at index 0 is granted access to the generated location at index 0
+				statement.setInt(1, contextState.generator.getLocationId(0));
+				try (ResultSet rs = statement.executeQuery()) {
+					rs.next();
+					patientId[0] = rs.getInt(1);
+				}
+			}
+		});
+		
+		entity = loadEntity(session, patientId[0]);
+		EntityPersister persister = contextState.sessionFactory.getMetamodel().entityPersister(entity.getClass());
+		id = persister.getIdentifier(entity, session);
+		state = persister.getPropertyValues(entity);
+		propertyNames = persister.getPropertyNames();
+		types = persister.getPropertyTypes();
+	}
+	
+	private Object loadEntity(Session session, Integer patientId) {
+		switch (entityType) {
+			case "Patient":
+				return session.get(Patient.class, patientId);
+			case "Visit":
+				return session.createQuery("from Visit v where v.patient.patientId = :id").setParameter("id", patientId)
+				        .setMaxResults(1).uniqueResult();
+			case "Encounter":
+				return session.createQuery("from Encounter e where e.patient.patientId = :id")
+				        .setParameter("id", patientId).setMaxResults(1).uniqueResult();
+			case "Obs":
+				return session.createQuery("from Obs o where o.person.personId = :id").setParameter("id", patientId)
+				        .setMaxResults(1).uniqueResult();
+			case "EncounterType":
+				return session.get(EncounterType.class, 1);
+			default:
+				throw new IllegalArgumentException("Unknown entity type: " + entityType);
+		}
+	}
+	
+	@Benchmark
+	public boolean onLoad() {
+		return interceptor.onLoad(entity, id, state, propertyNames, types);
+	}
+	
+}
@@ -10,15 +10,25 @@
 package org.openmrs.module.datafilter.web;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Properties;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
 
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.datafilter.DataFilterConstants;
 import org.openmrs.module.datafilter.DataFilterSessionContext;
+import org.openmrs.module.datafilter.metrics.StatementTally;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,11 +36,21 @@ import org.slf4j.LoggerFactory;
  * The job of this filter is to clear the thread local variable in {@link DataFilterSessionContext}
  * class so that we don't have stale session filter settings shared between different http requests
  * in a servlet container environment where threads are reused from a thread pool.
+ * <p>
+ * When debug logging is enabled for this class, the SQL statements executed while processing each
+ * request are tallied with a {@link StatementTally} and a summary of the statements issued by the
+ * module and the application is logged when the request completes. In development environments,
+ * the summary can also be returned in the {@link DataFilterConstants#STATEMENT_TALLY_HEADER} response
+ * header by setting the {@link DataFilterConstants#RUNTIME_PROP_STATEMENT_TALLY_HEADER} runtime
+ * property to true, the header only includes the statements executed before the response is
+ * committed.
  */
 public class DataFilterWebFilter implements Filter {
 	
 	private static final Logger log = LoggerFactory.getLogger(DataFilterWebFilter.class);
 	
+	private boolean addTallyHeader;
+	
 	/**
 	 * @see Filter#init(FilterConfig)
 	 */
@@ -39,6 +59,12 @@ public class DataFilterWebFilter implements Filter {
 		if (log.isDebugEnabled()) {
 			log.debug("Initializing datafilter web filter....");
 		}
+		
+		Properties props = Context.getRuntimeProperties();
+		if (props != null) {
+			addTallyHeader = "true".equalsIgnoreCase(
+			    StringUtils.trim(props.getProperty(DataFilterConstants.RUNTIME_PROP_STATEMENT_TALLY_HEADER)));
+		}
 	}
 	
 	/**
@@ -52,6 +78,14 @@ public class DataFilterWebFilter implements Filter {
 			log.trace("In datafilter web filter....");
 		}
 		
+		final boolean tally = addTallyHeader || log.isDebugEnabled();
+		if (tally) {
+			StatementTally.begin();
+			if (addTallyHeader && response instanceof HttpServletResponse) {
+				response = new TallyHeaderResponse((HttpServletResponse) response);
+			}
+		}
+		
 		try {
 			chain.doFilter(request, response);
 		}
@@ -60,10 +94,31 @@ public class DataFilterWebFilter implements Filter {
 				log.trace("Http request processing ended....");
 			}
 			
+			if (tally) {
+				if (response instanceof TallyHeaderResponse) {
+					((TallyHeaderResponse) response).setTallyHeader();
+				}
+				
+				StatementTally statementTally = StatementTally.end();
+				if (log.isDebugEnabled()) {
+					log.debug("Statements executed for " + getRequestName(request) + ": " + statementTally.getSummary());
+				}
+			}
+			
 			DataFilterSessionContext.reset();
 		}
 	}
 	
+	private String getRequestName(ServletRequest request) {
+		if (request instanceof HttpServletRequest) {
+			HttpServletRequest httpRequest = (HttpServletRequest) request;
+			//The query string is left out since it can contain patient data
+			return httpRequest.getMethod() + " " + httpRequest.getRequestURI();
+		}
+		
+		return "request";
+	}
+	
 	/**
 	 * @see Filter#destroy()
 	 */
@@ -74,4 +129,79 @@ public class DataFilterWebFilter implements Filter {
 		}
 	}
 	
+	/**
+	 * Response wrapper that sets the statement tally header just before the response is committed
+	 */
+	static class TallyHeaderResponse extends HttpServletResponseWrapper {
+		
+		private boolean headerSet;
+		
+		TallyHeaderResponse(HttpServletResponse response) {
+			super(response);
+		}
+		
+		void setTallyHeader() {
+			StatementTally tally = StatementTally.getCurrent();
+			if (!headerSet && tally != null && !isCommitted()) {
+				headerSet = true;
+				setHeader(DataFilterConstants.STATEMENT_TALLY_HEADER, tally.getSummary());
+			}
+		}
+		
+		/**
+		 * @see HttpServletResponseWrapper#getOutputStream()
+		 */
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			setTallyHeader();
+			return super.getOutputStream();
+		}
+		
+		/**
+		 * @see HttpServletResponseWrapper#getWriter()
+		 */
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			setTallyHeader();
+			return super.getWriter();
+		}
+		
+		/**
+		 * @see HttpServletResponseWrapper#flushBuffer()
+		 */
+		@Override
+		public void flushBuffer() throws IOException {
+			setTallyHeader();
+			super.flushBuffer();
+		}
+		
+		/**
+		 * @see HttpServletResponseWrapper#sendError(int, String)
+		 */
+		@Override
+		public void sendError(int sc, String msg) throws IOException {
+			setTallyHeader();
+			super.sendError(sc, msg);
+		}
+		
+		/**
+		 * @see HttpServletResponseWrapper#sendError(int)
+		 */
+		@Override
+		public void sendError(int sc) throws IOException {
+			setTallyHeader();
+			super.sendError(sc);
+		}
+		
+		/**
+		 * @see HttpServletResponseWrapper#sendRedirect(String)
+		 */
+		@Override
+		public void sendRedirect(String location) throws IOException {
+			setTallyHeader();
+			super.sendRedirect(location);
+		}
+		
+	}
+	
 }
@@ -0,0 +1,124 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.web;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.datafilter.DataFilterConstants;
+import org.openmrs.module.datafilter.impl.api.DataFilterService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admin endpoint for the bulk import and export of entity basis mappings as CSV data, a GET request
+ * downloads all the mappings while a POST request imports the mappings in the uploaded file or in
+ * the request body, both stream the data so they can handle a large number of mappings.
+ *
+ * @see DataFilterService#importEntityBasisMaps(Reader)
+ * @see DataFilterService#exportEntityBasisMaps(java.io.Writer)
+ */
+public class EntityBasisMapServlet extends HttpServlet {
+	
+	private static final Logger log = LoggerFactory.getLogger(EntityBasisMapServlet.class);
+	
+	private static final String CONTENT_TYPE_CSV = "text/csv";
+	
+	/**
+	 * @see HttpServlet#doGet(HttpServletRequest, HttpServletResponse)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if (!isAllowed(response)) {
+			return;
+		}
+		
+		response.setContentType(CONTENT_TYPE_CSV);
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		response.setHeader("Content-Disposition", "attachment; filename=\"entity_basis_maps.csv\"");
+		Context.getService(DataFilterService.class).exportEntityBasisMaps(response.getWriter());
+	}
+	
+	/**
+	 * @see HttpServlet#doPost(HttpServletRequest, HttpServletResponse)
+	 */
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+		if (!isAllowed(response)) {
+			return;
+		}
+		
+		Integer importCount = null;
+		try {
+			if (ServletFileUpload.isMultipartContent(request)) {
+				//The streaming API is used so that the uploaded file is never held in memory or on disk
+				FileItemIterator items = new ServletFileUpload().getItemIterator(request);
+				while (items.hasNext()) {
+					FileItemStream item = items.next();
+					if (!item.isFormField()) {
+						Reader reader = new InputStreamReader(item.openStream(), StandardCharsets.UTF_8);
+						importCount = importEntityBasisMaps(reader);
+						break;
+					}
+				}
+			} else {
+				importCount = importEntityBasisMaps(request.getReader());
+			}
+		}
+		catch (FileUploadException e) {
+			throw new ServletException("Failed to read the uploaded entity basis mappings", e);
+		}
+		catch (APIException e) {
+			log.warn("Failed to import entity basis mappings", e);
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			return;
+		}
+		
+		if (importCount == null) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "No file was uploaded");
+			return;
+		}
+		
+		response.setContentType("text/plain");
+		response.getWriter().write("Imported " + importCount + " entity basis mapping(s)");
+	}
+	
+	private int importEntityBasisMaps(Reader reader) {
+		return Context.getService(DataFilterService.class).importEntityBasisMaps(reader);
+	}
+	
+	private boolean isAllowed(HttpServletResponse response) throws IOException {
+		if (!Context.isAuthenticated()) {
+			response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+			return false;
+		}
+		
+		if (!Context.hasPrivilege(DataFilterConstants.PRIV_MANAGE_ACCESS)) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return false;
+		}
+		
+		return true;
+	}
+	
+}
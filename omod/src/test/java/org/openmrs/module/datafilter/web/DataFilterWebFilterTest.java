@@ -11,14 +11,24 @@ package org.openmrs.module.datafilter.web;
 
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.openmrs.module.datafilter.DataFilterConstants;
 import org.openmrs.module.datafilter.DataFilterSessionContext;
+import org.openmrs.module.datafilter.metrics.StatementTally;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 import org.powermock.reflect.Whitebox;
@@ -44,4 +54,24 @@ public class DataFilterWebFilterTest {
 		assertNull(((ThreadLocal) Whitebox.getInternalState(DataFilterSessionContext.class, "areFiltersSet")).get());
 	}
 	
+	@Test
+	public void doFilter_shouldSetTheStatementTallyHeaderBeforeTheResponseIsWritten() throws Exception {
+		MockitoAnnotations.initMocks(this);
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		doAnswer(invocation -> {
+			StatementTally.record("AccessUtil");
+			((ServletResponse) invocation.getArguments()[1]).getWriter();
+			StatementTally.record("AccessUtil");
+			return null;
+		}).when(filterChain).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+		DataFilterWebFilter filter = new DataFilterWebFilter();
+		Whitebox.setInternalState(filter, "addTallyHeader", true);
+		
+		filter.doFilter(request, response, filterChain);
+		
+		verify(response).setHeader(DataFilterConstants.STATEMENT_TALLY_HEADER, "datafilter=1 {AccessUtil=1}, application=0");
+		assertNull(StatementTally.getCurrent());
+	}
+	
 }
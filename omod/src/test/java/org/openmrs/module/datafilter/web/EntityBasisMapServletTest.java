@@ -0,0 +1,99 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.io.Reader;
+import java.io.Writer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.datafilter.DataFilterConstants;
+import org.openmrs.module.datafilter.impl.api.DataFilterService;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+@PrepareForTest(Context.class)
+@RunWith(PowerMockRunner.class)
+public class EntityBasisMapServletTest {
+	
+	@Mock
+	private DataFilterService dataFilterService;
+	
+	private EntityBasisMapServlet servlet = new EntityBasisMapServlet();
+	
+	@Before
+	public void setUp() {
+		initMocks(this);
+		PowerMockito.mockStatic(Context.class);
+		when(Context.getService(DataFilterService.class)).thenReturn(dataFilterService);
+		when(Context.isAuthenticated()).thenReturn(true);
+		when(Context.hasPrivilege(DataFilterConstants.PRIV_MANAGE_ACCESS)).thenReturn(true);
+	}
+	
+	@Test
+	public void doGet_shouldExportTheMappingsAsCsv() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		servlet.doGet(new MockHttpServletRequest("GET", "/"), response);
+		
+		assertEquals("text/csv", response.getContentType().split(";")[0]);
+		verify(dataFilterService).exportEntityBasisMaps(any(Writer.class));
+	}
+	
+	@Test
+	public void doPost_shouldImportTheMappingsInTheRequestBody() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/");
+		request.setContentType("text/csv");
+		request.setContent("org.openmrs.User,1,org.openmrs.Location,1".getBytes());
+		when(dataFilterService.importEntityBasisMaps(any(Reader.class))).thenReturn(1);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		servlet.doPost(request, response);
+		
+		assertEquals(200, response.getStatus());
+		assertEquals("Imported 1 entity basis mapping(s)", response.getContentAsString());
+	}
+	
+	@Test
+	public void doPost_shouldRejectAUserWithoutTheManagePrivilege() throws Exception {
+		when(Context.hasPrivilege(DataFilterConstants.PRIV_MANAGE_ACCESS)).thenReturn(false);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		servlet.doPost(new MockHttpServletRequest("POST", "/"), response);
+		
+		assertEquals(403, response.getStatus());
+		verify(dataFilterService, never()).importEntityBasisMaps(any(Reader.class));
+	}
+	
+	@Test
+	public void doGet_shouldRejectAnUnauthenticatedUser() throws Exception {
+		when(Context.isAuthenticated()).thenReturn(false);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		servlet.doGet(new MockHttpServletRequest("GET", "/"), response);
+		
+		assertEquals(401, response.getStatus());
+		verify(dataFilterService, never()).exportEntityBasisMaps(any(Writer.class));
+	}
+	
+}
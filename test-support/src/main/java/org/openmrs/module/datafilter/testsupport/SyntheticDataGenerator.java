@@ -0,0 +1,761 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.testsupport;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openmrs.Location;
+import org.openmrs.Patient;
+import org.openmrs.Program;
+import org.openmrs.Role;
+import org.openmrs.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates a synthetic dataset of locations, patients, visits, encounters and observations along
+ * with the patient to location mappings the location based filters depend on and optionally users
+ * granted access to some of the locations and programs mapped to program roles, the rows are
+ * inserted with batched JDBC statements. The generated data only depends on the seed and the
+ * configured sizes, the ids of the generated rows start at {@link #FIRST_ID} so they don't collide
+ * with the test datasets or the data in an existing database. The database is expected to have the
+ * OpenMRS and module tables along with the user with id 1, the visit type, encounter types and
+ * concept the generated rows reference, {@link SyntheticDataLoader} runs the generator against a
+ * database from the command line.
+ */
+public class SyntheticDataGenerator {
+	
+	private static final Logger log = LoggerFactory.getLogger(SyntheticDataGenerator.class);
+	
+	public static final int FIRST_ID = 1000000;
+	
+	private static final int CREATOR = 1;
+	
+	public static final String PROGRAM_ROLE_PREFIX = "Synthetic Program Role ";
+	
+	//The hash and salt of the password test
+	private static final String PASSWORD = "4a1750c8607d0fa237de36c6305715c223415189";
+	
+	private static final String SALT = "c788c6ad82a157b712392ca695dfcf2eed193d7f";
+	
+	private static final Timestamp DATE_CREATED = Timestamp.valueOf("2020-01-01 00:00:00");
+	
+	private static final String INSERT_LOCATION = "INSERT INTO location (location_id, name, description, "
+	        + "parent_location, creator, date_created, retired, uuid) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+	
+	private static final String INSERT_ROLE = "INSERT INTO role (role, description, uuid) VALUES (?, ?, ?)";
+	
+	private static final String INSERT_PROGRAM = "INSERT INTO program (program_id, concept_id, name, description, "
+	        + "creator, date_created, retired, uuid) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+	
+	private static final String INSERT_PERSON = "INSERT INTO person (person_id, gender, birthdate, birthdate_estimated, "
+	        + "dead, creator, date_created, voided, uuid) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	
+	private static final String INSERT_PERSON_NAME = "INSERT INTO person_name (person_name_id, preferred, person_id, "
+	        + "given_name, family_name, creator, date_created, voided, uuid) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	
+	private static final String INSERT_USER = "INSERT INTO users (user_id, person_id, system_id, username, password, "
+	        + "salt, creator, date_created, retired, uuid) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	
+	private static final String INSERT_USER_ROLE = "INSERT INTO user_role (user_id, role) VALUES (?, ?)";
+	
+	private static final String INSERT_PATIENT = "INSERT INTO patient (patient_id, creator, date_created, voided) "
+	        + "VALUES (?, ?, ?, ?)";
+	
+	private static final String INSERT_VISIT = "INSERT INTO visit (visit_id, patient_id, visit_type_id, date_started, "
+	        + "location_id, creator, date_created, voided, uuid) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	
+	private static final String INSERT_ENCOUNTER = "INSERT INTO encounter (encounter_id, encounter_type, patient_id, "
+	        + "location_id, encounter_datetime, visit_id, creator, date_created, voided, uuid) "
+	        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	
+	private static final String INSERT_OBS = "INSERT INTO obs (obs_id, person_id, status, concept_id, encounter_id, "
+	        + "obs_datetime, location_id, value_numeric, creator, date_created, voided, uuid) "
+	        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	
+	private static final String INSERT_PATIENT_LOCATION = "INSERT INTO datafilter_patient_location (patient_id, "
+	        + "location_id) VALUES (?, ?)";
+	
+	private static final String INSERT_ENTITY_BASIS_MAP = "INSERT INTO datafilter_entity_basis_map "
+	        + "(entity_basis_map_id, entity_identifier, normalized_entity_identifier, entity_identifier_num, "
+	        + "entity_type, basis_identifier, normalized_basis_identifier, basis_identifier_num, basis_type, creator, "
+	        + "date_created, uuid) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	
+	private long seed;
+	
+	private int locationCount = 20;
+	
+	private int locationBranchingFactor = 0;
+	
+	private int patientCount = 5000;
+	
+	private int encountersPerPatient = 3;
+	
+	private int obsPerEncounter = 4;
+	
+	private int userCount = 0;
+	
+	private int locationsPerUser = 3;
+	
+	private int programCount = 0;
+	
+	private int programsPerRole = 2;
+	
+	private int rolesPerUser = 2;
+	
+	private int visitTypeId = 1;
+	
+	private int conceptId = 5089;
+	
+	private int[] encounterTypeIds = new int[] { 1, 2 };
+	
+	private int batchSize = 1000;
+	
+	private int commitInterval = 0;
+	
+	private Random random;
+	
+	private int nextEntityBasisMapId = FIRST_ID;
+	
+	public SyntheticDataGenerator(long seed) {
+		this.seed = seed;
+	}
+	
+	/**
+	 * Gets the seed
+	 *
+	 * @return the seed
+	 */
+	public long getSeed() {
+		return seed;
+	}
+	
+	/**
+	 * Gets the locationCount
+	 *
+	 * @return the locationCount
+	 */
+	public int getLocationCount() {
+		return locationCount;
+	}
+	
+	/**
+	 * Sets the locationCount
+	 *
+	 * @param locationCount the locationCount to set
+	 */
+	public void setLocationCount(int locationCount) {
+		this.locationCount = locationCount;
+	}
+	
+	/**
+	 * Gets the locationBranchingFactor
+	 *
+	 * @return the locationBranchingFactor
+	 */
+	public int getLocationBranchingFactor() {
+		return locationBranchingFactor;
+	}
+	
+	/**
+	 * Sets the number of child locations of each location, the locations form a tree when it is greater
+	 * than 0 otherwise they have no parent
+	 *
+	 * @param locationBranchingFactor the locationBranchingFactor to set
+	 */
+	public void setLocationBranchingFactor(int locationBranchingFactor) {
+		this.locationBranchingFactor = locationBranchingFactor;
+	}
+	
+	/**
+	 * Gets the patientCount
+	 *
+	 * @return the patientCount
+	 */
+	public int getPatientCount() {
+		return patientCount;
+	}
+	
+	/**
+	 * Sets the patientCount
+	 *
+	 * @param patientCount the patientCount to set
+	 */
+	public void setPatientCount(int patientCount) {
+		this.patientCount = patientCount;
+	}
+	
+	/**
+	 * Gets the encountersPerPatient
+	 *
+	 * @return the encountersPerPatient
+	 */
+	public int getEncountersPerPatient() {
+		return encountersPerPatient;
+	}
+	
+	/**
+	 * Sets the encountersPerPatient
+	 *
+	 * @param encountersPerPatient the encountersPerPatient to set
+	 */
+	public void setEncountersPerPatient(int encountersPerPatient) {
+		this.encountersPerPatient = encountersPerPatient;
+	}
+	
+	/**
+	 * Gets the obsPerEncounter
+	 *
+	 * @return the obsPerEncounter
+	 */
+	public int getObsPerEncounter() {
+		return obsPerEncounter;
+	}
+	
+	/**
+	 * Sets the obsPerEncounter
+	 *
+	 * @param obsPerEncounter the obsPerEncounter to set
+	 */
+	public void setObsPerEncounter(int obsPerEncounter) {
+		this.obsPerEncounter = obsPerEncounter;
+	}
+	
+	/**
+	 * Gets the userCount
+	 *
+	 * @return the userCount
+	 */
+	public int getUserCount() {
+		return userCount;
+	}
+	
+	/**
+	 * Sets the userCount
+	 *
+	 * @param userCount the userCount to set
+	 */
+	public void setUserCount(int userCount) {
+		this.userCount = userCount;
+	}
+	
+	/**
+	 * Gets the locationsPerUser
+	 *
+	 * @return the locationsPerUser
+	 */
+	public int getLocationsPerUser() {
+		return locationsPerUser;
+	}
+	
+	/**
+	 * Sets the locationsPerUser
+	 *
+	 * @param locationsPerUser the locationsPerUser to set
+	 */
+	public void setLocationsPerUser(int locationsPerUser) {
+		this.locationsPerUser = locationsPerUser;
+	}
+	
+	/**
+	 * Gets the programCount
+	 *
+	 * @return the programCount
+	 */
+	public int getProgramCount() {
+		return programCount;
+	}
+	
+	/**
+	 * Sets the number of programs, each program has a program role mapped to it and the following
+	 * programs
+	 *
+	 * @param programCount the programCount to set
+	 */
+	public void setProgramCount(int programCount) {
+		this.programCount = programCount;
+	}
+	
+	/**
+	 * Gets the programsPerRole
+	 *
+	 * @return the programsPerRole
+	 */
+	public int getProgramsPerRole() {
+		return programsPerRole;
+	}
+	
+	/**
+	 * Sets the programsPerRole
+	 *
+	 * @param programsPerRole the programsPerRole to set
+	 */
+	public void setProgramsPerRole(int programsPerRole) {
+		this.programsPerRole = programsPerRole;
+	}
+	
+	/**
+	 * Gets the rolesPerUser
+	 *
+	 * @return the rolesPerUser
+	 */
+	public int getRolesPerUser() {
+		return rolesPerUser;
+	}
+	
+	/**
+	 * Sets the maximum number of program roles of a user
+	 *
+	 * @param rolesPerUser the rolesPerUser to set
+	 */
+	public void setRolesPerUser(int rolesPerUser) {
+		this.rolesPerUser = rolesPerUser;
+	}
+	
+	/**
+	 * Gets the visitTypeId
+	 *
+	 * @return the visitTypeId
+	 */
+	public int getVisitTypeId() {
+		return visitTypeId;
+	}
+	
+	/**
+	 * Sets the id of the existing visit type of the generated visits
+	 *
+	 * @param visitTypeId the visitTypeId to set
+	 */
+	public void setVisitTypeId(int visitTypeId) {
+		this.visitTypeId = visitTypeId;
+	}
+	
+	/**
+	 * Gets the conceptId
+	 *
+	 * @return the conceptId
+	 */
+	public int getConceptId() {
+		return conceptId;
+	}
+	
+	/**
+	 * Sets the id of the existing concept of the generated observations and programs
+	 *
+	 * @param conceptId the conceptId to set
+	 */
+	public void setConceptId(int conceptId) {
+		this.conceptId = conceptId;
+	}
+	
+	/**
+	 * Gets the encounterTypeIds
+	 *
+	 * @return the encounterTypeIds
+	 */
+	public int[] getEncounterTypeIds() {
+		return encounterTypeIds;
+	}
+	
+	/**
+	 * Sets the ids of the existing encounter types of the generated encounters
+	 *
+	 * @param encounterTypeIds the encounterTypeIds to set
+	 */
+	public void setEncounterTypeIds(int[] encounterTypeIds) {
+		this.encounterTypeIds = encounterTypeIds;
+	}
+	
+	/**
+	 * Gets the batchSize
+	 *
+	 * @return the batchSize
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+	
+	/**
+	 * Sets the batchSize
+	 *
+	 * @param batchSize the batchSize to set
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+	
+	/**
+	 * Gets the commitInterval
+	 *
+	 * @return the commitInterval
+	 */
+	public int getCommitInterval() {
+		return commitInterval;
+	}
+	
+	/**
+	 * Sets the number of executed batches after which the transaction is committed, zero means the
+	 * transaction is never committed by the generator
+	 *
+	 * @param commitInterval the commitInterval to set
+	 */
+	public void setCommitInterval(int commitInterval) {
+		this.commitInterval = commitInterval;
+	}
+	
+	/**
+	 * Gets the id of the generated location at the specified index
+	 *
+	 * @param index the index of the location
+	 * @return the location id
+	 */
+	public int getLocationId(int index) {
+		return FIRST_ID + index;
+	}
+	
+	/**
+	 * Gets the index of the parent of the generated location at the specified index, a location's
+	 * parent always has a lower index so that parents are inserted before their children.
+	 *
+	 * @param index the index of the location
+	 * @return the index of the parent location or -1 if the location has no parent
+	 */
+	public int getParentLocationIndex(int index) {
+		if (locationBranchingFactor < 1 || index == 0) {
+			return -1;
+		}
+		
+		return (index - 1) / locationBranchingFactor;
+	}
+	
+	/**
+	 * Gets the id of the generated program at the specified index
+	 *
+	 * @param index the index of the program
+	 * @return the program id
+	 */
+	public int getProgramId(int index) {
+		return FIRST_ID + index;
+	}
+	
+	/**
+	 * Gets the name of the generated program role at the specified index
+	 *
+	 * @param index the index of the program role
+	 * @return the role name
+	 */
+	public String getProgramRole(int index) {
+		return PROGRAM_ROLE_PREFIX + index;
+	}
+	
+	/**
+	 * Gets the ids of the generated programs the generated program role at the specified index is
+	 * mapped to, the role at index i is mapped to programsPerRole programs starting at the program at
+	 * index i and wrapping around the program count so that roles share programs with their neighbours.
+	 *
+	 * @param index the index of the program role
+	 * @return the program ids
+	 */
+	public List<Integer> getMappedProgramIds(int index) {
+		List<Integer> programIds = new ArrayList();
+		for (int i = 0; i < Math.min(programsPerRole, programCount); i++) {
+			programIds.add(getProgramId((index + i) % programCount));
+		}
+		
+		return programIds;
+	}
+	
+	/**
+	 * Gets the names of the program roles of the generated user at the specified index, the user at
+	 * index i has 1 + i % rolesPerUser roles starting at the role at index i and wrapping around the
+	 * program count, users have no program roles if no programs are generated.
+	 *
+	 * @param index the index of the user
+	 * @return the role names
+	 */
+	public List<String> getProgramRoles(int index) {
+		List<String> roles = new ArrayList();
+		for (int i = 0; programCount > 0 && i <= index % rolesPerUser && i < programCount; i++) {
+			roles.add(getProgramRole((index + i) % programCount));
+		}
+		
+		return roles;
+	}
+	
+	/**
+	 * Gets the id of the generated patient at the specified index
+	 *
+	 * @param index the index of the patient
+	 * @return the patient id
+	 */
+	public int getPatientId(int index) {
+		return FIRST_ID + index;
+	}
+	
+	/**
+	 * Gets the id of the generated user at the specified index
+	 *
+	 * @param index the index of the user
+	 * @return the user id
+	 */
+	public int getUserId(int index) {
+		return FIRST_ID + index;
+	}
+	
+	/**
+	 * Gets the ids of the generated locations the generated user at the specified index is granted
+	 * access to, the user at index i is granted access to 1 + i % locationsPerUser locations starting
+	 * at the location at index i and wrapping around the location count so that users have different
+	 * but overlapping grants.
+	 *
+	 * @param index the index of the user
+	 * @return the location ids
+	 */
+	public List<Integer> getGrantedLocationIds(int index) {
+		List<Integer> locationIds = new ArrayList();
+		for (int i = 0; i <= index % locationsPerUser; i++) {
+			locationIds.add(getLocationId((index + i) % locationCount));
+		}
+		
+		return locationIds;
+	}
+	
+	/**
+	 * Gets the username of the generated user at the specified index, all generated users have the
+	 * password test
+	 *
+	 * @param index the index of the user
+	 * @return the username
+	 */
+	public String getUsername(int index) {
+		return "synthetic" + index;
+	}
+	
+	/**
+	 * Gets the id of the first encounter of the generated patient at the specified index
+	 *
+	 * @param index the index of the patient
+	 * @return the encounter id
+	 */
+	public int getFirstEncounterId(int index) {
+		return FIRST_ID + index * encountersPerPatient;
+	}
+	
+	/**
+	 * Inserts the dataset using the specified connection, the caller is responsible for committing
+	 * or rolling back the transaction. If a commit interval is set, the transaction is also committed
+	 * every time that number of batches is executed, the rows inserted before a failure are then kept
+	 * and can be identified by their ids from {@link #FIRST_ID}.
+	 *
+	 * @param connection the connection to use
+	 * @throws SQLException
+	 */
+	public void generate(Connection connection) throws SQLException {
+		long start = System.nanoTime();
+		random = new Random(seed);
+		//The statements are executed in the order they are listed here so that referenced rows are inserted first
+		try (Batches batches = new Batches(connection, INSERT_LOCATION, INSERT_ROLE, INSERT_PROGRAM, INSERT_PERSON,
+		    INSERT_PERSON_NAME, INSERT_USER, INSERT_USER_ROLE, INSERT_PATIENT, INSERT_PATIENT_LOCATION,
+		    INSERT_ENTITY_BASIS_MAP, INSERT_VISIT, INSERT_ENCOUNTER, INSERT_OBS)) {
+			
+			for (int i = 0; i < locationCount; i++) {
+				int parentIndex = getParentLocationIndex(i);
+				batches.add(INSERT_LOCATION, getLocationId(i), "Synthetic Location " + i, "Synthetic location",
+				    parentIndex < 0 ? null : getLocationId(parentIndex), CREATOR, DATE_CREATED, false, nextUuid());
+			}
+			
+			for (int i = 0; i < programCount; i++) {
+				batches.add(INSERT_PROGRAM, getProgramId(i), conceptId, "Synthetic Program " + i, "Synthetic program",
+				    CREATOR, DATE_CREATED, false, nextUuid());
+				batches.add(INSERT_ROLE, getProgramRole(i), "Synthetic program role", nextUuid());
+				for (Integer programId : getMappedProgramIds(i)) {
+					addEntityBasisMap(batches, getProgramRole(i), null, Role.class, programId, Program.class);
+				}
+			}
+			
+			int encounterId = FIRST_ID;
+			int obsId = FIRST_ID;
+			for (int i = 0; i < patientCount; i++) {
+				int patientId = getPatientId(i);
+				int locationId = getLocationId(random.nextInt(locationCount));
+				Timestamp birthdate = toTimestamp(random.nextInt(80 * 365));
+				batches.add(INSERT_PERSON, patientId, random.nextBoolean() ? "M" : "F", birthdate, false, false, CREATOR,
+				    DATE_CREATED, false, nextUuid());
+				batches.add(INSERT_PERSON_NAME, patientId, true, patientId, "Given" + random.nextInt(1000),
+				    "Family" + random.nextInt(5000), CREATOR, DATE_CREATED, false, nextUuid());
+				batches.add(INSERT_PATIENT, patientId, CREATOR, DATE_CREATED, false);
+				batches.add(INSERT_PATIENT_LOCATION, patientId, locationId);
+				addEntityBasisMap(batches, patientId, Patient.class, locationId);
+				
+				Timestamp dateStarted = toTimestamp(80 * 365 + random.nextInt(365));
+				batches.add(INSERT_VISIT, patientId, patientId, visitTypeId, dateStarted, locationId, CREATOR,
+				    DATE_CREATED, false, nextUuid());
+				for (int j = 0; j < encountersPerPatient; j++, encounterId++) {
+					int encounterTypeId = encounterTypeIds[random.nextInt(encounterTypeIds.length)];
+					batches.add(INSERT_ENCOUNTER, encounterId, encounterTypeId, patientId, locationId, dateStarted,
+					    patientId, CREATOR, DATE_CREATED, false, nextUuid());
+					for (int k = 0; k < obsPerEncounter; k++, obsId++) {
+						batches.add(INSERT_OBS, obsId, patientId, "FINAL", conceptId, encounterId, dateStarted, locationId,
+						    (double) random.nextInt(200), CREATOR, DATE_CREATED, false, nextUuid());
+					}
+				}
+				
+				if (log.isDebugEnabled() && (i + 1) % 100000 == 0) {
+					log.debug("Generated " + (i + 1) + " of " + patientCount + " patients");
+				}
+			}
+			
+			for (int i = 0; i < userCount; i++) {
+				int personId = FIRST_ID + patientCount + i;
+				Timestamp birthdate = toTimestamp(random.nextInt(60 * 365));
+				batches.add(INSERT_PERSON, personId, random.nextBoolean() ? "M" : "F", birthdate, false, false, CREATOR,
+				    DATE_CREATED, false, nextUuid());
+				batches.add(INSERT_USER, getUserId(i), personId, "synthetic-" + i, getUsername(i), PASSWORD, SALT,
+				    CREATOR, DATE_CREATED, false, nextUuid());
+				for (Integer locationId : getGrantedLocationIds(i)) {
+					addEntityBasisMap(batches, getUserId(i), User.class, locationId);
+				}
+				
+				for (String role : getProgramRoles(i)) {
+					batches.add(INSERT_USER_ROLE, getUserId(i), role);
+				}
+			}
+		}
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Generated " + patientCount + " patients, " + userCount + " users, " + programCount
+			        + " programs and " + locationCount + " locations in "
+			        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+		}
+	}
+	
+	/**
+	 * Grants the specified user access to the specified number of generated locations
+	 *
+	 * @param connection the connection to use
+	 * @param userId the id of the user to grant access
+	 * @param count the number of locations to grant access to
+	 * @throws SQLException
+	 */
+	public void grantLocationAccess(Connection connection, int userId, int count) throws SQLException {
+		try (Batches batches = new Batches(connection, INSERT_ENTITY_BASIS_MAP)) {
+			for (int i = 0; i < count; i++) {
+				addEntityBasisMap(batches, userId, User.class, getLocationId(i));
+			}
+		}
+	}
+	
+	private void addEntityBasisMap(Batches batches, int entityId, Class<?> entityType, int locationId)
+	        throws SQLException {
+		
+		addEntityBasisMap(batches, String.valueOf(entityId), entityId, entityType, locationId, Location.class);
+	}
+	
+	private void addEntityBasisMap(Batches batches, String entityIdentifier, Integer entityIdentifierNumber,
+	        Class<?> entityType, int basisId, Class<?> basisType) throws SQLException {
+		
+		String basisIdentifier = String.valueOf(basisId);
+		int id = nextEntityBasisMapId++;
+		batches.add(INSERT_ENTITY_BASIS_MAP, id, entityIdentifier, entityIdentifier.toLowerCase(Locale.ROOT),
+		    entityIdentifierNumber, entityType.getName(), basisIdentifier, basisIdentifier, basisId, basisType.getName(),
+		    CREATOR, DATE_CREATED, new UUID(seed, id).toString());
+	}
+	
+	private String nextUuid() {
+		return new UUID(random.nextLong(), random.nextLong()).toString();
+	}
+	
+	private Timestamp toTimestamp(int daysSince1940) {
+		return new Timestamp(Timestamp.valueOf("1940-01-01 00:00:00").getTime() + TimeUnit.DAYS.toMillis(daysSince1940));
+	}
+	
+	/**
+	 * Wraps a group of prepared statements, when any of them reaches the batch size all of them are
+	 * executed in the order they were specified so that rows are never inserted before the rows they
+	 * reference, they are also executed when closed. The transaction is committed after every commit
+	 * interval number of executions, a commit never leaves a row without the rows it references.
+	 */
+	private class Batches implements AutoCloseable {
+		
+		private Connection connection;
+		
+		private Map<String, PreparedStatement> sqlStatementMap = new LinkedHashMap();
+		
+		private int size;
+		
+		private int executedCount;
+		
+		Batches(Connection connection, String... sqls) throws SQLException {
+			this.connection = connection;
+			for (String sql : sqls) {
+				sqlStatementMap.put(sql, connection.prepareStatement(sql));
+			}
+		}
+		
+		void add(String sql, Object... values) throws SQLException {
+			PreparedStatement statement = sqlStatementMap.get(sql);
+			for (int i = 0; i < values.length; i++) {
+				//Only integer columns are ever set to null
+				if (values[i] == null) {
+					statement.setNull(i + 1, Types.INTEGER);
+				} else {
+					statement.setObject(i + 1, values[i]);
+				}
+			}
+			
+			statement.addBatch();
+			if (++size >= batchSize) {
+				execute();
+			}
+		}
+		
+		private void execute() throws SQLException {
+			for (PreparedStatement statement : sqlStatementMap.values()) {
+				statement.executeBatch();
+			}
+			
+			size = 0;
+			if (commitInterval > 0 && ++executedCount % commitInterval == 0 && !connection.getAutoCommit()) {
+				connection.commit();
+				if (log.isDebugEnabled()) {
+					log.debug("Committed after " + executedCount + " batches");
+				}
+			}
+		}
+		
+		@Override
+		public void close() throws SQLException {
+			try {
+				if (size > 0) {
+					execute();
+				}
+			}
+			finally {
+				for (PreparedStatement statement : sqlStatementMap.values()) {
+					statement.close();
+				}
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,177 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.testsupport;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line entry point that loads a synthetic dataset generated by the
+ * {@link SyntheticDataGenerator} into an existing database, the JDBC driver of the database has to
+ * be on the classpath. Options are passed as --name=value, for example to load a 5000 node location
+ * tree, a million patients with 10 observations per encounter and 2000 users into a local MySQL
+ * database committing every 100 batches:
+ *
+ * <pre>
+ * java -cp datafilter-test-support.jar:openmrs-api.jar:slf4j-api.jar:mysql-connector-java.jar \
+ *     org.openmrs.module.datafilter.testsupport.SyntheticDataLoader --url=jdbc:mysql://localhost/openmrs \
+ *     --username=openmrs --password=openmrs --locations=5000 --locationBranchingFactor=5 \
+ *     --patients=1000000 --obsPerEncounter=10 --users=2000 --programs=20 --commitInterval=100
+ * </pre>
+ *
+ * Without the commitInterval option the dataset is loaded in a single transaction. With it, a failed
+ * load leaves the batches committed so far in the database. The generated rows all have ids from
+ * {@link SyntheticDataGenerator#FIRST_ID} and the generated roles are named with the
+ * {@link SyntheticDataGenerator#PROGRAM_ROLE_PREFIX}, so a partial load is cleaned by deleting those
+ * rows, children first, before loading again with the same options. Since the data only depends on
+ * the seed and the sizes, the reload generates the same rows again.
+ */
+public class SyntheticDataLoader {
+	
+	private static final String USAGE = "Usage: SyntheticDataLoader --url=<jdbc url> [--username=<username>] "
+	        + "[--password=<password>] [--seed=<seed>] [--locations=<count>] [--locationBranchingFactor=<count>] "
+	        + "[--patients=<count>] [--encountersPerPatient=<count>] [--obsPerEncounter=<count>] [--users=<count>] "
+	        + "[--locationsPerUser=<count>] [--programs=<count>] [--programsPerRole=<count>] [--rolesPerUser=<count>] "
+	        + "[--visitTypeId=<id>] [--conceptId=<id>] [--encounterTypeIds=<id,id...>] [--batchSize=<size>] "
+	        + "[--commitInterval=<batches>]";
+	
+	public static void main(String[] args) throws SQLException {
+		Map<String, String> options;
+		SyntheticDataGenerator generator;
+		try {
+			options = parseOptions(args);
+			if (!options.containsKey("url")) {
+				throw new IllegalArgumentException("The url option is required");
+			}
+			
+			generator = createGenerator(options);
+		}
+		catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+			return;
+		}
+		
+		long start = System.nanoTime();
+		try (Connection connection = DriverManager.getConnection(options.get("url"), options.get("username"),
+		    options.get("password"))) {
+			
+			connection.setAutoCommit(false);
+			try {
+				generator.generate(connection);
+				connection.commit();
+			}
+			catch (SQLException | RuntimeException e) {
+				connection.rollback();
+				throw e;
+			}
+		}
+		
+		System.out.println("Loaded " + generator.getPatientCount() + " patients, " + generator.getUserCount()
+		        + " users, " + generator.getProgramCount() + " programs and " + generator.getLocationCount()
+		        + " locations in " + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) + "s");
+	}
+	
+	/**
+	 * Parses the specified command line arguments of the form --name=value
+	 *
+	 * @param args the arguments to parse
+	 * @return a map of option names and values
+	 */
+	protected static Map<String, String> parseOptions(String[] args) {
+		Map<String, String> options = new LinkedHashMap();
+		for (String arg : args) {
+			int index = arg.indexOf('=');
+			if (!arg.startsWith("--") || index < 0) {
+				throw new IllegalArgumentException("Invalid argument: " + arg);
+			}
+			
+			options.put(arg.substring(2, index), arg.substring(index + 1));
+		}
+		
+		return options;
+	}
+	
+	/**
+	 * Creates a generator configured with the specified options, the connection options are ignored
+	 *
+	 * @param options the option names and values
+	 * @return the generator
+	 */
+	protected static SyntheticDataGenerator createGenerator(Map<String, String> options) {
+		SyntheticDataGenerator generator = new SyntheticDataGenerator(Long.parseLong(options.getOrDefault("seed", "1")));
+		for (Map.Entry<String, String> entry : options.entrySet()) {
+			String value = entry.getValue();
+			switch (entry.getKey()) {
+				case "url":
+				case "username":
+				case "password":
+				case "seed":
+					break;
+				case "locations":
+					generator.setLocationCount(Integer.parseInt(value));
+					break;
+				case "locationBranchingFactor":
+					generator.setLocationBranchingFactor(Integer.parseInt(value));
+					break;
+				case "patients":
+					generator.setPatientCount(Integer.parseInt(value));
+					break;
+				case "encountersPerPatient":
+					generator.setEncountersPerPatient(Integer.parseInt(value));
+					break;
+				case "obsPerEncounter":
+					generator.setObsPerEncounter(Integer.parseInt(value));
+					break;
+				case "users":
+					generator.setUserCount(Integer.parseInt(value));
+					break;
+				case "locationsPerUser":
+					generator.setLocationsPerUser(Integer.parseInt(value));
+					break;
+				case "programs":
+					generator.setProgramCount(Integer.parseInt(value));
+					break;
+				case "programsPerRole":
+					generator.setProgramsPerRole(Integer.parseInt(value));
+					break;
+				case "rolesPerUser":
+					generator.setRolesPerUser(Integer.parseInt(value));
+					break;
+				case "visitTypeId":
+					generator.setVisitTypeId(Integer.parseInt(value));
+					break;
+				case "conceptId":
+					generator.setConceptId(Integer.parseInt(value));
+					break;
+				case "encounterTypeIds":
+					generator.setEncounterTypeIds(Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray());
+					break;
+				case "batchSize":
+					generator.setBatchSize(Integer.parseInt(value));
+					break;
+				case "commitInterval":
+					generator.setCommitInterval(Integer.parseInt(value));
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option: " + entry.getKey());
+			}
+		}
+		
+		return generator;
+	}
+	
+}
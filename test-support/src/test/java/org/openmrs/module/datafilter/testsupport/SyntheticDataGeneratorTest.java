@@ -0,0 +1,91 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.datafilter.testsupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class SyntheticDataGeneratorTest {
+	
+	@Test
+	public void getParentLocationIndex_shouldReturnTheParentInATreeWithTheBranchingFactor() {
+		SyntheticDataGenerator generator = new SyntheticDataGenerator(1);
+		generator.setLocationCount(5000);
+		assertEquals(-1, generator.getParentLocationIndex(7));
+		
+		generator.setLocationBranchingFactor(5);
+		assertEquals(-1, generator.getParentLocationIndex(0));
+		assertEquals(0, generator.getParentLocationIndex(1));
+		assertEquals(0, generator.getParentLocationIndex(5));
+		assertEquals(1, generator.getParentLocationIndex(6));
+		for (int i = 1; i < generator.getLocationCount(); i++) {
+			assertTrue(generator.getParentLocationIndex(i) < i);
+		}
+	}
+	
+	@Test
+	public void getProgramRoles_shouldGiveUsersOverlappingProgramRoles() {
+		SyntheticDataGenerator generator = new SyntheticDataGenerator(1);
+		assertTrue(generator.getProgramRoles(0).isEmpty());
+		
+		generator.setProgramCount(3);
+		generator.setProgramsPerRole(2);
+		generator.setRolesPerUser(2);
+		assertEquals(Arrays.asList(generator.getProgramRole(0)), generator.getProgramRoles(0));
+		assertEquals(Arrays.asList(generator.getProgramRole(1), generator.getProgramRole(2)),
+		    generator.getProgramRoles(1));
+		assertEquals(Arrays.asList(generator.getProgramId(2), generator.getProgramId(0)),
+		    generator.getMappedProgramIds(2));
+	}
+	
+	@Test
+	public void generate_shouldCommitEveryTimeTheCommitIntervalNumberOfBatchesIsExecuted() throws Exception {
+		Connection connection = mock(Connection.class);
+		when(connection.prepareStatement(anyString())).thenReturn(mock(PreparedStatement.class));
+		SyntheticDataGenerator generator = new SyntheticDataGenerator(1);
+		generator.setLocationCount(5);
+		generator.setPatientCount(0);
+		generator.setBatchSize(1);
+		generator.setCommitInterval(2);
+		
+		generator.generate(connection);
+		
+		verify(connection, times(2)).commit();
+	}
+	
+	@Test
+	public void createGenerator_shouldConfigureTheGeneratorFromTheCommandLineOptions() {
+		SyntheticDataGenerator generator = SyntheticDataLoader.createGenerator(SyntheticDataLoader.parseOptions(
+		    new String[] { "--url=jdbc:h2:./openmrs", "--seed=7", "--patients=1000000", "--encounterTypeIds=3,4",
+		        "--commitInterval=100" }));
+		
+		assertEquals(7, generator.getSeed());
+		assertEquals(1000000, generator.getPatientCount());
+		assertEquals(4, generator.getEncounterTypeIds()[1]);
+		assertEquals(100, generator.getCommitInterval());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void createGenerator_shouldFailForAnUnknownOption() {
+		SyntheticDataLoader.createGenerator(SyntheticDataLoader.parseOptions(new String[] { "--patient=10" }));
+	}
+	
+}